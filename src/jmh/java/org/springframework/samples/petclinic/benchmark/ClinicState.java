@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmark;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.PetClinicApplication;
+import org.springframework.samples.petclinic.owner.OwnerLastNameIndex;
+
+/**
+ * The running application, its in-memory database seeded with <code>owners</code> additional owners, each with one pet
+ * and one visit. The scale is a benchmark parameter, e.g. <code>-p owners=1000,100000,1000000</code>; large scales
+ * need a larger heap for the database, e.g. <code>-jvmArgs -Xmx4g</code>.
+ * <p>
+ * Seeded last names are shared by about ten owners each at every scale, so a search by last name returns the same
+ * number of owners however large the database is.
+ * <p>
+ * Requests are handled on Tomcat's worker threads, or on virtual threads with <code>-p threads=virtual</code> (Java 21
+ * or later), see the <code>virtual</code> profile of the application.
+ */
+@State(Scope.Benchmark)
+public class ClinicState {
+
+    static final int FIRST_SEEDED_ID = 1000;
+
+    private static final int OWNERS_PER_LAST_NAME = 10;
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    @Param("1000")
+    public int owners;
+
+    @Param("platform")
+    public String threads;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup
+    public void start() {
+        // devtools would restart the application in its own class loader and turn off the template cache
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        this.context = new SpringApplicationBuilder(PetClinicApplication.class)
+            .properties("server.port=0", "logging.level.root=WARN", "petclinic.cache.warm-on-startup=false")
+            .profiles("virtual".equals(this.threads) ? new String[] { "virtual" } : new String[0])
+            .run();
+        seed(this.context.getBean(JdbcTemplate.class));
+        // the seeded owners bypass the repository
+        this.context.getBean(OwnerLastNameIndex.class).rebuild();
+    }
+
+    @TearDown
+    public void stop() {
+        this.context.close();
+    }
+
+    public ConfigurableApplicationContext getContext() {
+        return this.context;
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return this.context.getBean(type);
+    }
+
+    /**
+     * Return the port the application listens on.
+     */
+    public int getPort() {
+        return ((ServletWebServerApplicationContext) this.context).getWebServer().getPort();
+    }
+
+    /**
+     * Return a seeded last name, shared by about ten owners.
+     */
+    public String lastName() {
+        return lastName(ThreadLocalRandom.current().nextInt(this.owners));
+    }
+
+    /**
+     * Return the id of a random seeded owner.
+     */
+    public int ownerId() {
+        return FIRST_SEEDED_ID + ThreadLocalRandom.current().nextInt(this.owners);
+    }
+
+    private String lastName(int index) {
+        int lastNames = Math.max(1, this.owners / OWNERS_PER_LAST_NAME);
+        return String.format("Seeded%07d", index % lastNames);
+    }
+
+    private void seed(JdbcTemplate jdbc) {
+        LocalDate birthDate = LocalDate.of(2015, 1, 1);
+        for (int start = 0; start < this.owners; start += SEED_BATCH_SIZE) {
+            List<Object[]> owners = new ArrayList<>(SEED_BATCH_SIZE);
+            List<Object[]> pets = new ArrayList<>(SEED_BATCH_SIZE);
+            List<Object[]> visits = new ArrayList<>(SEED_BATCH_SIZE);
+            for (int i = start; i < Math.min(start + SEED_BATCH_SIZE, this.owners); i++) {
+                int id = FIRST_SEEDED_ID + i;
+                owners.add(new Object[] { id, "First" + i, lastName(i), i + " Main St.", "Madison", "6085550000" });
+                pets.add(new Object[] { id, "Pet" + i, Date.valueOf(birthDate.plusDays(i % 1000)), 1 + i % 6, id });
+                visits.add(new Object[] { id, Date.valueOf(birthDate.plusDays(1000 + i % 1000)), "checkup" });
+            }
+            jdbc.batchUpdate("INSERT INTO owners (id, first_name, last_name, address, city, telephone)"
+                    + " VALUES (?, ?, ?, ?, ?, ?)", owners);
+            jdbc.batchUpdate("INSERT INTO pets (id, name, birth_date, type_id, owner_id) VALUES (?, ?, ?, ?, ?)", pets);
+            jdbc.batchUpdate("INSERT INTO visits (id, pet_id, visit_date, description)"
+                    + " VALUES (NEXT VALUE FOR visits_seq, ?, ?, ?)", visits);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HTTP requests from many concurrent clients, more than Tomcat has worker threads, reporting the throughput and the
+ * latency percentiles (p0.99 in the sample time results). Compare the thread models with
+ * <code>-p threads=platform,virtual</code> on Java 21 or later; the client concurrency is set with <code>-t</code>.
+ * The difference shows when requests wait on the database, e.g. against MySQL with
+ * <code>-jvmArgs -Dspring.profiles.active=mysql</code>.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+@Fork(value = 1, jvmArgsAppend = { "-Dhttp.maxConnections=400", "-Djdk.virtualThreadScheduler.parallelism=20" })
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+    private String baseUrl;
+
+    @Setup
+    public void setup(ClinicState clinic) {
+        this.baseUrl = "http://localhost:" + clinic.getPort();
+    }
+
+    @Benchmark
+    public int ownersList(ClinicState clinic) throws IOException {
+        return get("/owners?lastName=" + clinic.lastName());
+    }
+
+    @Benchmark
+    public int ownerDetails(ClinicState clinic) throws IOException {
+        return get("/owners/" + clinic.ownerId());
+    }
+
+    @Benchmark
+    public int vets() throws IOException {
+        return get("/vets");
+    }
+
+    /**
+     * Request the path and read the whole response, on a kept alive connection.
+     */
+    private int get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(this.baseUrl + path).openConnection();
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IllegalStateException("GET " + path + " answered " + status);
+        }
+        int length = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream body = connection.getInputStream()) {
+            for (int read; (read = body.read(buffer)) >= 0;) {
+                length += read;
+            }
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.visit.Visit;
+
+/**
+ * The sorted pets of an owner and visits of a pet, as read repeatedly while rendering the owner details page, and the
+ * duplicate pet name check of each pet form submission. Run with <code>-prof gc</code> to see the allocation per call
+ * next to the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OwnerPetsBenchmark {
+
+    @Param({ "1", "5", "50", "5000" })
+    public int pets;
+
+    private Owner owner;
+
+    private Pet pet;
+
+    @Setup
+    public void setup() {
+        this.owner = new Owner();
+        for (int i = 0; i < this.pets; i++) {
+            Pet pet = new Pet();
+            pet.setName("Pet" + (this.pets - i));
+            this.owner.addPet(pet);
+        }
+        this.pet = new Pet();
+        for (int i = 0; i < this.pets; i++) {
+            Visit visit = new Visit();
+            visit.setDate(LocalDate.of(2018, 1, 1).plusDays(i));
+            this.pet.addVisit(visit);
+        }
+    }
+
+    @Benchmark
+    public List<Pet> getPets() {
+        return this.owner.getPets();
+    }
+
+    @Benchmark
+    public Pet getPet() {
+        return this.owner.getPet("PET1", true);
+    }
+
+    @Benchmark
+    public List<Visit> getVisits() {
+        return this.pet.getVisits();
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmark;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.OwnerLastNameIndex;
+import org.springframework.samples.petclinic.owner.OwnerPage;
+import org.springframework.samples.petclinic.owner.OwnerRepository;
+
+/**
+ * Owner searches and lookups against the seeded database of {@link ClinicState}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OwnerRepositoryBenchmark {
+
+    @Benchmark
+    public Collection<Owner> findByLastName(ClinicState clinic) {
+        return clinic.getBean(OwnerRepository.class).findByLastName(clinic.lastName());
+    }
+
+    @Benchmark
+    public OwnerPage findPageByLastName(ClinicState clinic) {
+        return clinic.getBean(OwnerRepository.class).findPageByLastName(clinic.lastName(), null, 20);
+    }
+
+    /**
+     * The typeahead lookup, in memory: the ten first owners whose last name starts like a seeded one.
+     */
+    @Benchmark
+    public List<OwnerLastNameIndex.Match> findByLastNamePrefix(ClinicState clinic) {
+        String lastName = clinic.lastName();
+        return clinic.getBean(OwnerLastNameIndex.class).findByLastNamePrefix(lastName.substring(0, 10), 10);
+    }
+
+    @Benchmark
+    public Owner findById(ClinicState clinic) {
+        return clinic.getBean(OwnerRepository.class).findById(clinic.ownerId());
+    }
+
+}
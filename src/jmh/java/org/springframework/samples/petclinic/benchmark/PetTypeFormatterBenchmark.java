@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmark;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.owner.PetType;
+import org.springframework.samples.petclinic.owner.PetTypeFormatter;
+import org.springframework.samples.petclinic.system.CacheGenerations;
+
+/**
+ * Parsing a pet type, as done for every submitted pet form. The repository is a mock returning the same list on every
+ * call, of a cache generation that does not change; the cost of calling the mock alone is measured by
+ * {@link #findPetTypes()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PetTypeFormatterBenchmark {
+
+    private static final String[] TYPES = { "bird", "cat", "dog", "hamster", "lizard", "snake" };
+
+    private PetRepository pets;
+
+    private PetTypeFormatter formatter;
+
+    @Setup
+    public void setup() {
+        List<PetType> types = new ArrayList<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            PetType type = new PetType();
+            type.setId(i + 1);
+            type.setName(TYPES[i]);
+            types.add(type);
+        }
+        this.pets = Mockito.mock(PetRepository.class, Mockito.withSettings().stubOnly());
+        Mockito.when(this.pets.findPetTypes()).thenReturn(types);
+        this.formatter = new PetTypeFormatter(this.pets, new CacheGenerations());
+    }
+
+    @Benchmark
+    public List<PetType> findPetTypes() {
+        return this.pets.findPetTypes();
+    }
+
+    @Benchmark
+    public PetType parseFirst() throws ParseException {
+        return this.formatter.parse("bird", Locale.ENGLISH);
+    }
+
+    @Benchmark
+    public PetType parseLast() throws ParseException {
+        return this.formatter.parse("snake", Locale.ENGLISH);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Full round trips through Spring MVC, including view rendering, without the network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebBenchmark {
+
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setup(ClinicState clinic) {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) clinic.getContext()).build();
+    }
+
+    @Benchmark
+    public MvcResult ownersList(ClinicState clinic) throws Exception {
+        return this.mockMvc.perform(get("/owners").param("lastName", clinic.lastName())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult ownerDetails(ClinicState clinic) throws Exception {
+        return this.mockMvc.perform(get("/owners/{ownerId}", clinic.ownerId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult vetsJson() throws Exception {
+        return this.mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON)).andReturn();
+    }
+
+}
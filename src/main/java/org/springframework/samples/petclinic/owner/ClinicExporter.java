@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.samples.petclinic.system.Shards;
+import org.springframework.samples.petclinic.visit.VisitRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes owners, pets and visits to a stream as CSV or NDJSON.
+ * <p>
+ * Each export runs a single query per shard, see {@link Shards}, whose rows are read from a forward-only cursor, a few
+ * hundred at a time, and written out as they arrive; neither the rows nor the output are collected in memory. Memory
+ * use is therefore the same for a hundred or a million rows. Transactions are read-only and last as long as the client
+ * takes to receive the data of their shard. The shards are exported one after the other, so owners and pets are
+ * ordered by id.
+ */
+@Component
+class ClinicExporter {
+
+    static final String[] OWNER_COLUMNS = { "id", "firstName", "lastName", "address", "city", "telephone" };
+
+    static final String[] PET_COLUMNS = { "id", "ownerId", "name", "birthDate", "type" };
+
+    static final String[] VISIT_COLUMNS = { "id", "petId", "date", "description" };
+
+    private final OwnerRepository owners;
+
+    private final PetRepository pets;
+
+    private final VisitRepository visits;
+
+    private final ObjectMapper objectMapper;
+
+    private final Shards shards;
+
+    private final TransactionTemplate readOnly;
+
+    ClinicExporter(OwnerRepository owners, PetRepository pets, VisitRepository visits, ObjectMapper objectMapper,
+            Shards shards, PlatformTransactionManager transactionManager) {
+        this.owners = owners;
+        this.pets = pets;
+        this.visits = visits;
+        this.objectMapper = objectMapper;
+        this.shards = shards;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    public void exportOwners(ExportFormat format, OutputStream out) throws IOException {
+        export(format, OWNER_COLUMNS, this.owners::streamAllForExport, out);
+    }
+
+    public void exportPets(ExportFormat format, OutputStream out) throws IOException {
+        export(format, PET_COLUMNS, this.pets::streamAllForExport, out);
+    }
+
+    public void exportVisits(ExportFormat format, OutputStream out) throws IOException {
+        export(format, VISIT_COLUMNS, this.visits::streamAllForExport, out);
+    }
+
+    private void export(ExportFormat format, String[] columns, Supplier<Stream<Object[]>> query, OutputStream out)
+            throws IOException {
+        try {
+            for (int shard = 0; shard < this.shards.getCount(); shard++) {
+                boolean header = (shard == 0);
+                this.shards.callOn(shard, () -> this.readOnly.execute(status -> {
+                    try (Stream<Object[]> rows = query.get()) {
+                        write(format, columns, header, rows, out);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    return null;
+                }));
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private void write(ExportFormat format, String[] columns, boolean header, Stream<Object[]> rows, OutputStream out)
+            throws IOException {
+        Iterator<Object[]> iterator = rows.iterator();
+        switch (format) {
+            case CSV:
+                writeCsv(header ? columns : null, iterator, out);
+                break;
+            case NDJSON:
+                writeNdjson(columns, iterator, out);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported export format " + format);
+        }
+    }
+
+    /**
+     * Write the rows as CSV, after the given header line unless <code>null</code>.
+     */
+    private static void writeCsv(String[] header, Iterator<Object[]> rows, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (header != null) {
+            writeCsvLine(header, writer);
+        }
+        while (rows.hasNext()) {
+            writeCsvLine(rows.next(), writer);
+        }
+        writer.flush();
+    }
+
+    private static void writeCsvLine(Object[] values, Writer writer) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvField(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Format a value as a CSV field: <code>null</code> as an empty field, other values by their string form, quoted if
+     * they contain a separator, quote or line break.
+     */
+    static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    private void writeNdjson(String[] columns, Iterator<Object[]> rows, OutputStream out) throws IOException {
+        try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out)) {
+            // the caller owns the stream
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            while (rows.hasNext()) {
+                Object[] row = rows.next();
+                generator.writeStartObject();
+                for (int i = 0; i < columns.length; i++) {
+                    generator.writeFieldName(columns[i]);
+                    generator.writeObject(row[i]);
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+}
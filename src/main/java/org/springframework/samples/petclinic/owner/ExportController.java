@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Export of all owners, pets and visits, e.g. <code>/export/owners.csv</code> or <code>/export/visits.ndjson</code>.
+ * The data is written straight to the response as it is read, see {@link ClinicExporter}.
+ */
+@Controller
+class ExportController {
+
+    private final ClinicExporter exporter;
+
+    public ExportController(ClinicExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    @GetMapping("/export/owners.{format}")
+    public void exportOwners(@PathVariable("format") String extension, HttpServletResponse response)
+            throws IOException {
+        ExportFormat format = start(extension, "owners", response);
+        this.exporter.exportOwners(format, response.getOutputStream());
+    }
+
+    @GetMapping("/export/pets.{format}")
+    public void exportPets(@PathVariable("format") String extension, HttpServletResponse response)
+            throws IOException {
+        ExportFormat format = start(extension, "pets", response);
+        this.exporter.exportPets(format, response.getOutputStream());
+    }
+
+    @GetMapping("/export/visits.{format}")
+    public void exportVisits(@PathVariable("format") String extension, HttpServletResponse response)
+            throws IOException {
+        ExportFormat format = start(extension, "visits", response);
+        this.exporter.exportVisits(format, response.getOutputStream());
+    }
+
+    private static ExportFormat start(String extension, String name, HttpServletResponse response) {
+        ExportFormat format = ExportFormat.ofExtension(extension);
+        if (format == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown export format " + extension);
+        }
+        response.setContentType(format.getMediaType().toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=\"" + name + "." + format.getExtension() + "\"");
+        return format;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.samples.petclinic.system.SqlStatistics;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+/**
+ * Streams items page by page as NDJSON, with backpressure: a page is read on the {@link OwnerApiExecutor}, written to
+ * the response, and only then is the next page read. Writing blocks while the client does not keep up, so a slow
+ * client slows down the reads instead of having them buffered in memory, and no database connection is held while
+ * writing. Between pages, no thread is held at all. The pages are read with the {@link SqlStatistics} recorded when
+ * the stream was created, those of its request.
+ *
+ * @param <T> the type of the items
+ */
+final class NdjsonPageStream<T> extends ResponseBodyEmitter {
+
+    // long enough for a large download, the stream ends early anyway when the client goes away
+    private static final long TIMEOUT = 10 * 60 * 1000L;
+
+    private final OwnerApiExecutor executor;
+
+    private final ObjectMapper objectMapper;
+
+    private final int pageSize;
+
+    private final Function<T, List<T>> readAfter;
+
+    private final Function<T, Object> representation;
+
+    private final SqlStatistics.Recordings recordings = SqlStatistics.capture();
+
+    private volatile T last;
+
+    /**
+     * Create a stream of pages of the given size. A page with fewer items ends the stream.
+     * @param readAfter reads the page of items after the given last item of the previous page
+     * @param representation converts an item to what is written as its JSON
+     */
+    NdjsonPageStream(OwnerApiExecutor executor, ObjectMapper objectMapper, int pageSize,
+            Function<T, List<T>> readAfter, Function<T, Object> representation) {
+        super(TIMEOUT);
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize;
+        this.readAfter = readAfter;
+        this.representation = representation;
+    }
+
+    /**
+     * Write the first page, on the thread that read it. It is sent once the response is ready, which also triggers
+     * reading the next page.
+     */
+    void start(List<T> firstPage) throws IOException {
+        write(firstPage);
+    }
+
+    @Override
+    protected void extendResponse(ServerHttpResponse outputMessage) {
+        super.extendResponse(outputMessage);
+        readNext();
+    }
+
+    private void readNext() {
+        if (this.last == null) {
+            return;
+        }
+        T after = this.last;
+        try {
+            this.executor.execute(this.recordings.wrap(() -> {
+                try {
+                    write(this.readAfter.apply(after));
+                    readNext();
+                } catch (IOException ex) {
+                    // the client went away, the container reports the error
+                } catch (RuntimeException ex) {
+                    completeWithError(ex);
+                }
+            }));
+        } catch (RejectedExecutionException ex) {
+            completeWithError(ex);
+        }
+    }
+
+    private void write(List<T> page) throws IOException {
+        this.last = (page.size() < this.pageSize ? null : page.get(page.size() - 1));
+        if (!page.isEmpty()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (T item : page) {
+                this.objectMapper.writeValue(out, this.representation.apply(item));
+                out.write('\n');
+            }
+            send(out.toByteArray(), ExportFormat.NDJSON.getMediaType());
+        }
+        if (this.last == null) {
+            complete();
+        }
+    }
+
+}
@@ -16,23 +16,28 @@
 package org.springframework.samples.petclinic.owner;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 import javax.validation.constraints.Digits;
 import javax.validation.constraints.NotEmpty;
 
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.OrderBy;
 import org.springframework.core.style.ToStringCreator;
+import org.springframework.data.domain.DomainEvents;
 import org.springframework.samples.petclinic.model.Person;
+import org.springframework.samples.petclinic.system.ShardKeyed;
 
 /**
  * Simple JavaBean domain object representing an owner.
@@ -44,7 +49,15 @@ import org.springframework.samples.petclinic.model.Person;
  */
 @Entity
 @Table(name = "owners")
-public class Owner extends Person {
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "owners")
+public class Owner extends Person implements ShardKeyed {
+
+    /**
+     * The order of {@link #getPets()}, matching the <code>@OrderBy</code> clause of the mapping.
+     */
+    static final Comparator<Pet> PETS_BY_NAME = Comparator.comparing(Pet::getName,
+        Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+
     @Column(name = "address")
     @NotEmpty
     private String address;
@@ -59,7 +72,23 @@ public class Owner extends Person {
     private String telephone;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
-    private Set<Pet> pets;
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "ownerPets")
+    @OrderBy(clause = "lower(name), id")
+    private List<Pet> pets;
+
+    /**
+     * Incremented whenever the owner, one of its pets or a visit of one of its pets is saved, see
+     * {@link OwnerVersionIncrementer}.
+     */
+    @Version
+    @Column(name = "version")
+    private Integer version;
+
+    @Transient
+    private ReadOnlyList<Pet> petsView;
+
+    @Transient
+    private PetNameIndex petsByName;
 
     public String getAddress() {
         return this.address;
@@ -85,31 +114,53 @@ public class Owner extends Person {
         this.telephone = telephone;
     }
 
-    protected Set<Pet> getPetsInternal() {
+    public Integer getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    protected List<Pet> getPetsInternal() {
         if (this.pets == null) {
-            this.pets = new HashSet<>();
+            this.pets = new ArrayList<>();
         }
         return this.pets;
     }
 
-    protected void setPetsInternal(Set<Pet> pets) {
+    protected void setPetsInternal(List<Pet> pets) {
         this.pets = pets;
     }
 
+    /**
+     * Return the pets sorted by name, ignoring case. The pets are loaded in that order and {@link #addPet(Pet) added}
+     * in place, so this is a read-only view rather than a sorted copy.
+     */
     public List<Pet> getPets() {
-        List<Pet> sortedPets = new ArrayList<>(getPetsInternal());
-        PropertyComparator.sort(sortedPets,
-                new MutableSortDefinition("name", true, true));
-        return Collections.unmodifiableList(sortedPets);
+        this.petsView = ReadOnlyList.of(getPetsInternal(), this.petsView);
+        return this.petsView;
     }
 
     public void addPet(Pet pet) {
         if (pet.isNew()) {
-            getPetsInternal().add(pet);
+            List<Pet> pets = getPetsInternal();
+            int index = Collections.binarySearch(pets, pet, PETS_BY_NAME);
+            pets.add(index < 0 ? -index - 1 : index + 1, pet);
+            if (this.petsByName != null && this.petsByName.isIndexOf(pets)) {
+                this.petsByName.add(pet);
+            }
         }
         pet.setOwner(this);
     }
 
+    /**
+     * Called by a pet of this owner when its name changes, the name index is rebuilt on the next lookup.
+     */
+    void petRenamed() {
+        this.petsByName = null;
+    }
+
     /**
      * Return the Pet with the given name, or null if none found for this Owner.
      *
@@ -127,17 +178,29 @@ public class Owner extends Person {
      * @return true if pet name is already in use
      */
     public Pet getPet(String name, boolean ignoreNew) {
-        name = name.toLowerCase();
-        for (Pet pet : getPetsInternal()) {
-            if (!ignoreNew || !pet.isNew()) {
-                String compName = pet.getName();
-                compName = compName.toLowerCase();
-                if (compName.equals(name)) {
-                    return pet;
-                }
-            }
+        List<Pet> pets = getPetsInternal();
+        if (this.petsByName == null || !this.petsByName.isIndexOf(pets)) {
+            this.petsByName = new PetNameIndex(pets);
         }
-        return null;
+        // saved pets take precedence in the index, so a new pet means there is no saved one of that name
+        Pet pet = this.petsByName.get(name);
+        return (pet != null && !(ignoreNew && pet.isNew()) ? pet : null);
+    }
+
+    /**
+     * Owners are sharded by their id.
+     */
+    @Override
+    public Integer shardKey() {
+        return getId();
+    }
+
+    /**
+     * The event published by {@link OwnerRepository#save(Owner)} once this owner has been saved.
+     */
+    @DomainEvents
+    Collection<OwnerSavedEvent> savedEvents() {
+        return Collections.singletonList(new OwnerSavedEvent(getId(), getLastName()));
     }
 
     @Override
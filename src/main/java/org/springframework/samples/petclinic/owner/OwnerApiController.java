@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.samples.petclinic.visit.VisitCursor;
+import org.springframework.samples.petclinic.visit.VisitPage;
+import org.springframework.samples.petclinic.visit.VisitRepository;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+/**
+ * Read-only JSON API for integrations: owner search results, owner details and the visit history of a pet, streamed
+ * or a page at a time.
+ * <p>
+ * Requests are processed asynchronously. The database is read on the bounded {@link OwnerApiExecutor} pool, and the
+ * request thread is released as soon as the request has been handed to it. Search results and visits are streamed as
+ * NDJSON, one object per line, a page at a time with backpressure, see {@link NdjsonPageStream}. When the pool is
+ * saturated requests are rejected with <code>503 Service Unavailable</code> rather than queued without bounds.
+ * <p>
+ * The last name typeahead is the exception: it is answered on the request thread from the
+ * {@link OwnerLastNameIndex}, without touching the database.
+ */
+@Controller
+class OwnerApiController {
+
+    static final int PAGE_SIZE = OwnerPage.MAX_SIZE;
+
+    static final int MAX_TYPEAHEAD_SIZE = 50;
+
+    private final OwnerRepository owners;
+
+    private final PetRepository pets;
+
+    private final VisitRepository visits;
+
+    private final OwnerApiExecutor executor;
+
+    private final OwnerLastNameIndex lastNameIndex;
+
+    private final ObjectMapper objectMapper;
+
+    OwnerApiController(OwnerRepository owners, PetRepository pets, VisitRepository visits, OwnerApiExecutor executor,
+            OwnerLastNameIndex lastNameIndex, ObjectMapper objectMapper) {
+        this.owners = owners;
+        this.pets = pets;
+        this.visits = visits;
+        this.executor = executor;
+        this.lastNameIndex = lastNameIndex;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Stream the owners whose last name starts with the given one, ordered by last name, as {@link OwnerSummary}s.
+     */
+    @GetMapping(path = "/api/owners", produces = VisitImportController.APPLICATION_NDJSON_VALUE)
+    public CompletableFuture<ResponseEntity<ResponseBodyEmitter>> findOwners(
+            @RequestParam(name = "lastName", defaultValue = "") String lastName) {
+        return this.executor.supply(() -> stream(
+            this.owners.findPageByLastName(lastName, null, PAGE_SIZE).getOwners(),
+            last -> this.owners.findPageByLastName(lastName, OwnerCursor.after(last), PAGE_SIZE).getOwners(),
+            owner -> owner));
+    }
+
+    /**
+     * Return the first owners, at most {@value #MAX_TYPEAHEAD_SIZE}, whose last name starts with the given prefix,
+     * ignoring case, as <code>id</code> and <code>lastName</code>.
+     */
+    @GetMapping(path = "/api/owners/typeahead", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<OwnerLastNameIndex.Match>> typeahead(@RequestParam("q") String prefix,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        String trimmed = prefix.trim();
+        if (trimmed.isEmpty() || limit < 1) {
+            return ResponseEntity.ok(Collections.emptyList());
+        }
+        return ResponseEntity.ok(this.lastNameIndex.findByLastNamePrefix(trimmed, Math.min(limit, MAX_TYPEAHEAD_SIZE)));
+    }
+
+    @GetMapping(path = "/api/owners/{ownerId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> showOwner(@PathVariable("ownerId") int ownerId) {
+        return this.executor.supply(() -> {
+            Owner owner = this.owners.findById(ownerId);
+            if (owner == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No owner " + ownerId);
+            }
+            return ResponseEntity.ok(ownerRepresentation(owner));
+        });
+    }
+
+    /**
+     * Stream the visits of a pet, most recent first.
+     */
+    @GetMapping(path = "/api/owners/{ownerId}/pets/{petId}/visits",
+        produces = VisitImportController.APPLICATION_NDJSON_VALUE)
+    public CompletableFuture<ResponseEntity<ResponseBodyEmitter>> findVisits(@PathVariable("ownerId") int ownerId,
+            @PathVariable("petId") int petId) {
+        return this.executor.supply(() -> {
+            if (!this.pets.existsByIdAndOwnerId(petId, ownerId)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner " + ownerId + " has no pet " + petId);
+            }
+            return stream(
+                this.visits.findByPetIdOrderByDateDescIdDesc(petId, PageRequest.of(0, PAGE_SIZE)),
+                last -> this.visits.findByPetIdAfter(petId, last.getDate(), last.getId(), PageRequest.of(0, PAGE_SIZE)),
+                OwnerApiController::visitRepresentation);
+        });
+    }
+
+    /**
+     * Return one page of the visits of a pet, most recent first, with the cursor of the page of older visits, if any:
+     * <code>{"visits": [...], "next": "..."}</code>. The first page is returned without a cursor.
+     */
+    @GetMapping(path = "/api/owners/{ownerId}/pets/{petId}/visits/page", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> findVisitsPage(@PathVariable("ownerId") int ownerId,
+            @PathVariable("petId") int petId, @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", defaultValue = "20") int size) {
+        int pageSize = Math.max(1, Math.min(size, VisitPage.MAX_SIZE));
+        return this.executor.supply(() -> {
+            if (!this.pets.existsByIdAndOwnerId(petId, ownerId)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner " + ownerId + " has no pet " + petId);
+            }
+            VisitPage page = this.visits.findPageByPetId(petId, VisitCursor.decode(cursor), pageSize);
+            List<Object> visits = new ArrayList<>(page.getVisits().size());
+            for (Visit visit : page.getVisits()) {
+                visits.add(visitRepresentation(visit));
+            }
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("visits", visits);
+            json.put("next", page.hasNext() ? page.getNext().encode() : null);
+            return ResponseEntity.ok(json);
+        });
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Void> handleSaturation() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    private <T> ResponseEntity<ResponseBodyEmitter> stream(List<T> firstPage, Function<T, List<T>> readAfter,
+            Function<T, Object> representation) {
+        NdjsonPageStream<T> stream = new NdjsonPageStream<>(this.executor, this.objectMapper, PAGE_SIZE, readAfter,
+            representation);
+        try {
+            stream.start(firstPage);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return ResponseEntity.ok().contentType(ExportFormat.NDJSON.getMediaType()).body(stream);
+    }
+
+    private static Map<String, Object> ownerRepresentation(Owner owner) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", owner.getId());
+        json.put("firstName", owner.getFirstName());
+        json.put("lastName", owner.getLastName());
+        json.put("address", owner.getAddress());
+        json.put("city", owner.getCity());
+        json.put("telephone", owner.getTelephone());
+        List<Map<String, Object>> pets = new ArrayList<>();
+        for (Pet pet : owner.getPets()) {
+            Map<String, Object> petJson = new LinkedHashMap<>();
+            petJson.put("id", pet.getId());
+            petJson.put("name", pet.getName());
+            petJson.put("birthDate", pet.getBirthDate());
+            petJson.put("type", pet.getType() == null ? null : pet.getType().getName());
+            pets.add(petJson);
+        }
+        json.put("pets", pets);
+        return json;
+    }
+
+    private static Object visitRepresentation(Visit visit) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", visit.getId());
+        json.put("date", visit.getDate());
+        json.put("description", visit.getDescription());
+        return json;
+    }
+
+}
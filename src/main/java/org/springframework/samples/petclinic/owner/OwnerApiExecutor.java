@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.samples.petclinic.system.SqlStatistics;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * The bounded pool that runs the blocking database reads of the {@link OwnerApiController JSON API}, so that no
+ * request thread waits for the database.
+ * <p>
+ * The pool has as many threads as the connection pool has connections by default; more could only wait for a
+ * connection. Reads queue up to <code>petclinic.api.queue-capacity</code>, beyond that they are rejected with a
+ * {@link RejectedExecutionException}. The pool is published as the <code>executor.*</code> metrics tagged
+ * <code>name=api</code>.
+ * <p>
+ * The {@link SqlStatistics} recorded by the calling thread, e.g. those of the request, are continued by the tasks, so
+ * that the statements of the API count towards its requests.
+ */
+@Component
+class OwnerApiExecutor implements MeterBinder, DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    OwnerApiExecutor(@Value("${petclinic.api.threads:${spring.datasource.hikari.maximum-pool-size:10}}") int threads,
+            @Value("${petclinic.api.queue-capacity:100}") int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("api-"));
+    }
+
+    /**
+     * Run the read on the pool.
+     * @throws RejectedExecutionException if the queue is full
+     */
+    <T> CompletableFuture<T> supply(Supplier<T> read) {
+        return CompletableFuture.supplyAsync(SqlStatistics.capture().wrap(read), this.executor);
+    }
+
+    /**
+     * Run the task on the pool.
+     * @throws RejectedExecutionException if the queue is full
+     */
+    void execute(Runnable task) {
+        this.executor.execute(SqlStatistics.capture().wrap(task));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new ExecutorServiceMetrics(this.executor, "api", Collections.emptyList()).bindTo(registry);
+    }
+
+    @Override
+    public void destroy() {
+        this.executor.shutdown();
+    }
+
+}
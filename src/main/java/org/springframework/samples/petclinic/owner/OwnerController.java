@@ -15,6 +15,9 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -23,10 +26,13 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.validation.Valid;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -39,11 +45,16 @@ import java.util.Map;
 class OwnerController {
 
     private static final String VIEWS_OWNER_CREATE_OR_UPDATE_FORM = "owners/createOrUpdateOwnerForm";
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = OwnerPage.MAX_SIZE;
+    static final int RECENT_VISITS = 5;
     private final OwnerRepository owners;
+    private final VisitRepository visits;
 
 
-    public OwnerController(OwnerRepository clinicService) {
+    public OwnerController(OwnerRepository clinicService, VisitRepository visits) {
         this.owners = clinicService;
+        this.visits = visits;
     }
 
     @InitBinder
@@ -75,26 +86,31 @@ class OwnerController {
     }
 
     @GetMapping("/owners")
-    public String processFindForm(Owner owner, BindingResult result, Map<String, Object> model) {
+    public String processFindForm(Owner owner, BindingResult result, Map<String, Object> model,
+                                  @RequestParam(value = "cursor", required = false) String cursorToken,
+                                  @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
 
         // allow parameterless GET request for /owners to return all records
         if (owner.getLastName() == null) {
             owner.setLastName(""); // empty string signifies broadest possible search
         }
 
-        // find owners by last name
-        Collection<Owner> results = this.owners.findByLastName(owner.getLastName());
-        if (results.isEmpty()) {
+        // find one page of owners by last name
+        OwnerCursor cursor = OwnerCursor.decode(cursorToken);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        OwnerPage page = this.owners.findPageByLastName(owner.getLastName(), cursor, pageSize);
+        if (page.isEmpty() && cursor == null) {
             // no owners found
             result.rejectValue("lastName", "notFound", "not found");
             return "owners/findOwners";
-        } else if (results.size() == 1) {
+        } else if (page.getOwners().size() == 1 && cursor == null && !page.hasNext()) {
             // 1 owner found
-            owner = results.iterator().next();
-            return "redirect:/owners/" + owner.getId();
+            return "redirect:/owners/" + page.getOwners().get(0).getId();
         } else {
             // multiple owners found
-            model.put("selections", results);
+            model.put("selections", page.getOwners());
+            model.put("page", page);
+            model.put("size", pageSize);
             return "owners/ownersList";
         }
     }
@@ -106,28 +122,73 @@ class OwnerController {
         return VIEWS_OWNER_CREATE_OR_UPDATE_FORM;
     }
 
+    /**
+     * Update the owner, unless it has changed since the form was loaded: the form carries the version of the owner it
+     * shows, and the update is rejected if that is no longer the current one.
+     */
     @PostMapping("/owners/{ownerId}/edit")
     public String processUpdateOwnerForm(@Valid Owner owner, BindingResult result, @PathVariable("ownerId") int ownerId) {
+        if (owner.getVersion() == null) {
+            result.reject("concurrentUpdate", "changed in the meantime");
+        }
         if (result.hasErrors()) {
             return VIEWS_OWNER_CREATE_OR_UPDATE_FORM;
-        } else {
-            owner.setId(ownerId);
+        }
+        owner.setId(ownerId);
+        try {
             this.owners.save(owner);
-            return "redirect:/owners/{ownerId}";
+        } catch (ObjectOptimisticLockingFailureException ex) {
+            result.reject("concurrentUpdate", "changed in the meantime");
+            return VIEWS_OWNER_CREATE_OR_UPDATE_FORM;
         }
+        return "redirect:/owners/{ownerId}";
     }
 
     /**
      * Custom handler for displaying an owner.
+     * <p>
+     * The page is tagged with the version of the owner, which changes with the owner, its pets and their visits. A
+     * request revalidating the page with <code>If-None-Match</code> costs a single query for the version, and is
+     * answered with <code>304 Not Modified</code> if it is unchanged.
+     * </p>
+     * <p>
+     * Each pet is shown with its {@value #RECENT_VISITS} most recent visits, read for up to ten pets in one statement,
+     * and a link to the rest of its history, so a pet with years of visits costs the same to render as one with a few.
+     * </p>
      *
      * @param ownerId the ID of the owner to display
-     * @return a ModelMap with the model attributes for the view
+     * @return a ModelMap with the model attributes for the view, or <code>null</code> if the page is not modified
      */
     @GetMapping("/owners/{ownerId}")
-    public ModelAndView showOwner(@PathVariable("ownerId") int ownerId) {
+    public ModelAndView showOwner(@PathVariable("ownerId") int ownerId, WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Integer version = this.owners.findVersionById(ownerId);
+            if (version != null && request.checkNotModified(etag(ownerId, version, request))) {
+                return null;
+            }
+        }
+        Owner owner = this.owners.findById(ownerId);
+        // sets the ETag of the page, unless the revalidation above already has
+        if (owner != null && request.checkNotModified(etag(ownerId, owner.getVersion(), request))) {
+            return null;
+        }
         ModelAndView mav = new ModelAndView("owners/ownerDetails");
-        mav.addObject(this.owners.findById(ownerId));
+        mav.addObject(owner);
+        if (owner != null) {
+            List<Integer> petIds = new ArrayList<>();
+            for (Pet pet : owner.getPets()) {
+                petIds.add(pet.getId());
+            }
+            mav.addObject("visits", this.visits.findFirstPagesByPetIds(petIds, RECENT_VISITS));
+        }
         return mav;
     }
 
+    /**
+     * Return the ETag of the page of an owner, which is rendered in the language of the request.
+     */
+    static String etag(int ownerId, int version, WebRequest request) {
+        return "\"owner-" + ownerId + "-" + version + "-" + request.getLocale().toLanguageTag() + "\"";
+    }
+
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.core.style.ToStringCreator;
+import org.springframework.util.StringUtils;
+
+/**
+ * Position in the owner search results, expressed as the <code>(lastName, id)</code> key of the owner at the edge of a
+ * page. Searching from a cursor only has to seek in the <code>(last_name, id)</code> index instead of skipping over all
+ * preceding rows, so the cost of a page does not depend on how deep into the results it is.
+ * <p>
+ * Cursors travel as opaque, URL-safe tokens (see {@link #encode()} and {@link #decode(String)}).
+ * </p>
+ */
+public final class OwnerCursor {
+
+    private static final char FORWARD = 'a';
+
+    private static final char BACKWARD = 'b';
+
+    private static final char SEPARATOR = ':';
+
+    private final boolean forward;
+
+    private final String lastName;
+
+    private final int id;
+
+    private OwnerCursor(boolean forward, String lastName, int id) {
+        this.forward = forward;
+        this.lastName = lastName;
+        this.id = id;
+    }
+
+    /**
+     * Create a cursor selecting the owners that sort after the given owner.
+     */
+    public static OwnerCursor after(OwnerSummary owner) {
+        return new OwnerCursor(true, owner.getLastName(), owner.getId());
+    }
+
+    /**
+     * Create a cursor selecting the owners that sort before the given owner.
+     */
+    public static OwnerCursor before(OwnerSummary owner) {
+        return new OwnerCursor(false, owner.getLastName(), owner.getId());
+    }
+
+    /**
+     * Parse a token previously created by {@link #encode()}.
+     *
+     * @param token the token, may be <code>null</code> or empty
+     * @return the cursor, or <code>null</code> if the token is absent or malformed
+     */
+    public static OwnerCursor decode(String token) {
+        if (!StringUtils.hasLength(token)) {
+            return null;
+        }
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        int separator = value.indexOf(SEPARATOR, 2);
+        if (value.length() < 4 || value.charAt(1) != SEPARATOR || separator < 0
+                || (value.charAt(0) != FORWARD && value.charAt(0) != BACKWARD)) {
+            return null;
+        }
+        try {
+            int id = Integer.parseInt(value.substring(2, separator));
+            return new OwnerCursor(value.charAt(0) == FORWARD, value.substring(separator + 1), id);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Render this cursor as a URL-safe token.
+     */
+    public String encode() {
+        String value = (this.forward ? FORWARD : BACKWARD) + String.valueOf(SEPARATOR) + this.id + SEPARATOR
+                + this.lastName;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Return <code>true</code> if this cursor selects the owners after its key, <code>false</code> if it selects the
+     * owners before it.
+     */
+    public boolean isForward() {
+        return this.forward;
+    }
+
+    public String getLastName() {
+        return this.lastName;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this).append("forward", this.forward).append("lastName", this.lastName)
+                .append("id", this.id).toString();
+    }
+
+}
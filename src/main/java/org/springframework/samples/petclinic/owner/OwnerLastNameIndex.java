@@ -0,0 +1,317 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.samples.petclinic.system.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory index of the owners by last name, answering last name prefix lookups for the typeahead without a query.
+ * <p>
+ * The index is a skip list of the owners sorted by last name ignoring case, then by last name and id, so the owners
+ * with a given prefix are a contiguous range found in logarithmic time, next to a map of the owners by id. Owners
+ * sharing a last name share one string.
+ * <p>
+ * The index is built from a single query when the application context is refreshed, before requests are accepted, and
+ * kept up to date by the {@link OwnerSavedEvent} that {@link OwnerRepository#save(Owner) saving} an owner publishes
+ * once its transaction has committed. An update costs logarithmic time however large the clinic, and lookups never
+ * block: they run concurrently with updates and see each owner at its old or its new last name, or briefly at both.
+ * Owners written to the database by other means are only picked up by a {@link #rebuild()}, e.g. through
+ * <code>POST /manage/ownerindex</code>.
+ * <p>
+ * The size, estimated memory use and last rebuild time are published as <code>petclinic.owners.index.*</code> meters
+ * and by the <code>ownerindex</code> actuator endpoint.
+ */
+@Component
+public class OwnerLastNameIndex implements MeterBinder {
+
+    private final OwnerRepository owners;
+
+    private final Shards shards;
+
+    private final TransactionTemplate readOnly;
+
+    private volatile Entries entries = new Entries();
+
+    private volatile long rebuildNanos;
+
+    public OwnerLastNameIndex(OwnerRepository owners, Shards shards, PlatformTransactionManager transactionManager) {
+        this.owners = owners;
+        this.shards = shards;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    /**
+     * Return the owners whose last name starts with the given prefix, ignoring case, ordered by last name and id.
+     *
+     * @param prefix the start of the last name
+     * @param limit the maximum number of owners to return
+     * @return the matching owners, at most <code>limit</code>
+     */
+    public List<Match> findByLastNamePrefix(String prefix, int limit) {
+        List<Match> matches = new ArrayList<>(Math.min(limit, 16));
+        for (Entry entry : this.entries.sorted.tailSet(Entry.first(prefix))) {
+            if (matches.size() >= limit || !entry.lastName.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            matches.add(new Match(entry.ownerId, entry.lastName));
+        }
+        return matches;
+    }
+
+    /**
+     * Rebuild the index from the data store, reading the shards in parallel.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void rebuild() {
+        // holding the lock, saves committed meanwhile wait and are applied to the new index
+        long start = System.nanoTime();
+        List<Object[]> rows = this.shards.callOnAll(() -> this.readOnly.execute(status -> {
+            try (Stream<Object[]> stream = this.owners.streamAllLastNames()) {
+                return stream.filter(row -> row[1] != null).collect(Collectors.toList());
+            }
+        })).stream().flatMap(List::stream).collect(Collectors.toList());
+        Entries rebuilt = new Entries();
+        for (Object[] row : rows) {
+            rebuilt.put((Integer) row[0], (String) row[1]);
+        }
+        this.entries = rebuilt;
+        this.rebuildNanos = System.nanoTime() - start;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void ownerSaved(OwnerSavedEvent event) {
+        update(event.getOwnerId(), event.getLastName());
+    }
+
+    /**
+     * Add the owner to the index, or move it if its last name has changed.
+     */
+    synchronized void update(int ownerId, String lastName) {
+        if (lastName != null) {
+            this.entries.put(ownerId, lastName);
+        } else {
+            this.entries.remove(ownerId);
+        }
+    }
+
+    /**
+     * Return the number of owners in the index.
+     */
+    public int size() {
+        return this.entries.size;
+    }
+
+    /**
+     * Return the number of distinct last names in the index.
+     */
+    public int getLastNameCount() {
+        return this.entries.distinctLastNames;
+    }
+
+    /**
+     * Return an estimate of the heap used by the index in bytes, assuming compressed references and two bytes per
+     * character.
+     */
+    public long getEstimatedSize() {
+        Entries current = this.entries;
+        return Entries.ENTRY_BYTES * current.size + current.lastNameBytes;
+    }
+
+    /**
+     * Return how long the last {@link #rebuild()} took.
+     */
+    public Duration getRebuildTime() {
+        return Duration.ofNanos(this.rebuildNanos);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("petclinic.owners.index.size", this, OwnerLastNameIndex::size)
+            .description("The number of owners in the last name index")
+            .register(registry);
+        Gauge.builder("petclinic.owners.index.memory", this, OwnerLastNameIndex::getEstimatedSize)
+            .description("The estimated heap used by the last name index")
+            .baseUnit("bytes")
+            .register(registry);
+        TimeGauge.builder("petclinic.owners.index.rebuild", this, TimeUnit.NANOSECONDS, index -> index.rebuildNanos)
+            .description("The time the last rebuild of the last name index took")
+            .register(registry);
+    }
+
+    /**
+     * Compare last names ignoring case first, so that names differing in case only are adjacent, but are not mixed.
+     */
+    private static int compareLastNames(String lastName, String other) {
+        int comparison = String.CASE_INSENSITIVE_ORDER.compare(lastName, other);
+        return (comparison != 0 ? comparison : lastName.compareTo(other));
+    }
+
+    /**
+     * An owner found by {@link OwnerLastNameIndex#findByLastNamePrefix(String, int)}.
+     */
+    public static final class Match {
+
+        private final int id;
+
+        private final String lastName;
+
+        Match(int id, String lastName) {
+            this.id = id;
+            this.lastName = lastName;
+        }
+
+        public int getId() {
+            return this.id;
+        }
+
+        public String getLastName() {
+            return this.lastName;
+        }
+
+    }
+
+    /**
+     * An owner in the index, or the position of a prefix.
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        final int ownerId;
+
+        final String lastName;
+
+        /**
+         * Whether this entry is the position before all last names not before its own, ignoring case.
+         */
+        final boolean first;
+
+        Entry(int ownerId, String lastName, boolean first) {
+            this.ownerId = ownerId;
+            this.lastName = lastName;
+            this.first = first;
+        }
+
+        static Entry first(String prefix) {
+            return new Entry(Integer.MIN_VALUE, prefix, true);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (this.first != other.first
+                    && String.CASE_INSENSITIVE_ORDER.compare(this.lastName, other.lastName) == 0) {
+                return (this.first ? -1 : 1);
+            }
+            int comparison = compareLastNames(this.lastName, other.lastName);
+            return (comparison != 0 ? comparison : Integer.compare(this.ownerId, other.ownerId));
+        }
+
+    }
+
+    /**
+     * The entries of the index, changed only while holding the lock of the index.
+     */
+    private static final class Entries {
+
+        /**
+         * An entry, its node and on average a quarter of an index node in the skip list, its node and boxed id in the
+         * map by id, assuming compressed references.
+         */
+        static final int ENTRY_BYTES = 108;
+
+        private static final int ARRAY_HEADER_BYTES = 16;
+
+        private static final int STRING_BYTES = 24;
+
+        final ConcurrentSkipListSet<Entry> sorted = new ConcurrentSkipListSet<>();
+
+        final Map<Integer, Entry> byOwnerId = new HashMap<>();
+
+        volatile int size;
+
+        volatile int distinctLastNames;
+
+        volatile long lastNameBytes;
+
+        void put(int ownerId, String lastName) {
+            Entry old = this.byOwnerId.get(ownerId);
+            if (old != null && old.lastName.equals(lastName)) {
+                return;
+            }
+            Entry same = firstNamed(lastName);
+            if (same != null) {
+                lastName = same.lastName;
+            } else {
+                this.distinctLastNames++;
+                this.lastNameBytes += STRING_BYTES + ARRAY_HEADER_BYTES + 2L * lastName.length();
+            }
+            Entry entry = new Entry(ownerId, lastName, false);
+            // added before the old entry is removed, so that lookups meanwhile find the owner at either
+            this.sorted.add(entry);
+            this.byOwnerId.put(ownerId, entry);
+            if (old != null) {
+                unlink(old);
+            } else {
+                this.size++;
+            }
+        }
+
+        void remove(int ownerId) {
+            Entry old = this.byOwnerId.remove(ownerId);
+            if (old != null) {
+                unlink(old);
+                this.size--;
+            }
+        }
+
+        private void unlink(Entry entry) {
+            this.sorted.remove(entry);
+            if (firstNamed(entry.lastName) == null) {
+                this.distinctLastNames--;
+                this.lastNameBytes -= STRING_BYTES + ARRAY_HEADER_BYTES + 2L * entry.lastName.length();
+            }
+        }
+
+        /**
+         * Return the first entry with exactly the given last name, or <code>null</code> if there is none.
+         */
+        private Entry firstNamed(String lastName) {
+            Entry entry = this.sorted.ceiling(new Entry(Integer.MIN_VALUE, lastName, false));
+            return (entry != null && entry.lastName.equals(lastName) ? entry : null);
+        }
+
+    }
+
+}
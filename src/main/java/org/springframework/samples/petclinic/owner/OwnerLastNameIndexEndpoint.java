@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint reporting the size and rebuild time of the {@link OwnerLastNameIndex}:
+ * <code>GET /manage/ownerindex</code>. <code>POST /manage/ownerindex</code> rebuilds the index from the data store,
+ * e.g. after owners have been loaded into the database directly.
+ */
+@Component
+@WebEndpoint(id = "ownerindex")
+class OwnerLastNameIndexEndpoint {
+
+    private final OwnerLastNameIndex index;
+
+    OwnerLastNameIndexEndpoint(OwnerLastNameIndex index) {
+        this.index = index;
+    }
+
+    @ReadOperation
+    public Map<String, Object> statistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("owners", this.index.size());
+        statistics.put("lastNames", this.index.getLastNameCount());
+        statistics.put("estimatedBytes", this.index.getEstimatedSize());
+        statistics.put("rebuildMillis", this.index.getRebuildTime().toMillis());
+        return statistics;
+    }
+
+    /**
+     * Rebuild the index.
+     *
+     * @return the statistics of the rebuilt index
+     */
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        this.index.rebuild();
+        return statistics();
+    }
+
+}
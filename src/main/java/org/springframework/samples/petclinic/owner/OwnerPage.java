@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of {@link OwnerSummary owner} search results, ordered by <code>(lastName, id)</code>, together with the cursors leading to the
+ * neighbouring pages.
+ */
+public class OwnerPage {
+
+    /**
+     * Largest number of owners a page may hold.
+     */
+    public static final int MAX_SIZE = 100;
+
+    private final List<OwnerSummary> owners;
+
+    private final OwnerCursor next;
+
+    private final OwnerCursor previous;
+
+    public OwnerPage(List<OwnerSummary> owners, OwnerCursor next, OwnerCursor previous) {
+        this.owners = Collections.unmodifiableList(owners);
+        this.next = next;
+        this.previous = previous;
+    }
+
+    /**
+     * Build a page from the rows returned by a keyset query that asked for one row more than <code>pageSize</code>.
+     * The extra row only tells whether there are more results in the direction of the search and is dropped.
+     *
+     * @param rows the rows in query order, i.e. descending when <code>cursor</code> points backward
+     * @param cursor the cursor the rows were searched from, or <code>null</code> for the first page
+     * @param pageSize the requested page size
+     */
+    static OwnerPage of(List<OwnerSummary> rows, OwnerCursor cursor, int pageSize) {
+        boolean more = rows.size() > pageSize;
+        List<OwnerSummary> owners = new ArrayList<>(more ? rows.subList(0, pageSize) : rows);
+        boolean backward = cursor != null && !cursor.isForward();
+        if (backward) {
+            Collections.reverse(owners);
+        }
+        if (owners.isEmpty()) {
+            return new OwnerPage(owners, null, null);
+        }
+        boolean hasNext = backward || more;
+        boolean hasPrevious = backward ? more : cursor != null;
+        return new OwnerPage(owners,
+                hasNext ? OwnerCursor.after(owners.get(owners.size() - 1)) : null,
+                hasPrevious ? OwnerCursor.before(owners.get(0)) : null);
+    }
+
+    public List<OwnerSummary> getOwners() {
+        return this.owners;
+    }
+
+    public boolean isEmpty() {
+        return this.owners.isEmpty();
+    }
+
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    public boolean hasPrevious() {
+        return this.previous != null;
+    }
+
+    /**
+     * Return the cursor selecting the page after this one, or <code>null</code> if this is the last page.
+     */
+    public OwnerCursor getNext() {
+        return this.next;
+    }
+
+    /**
+     * Return the cursor selecting the page before this one, or <code>null</code> if this is the first page.
+     */
+    public OwnerCursor getPrevious() {
+        return this.previous;
+    }
+
+}
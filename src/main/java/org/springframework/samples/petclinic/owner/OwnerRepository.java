@@ -16,12 +16,25 @@
 package org.springframework.samples.petclinic.owner;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.Repository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.samples.petclinic.system.AllShards;
+import org.springframework.samples.petclinic.system.ShardKey;
 import org.springframework.transaction.annotation.Transactional;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 /**
  * Repository class for <code>Owner</code> domain objects All method names are compliant with Spring Data naming
  * conventions so this interface can easily be extended for Spring Data See here: http://static.springsource.org/spring-data/jpa/docs/current/reference/html/jpa.repositories.html#jpa.query-methods.query-creation
@@ -31,33 +44,157 @@ import org.springframework.transaction.annotation.Transactional;
  * @author Sam Brannen
  * @author Michael Isvy
  */
-public interface OwnerRepository extends Repository<Owner, Integer> {
+public interface OwnerRepository extends Repository<Owner, Integer>, OwnerVersionsRepository {
 
     /**
      * Retrieve {@link Owner}s from the data store by last name, returning all owners
      * whose last name <i>starts</i> with the given name.
      * @param lastName Value to search for
-     * @return a Collection of matching {@link Owner}s (or an empty Collection if none
+     * @return a Collection of matching {@link Owner}s ordered by last name and id (or an empty Collection if none
      * found)
      */
-    @Query("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.lastName LIKE :lastName%")
+    @Query("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.lastName LIKE :lastName%"
+            + " ORDER BY owner.lastName, owner.id")
     @Transactional(readOnly = true)
+    @AllShards(orderBy = { "lastName", "id" })
     Collection<Owner> findByLastName(@Param("lastName") String lastName);
 
     /**
-     * Retrieve an {@link Owner} from the data store by id.
+     * Retrieve one page of {@link OwnerSummary owners} whose last name <i>starts</i> with the given name, ordered by
+     * last name and id. Pages are addressed by keyset rather than by offset, so the cost of a page stays the same
+     * however far into the results it is.
+     * <p>
+     * The page is fetched in two phases: first the owner rows of the page alone, limited in SQL, then the pet names
+     * of all those owners in a single <code>IN</code> query. Unlike a join fetch this returns one row per owner and
+     * one per pet, and does not need <code>DISTINCT</code>. No entities are loaded, so pet types and visits are never
+     * touched. When the database is sharded, the first phase queries all shards in parallel, the second the shards
+     * holding the owners of the page, one after the other.
+     * </p>
+     * @param lastName Value to search for
+     * @param cursor the position to continue from, or <code>null</code> for the first page
+     * @param pageSize the maximum number of owners on the page
+     * @return the requested {@link OwnerPage} (empty if nothing was found)
+     */
+    @Transactional(readOnly = true)
+    default OwnerPage findPageByLastName(String lastName, OwnerCursor cursor, int pageSize) {
+        // one extra row tells whether there is another page in the direction of the search
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<OwnerSummary> rows;
+        if (cursor == null) {
+            rows = findFirstByLastName(lastName, limit);
+        } else if (cursor.isForward()) {
+            rows = findAfterByLastName(lastName, cursor.getLastName(), cursor.getId(), limit);
+        } else {
+            rows = findBeforeByLastName(lastName, cursor.getLastName(), cursor.getId(), limit);
+        }
+        OwnerPage page = OwnerPage.of(rows, cursor, pageSize);
+        if (!page.isEmpty()) {
+            Map<Integer, OwnerSummary> owners = new HashMap<>();
+            for (OwnerSummary owner : page.getOwners()) {
+                owners.put(owner.getId(), owner);
+            }
+            for (Object[] pet : findPetNamesByOwnerIds(owners.keySet())) {
+                owners.get(pet[0]).addPetName((String) pet[1]);
+            }
+        }
+        return page;
+    }
+
+    @Query("SELECT new org.springframework.samples.petclinic.owner.OwnerSummary(owner.id, owner.firstName,"
+            + " owner.lastName, owner.address, owner.city, owner.telephone) FROM Owner owner"
+            + " WHERE owner.lastName LIKE :lastName% ORDER BY owner.lastName, owner.id")
+    @Transactional(readOnly = true)
+    @AllShards(orderBy = { "lastName", "id" })
+    List<OwnerSummary> findFirstByLastName(@Param("lastName") String lastName, Pageable pageable);
+
+    @Query("SELECT new org.springframework.samples.petclinic.owner.OwnerSummary(owner.id, owner.firstName,"
+            + " owner.lastName, owner.address, owner.city, owner.telephone) FROM Owner owner"
+            + " WHERE owner.lastName LIKE :lastName% AND (owner.lastName > :afterLastName"
+            + " OR (owner.lastName = :afterLastName AND owner.id > :afterId)) ORDER BY owner.lastName, owner.id")
+    @Transactional(readOnly = true)
+    @AllShards(orderBy = { "lastName", "id" })
+    List<OwnerSummary> findAfterByLastName(@Param("lastName") String lastName,
+            @Param("afterLastName") String afterLastName, @Param("afterId") Integer afterId, Pageable pageable);
+
+    @Query("SELECT new org.springframework.samples.petclinic.owner.OwnerSummary(owner.id, owner.firstName,"
+            + " owner.lastName, owner.address, owner.city, owner.telephone) FROM Owner owner"
+            + " WHERE owner.lastName LIKE :lastName% AND (owner.lastName < :beforeLastName"
+            + " OR (owner.lastName = :beforeLastName AND owner.id < :beforeId))"
+            + " ORDER BY owner.lastName DESC, owner.id DESC")
+    @Transactional(readOnly = true)
+    @AllShards(orderBy = { "lastName", "id" }, ascending = false)
+    List<OwnerSummary> findBeforeByLastName(@Param("lastName") String lastName,
+            @Param("beforeLastName") String beforeLastName, @Param("beforeId") Integer beforeId, Pageable pageable);
+
+    /**
+     * Retrieve an {@link OwnerSummary} from the data store by id, without the names of its pets.
+     * @param id the id to search for
+     * @return the {@link OwnerSummary} if found, or <code>null</code>
+     */
+    @Query("SELECT new org.springframework.samples.petclinic.owner.OwnerSummary(owner.id, owner.firstName,"
+            + " owner.lastName, owner.address, owner.city, owner.telephone) FROM Owner owner WHERE owner.id = :id")
+    @Transactional(readOnly = true)
+    OwnerSummary findSummaryById(@Param("id") @ShardKey Integer id);
+
+    /**
+     * Return a reference to the {@link Owner} with the given id, e.g. to set as the owner of a {@link Pet}, without
+     * loading it. Its state is loaded on first access.
+     * @param id the id of an existing owner
+     * @return the reference
+     */
+    Owner getOne(@ShardKey Integer id);
+
+    /**
+     * Retrieve <code>(ownerId, petName)</code> pairs for the pets of the given owners, ordered by pet name.
+     */
+    @Query("SELECT pet.owner.id, pet.name FROM Pet pet WHERE pet.owner.id IN :ownerIds ORDER BY lower(pet.name)")
+    @Transactional(readOnly = true)
+    List<Object[]> findPetNamesByOwnerIds(@Param("ownerIds") @ShardKey Collection<Integer> ownerIds);
+
+    /**
+     * Stream the columns of all owners, ordered by id, for export: <code>id, firstName, lastName, address, city,
+     * telephone</code>. Rows are fetched from a forward-only cursor as the stream is consumed, and are not entities, so
+     * they are not retained by the persistence context. Must be called within a transaction, and the stream closed.
+     * Streams the owners of the current shard, see {@link org.springframework.samples.petclinic.system.Shards}.
+     */
+    @Query("SELECT owner.id, owner.firstName, owner.lastName, owner.address, owner.city, owner.telephone"
+            + " FROM Owner owner ORDER BY owner.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Object[]> streamAllForExport();
+
+    /**
+     * Stream the <code>id, lastName</code> pairs of all owners of the current shard, to build the
+     * {@link OwnerLastNameIndex}. Must be called within a transaction, and the stream closed.
+     */
+    @Query("SELECT owner.id, owner.lastName FROM Owner owner")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Object[]> streamAllLastNames();
+
+    /**
+     * Retrieve an {@link Owner} from the data store by id, with its pets and their types, but not their visits: see
+     * {@link org.springframework.samples.petclinic.visit.VisitRepository#findFirstPagesByPetIds} for these.
      * @param id the id to search for
      * @return the {@link Owner} if found
      */
-    @Query("SELECT owner FROM Owner owner left join fetch owner.pets WHERE owner.id =:id")
+    @Query("SELECT owner FROM Owner owner left join fetch owner.pets pet left join fetch pet.type WHERE owner.id =:id")
+    @Transactional(readOnly = true)
+    Owner findById(@Param("id") @ShardKey Integer id);
+
+    /**
+     * Retrieve the version of an {@link Owner}, which changes whenever the owner, its pets or their visits change.
+     * @param id the id to search for
+     * @return the version, or <code>null</code> if there is no such owner
+     */
+    @Query("SELECT owner.version FROM Owner owner WHERE owner.id = :id")
     @Transactional(readOnly = true)
-    Owner findById(@Param("id") Integer id);
+    Integer findVersionById(@Param("id") @ShardKey Integer id);
 
     /**
-     * Save an {@link Owner} to the data store, either inserting or updating it.
+     * Save an {@link Owner} to the data store, either inserting or updating it. An update must carry the version the
+     * owner was read at, and fails with an optimistic locking exception if the owner has changed since.
      * @param owner the {@link Owner} to save
      */
-    void save(Owner owner);
+    void save(@ShardKey Owner owner);
 
 
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.samples.petclinic.visit.VisitSavedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Increments the version of an owner when one of its pets, or a visit of one of its pets, is saved, so that the
+ * version stands for everything shown on the owner's page and can serve as its ETag.
+ * <p>
+ * The owners are collected over a transaction and their versions incremented just before it commits, by at most two
+ * update statements and a query for the owners of the pets however many pets or visits were saved, e.g. by a chunk of
+ * the visit import. Only the owners updated are evicted from the second-level cache, see
+ * {@link OwnerVersionsRepositoryImpl}.
+ */
+@Component
+class OwnerVersionIncrementer {
+
+    private final OwnerRepository owners;
+
+    OwnerVersionIncrementer(OwnerRepository owners) {
+        this.owners = owners;
+    }
+
+    @EventListener
+    public void petSaved(PetSavedEvent event) {
+        if (event.getOwnerId() == null) {
+            return;
+        }
+        Changes changes = currentChanges();
+        if (changes != null) {
+            changes.ownerIds.add(event.getOwnerId());
+        } else {
+            this.owners.incrementVersions(Collections.singleton(event.getOwnerId()));
+        }
+    }
+
+    @EventListener
+    public void visitSaved(VisitSavedEvent event) {
+        if (event.getPetId() == null) {
+            return;
+        }
+        Changes changes = currentChanges();
+        if (changes != null) {
+            changes.petIds.add(event.getPetId());
+        } else {
+            this.owners.incrementVersionsByPetIds(Collections.singleton(event.getPetId()));
+        }
+    }
+
+    /**
+     * Return the changes collected in the current transaction, or <code>null</code> outside of a transaction.
+     */
+    private Changes currentChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            changes = new Changes();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(changes);
+        }
+        return changes;
+    }
+
+    private class Changes implements TransactionSynchronization {
+
+        final Set<Integer> ownerIds = new HashSet<>();
+
+        final Set<Integer> petIds = new HashSet<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (!this.ownerIds.isEmpty()) {
+                owners.incrementVersions(this.ownerIds);
+            }
+            if (!this.petIds.isEmpty()) {
+                owners.incrementVersionsByPetIds(this.petIds);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(OwnerVersionIncrementer.this);
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.Collection;
+
+import org.springframework.samples.petclinic.system.ShardKey;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Updates of the {@link OwnerRepository} that must not go through JPQL, see {@link OwnerVersionsRepositoryImpl}.
+ */
+public interface OwnerVersionsRepository {
+
+    /**
+     * Increment the versions of the given owners, e.g. when one of their pets has changed.
+     */
+    @Transactional
+    void incrementVersions(@ShardKey Collection<Integer> ids);
+
+    /**
+     * Increment the versions of the owners of the given pets, e.g. when visits of these pets have changed.
+     */
+    @Transactional
+    void incrementVersionsByPetIds(@ShardKey Collection<Integer> petIds);
+
+}
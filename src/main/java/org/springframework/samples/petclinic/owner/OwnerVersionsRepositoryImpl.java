@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Increments owner versions by a plain SQL update, executed by the current session after it has flushed its changes,
+ * like a JPQL update would be. A JPQL update of owners would have Hibernate evict all owners from the second-level
+ * cache though, so only the owners updated are evicted here: at once, and again when the transaction completes, in
+ * case a concurrent read has cached an owner in the meantime. No query result involving owners is cached, so there
+ * are no cached queries to invalidate.
+ */
+class OwnerVersionsRepositoryImpl implements OwnerVersionsRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void incrementVersions(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Integer> ownerIds = new ArrayList<>(ids);
+        StringBuilder sql = new StringBuilder("UPDATE owners SET version = version + 1 WHERE id IN (");
+        for (int i = 0; i < ownerIds.size(); i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(')');
+        this.entityManager.flush();
+        SharedSessionContractImplementor session = this.entityManager.unwrap(SharedSessionContractImplementor.class);
+        JdbcCoordinator jdbc = session.getJdbcCoordinator();
+        PreparedStatement statement = jdbc.getStatementPreparer().prepareStatement(sql.toString());
+        try {
+            for (int i = 0; i < ownerIds.size(); i++) {
+                statement.setInt(i + 1, ownerIds.get(i));
+            }
+            jdbc.getResultSetReturn().executeUpdate(statement);
+        } catch (SQLException ex) {
+            throw session.getFactory().getJdbcServices().getSqlExceptionHelper()
+                .convert(ex, "Could not increment owner versions", sql.toString());
+        } finally {
+            jdbc.getLogicalConnection().getResourceRegistry().release(statement);
+            jdbc.afterStatementExecution();
+        }
+        evict(ownerIds);
+    }
+
+    @Override
+    public void incrementVersionsByPetIds(Collection<Integer> petIds) {
+        if (petIds.isEmpty()) {
+            return;
+        }
+        incrementVersions(this.entityManager
+            .createQuery("SELECT DISTINCT pet.owner.id FROM Pet pet WHERE pet.id IN :petIds", Integer.class)
+            .setParameter("petIds", petIds)
+            .getResultList());
+    }
+
+    private void evict(List<Integer> ownerIds) {
+        Cache cache = this.entityManager.getEntityManagerFactory().getCache();
+        for (Integer id : ownerIds) {
+            cache.evict(Owner.class, id);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    for (Integer id : ownerIds) {
+                        cache.evict(Owner.class, id);
+                    }
+                }
+
+            });
+        }
+    }
+
+}
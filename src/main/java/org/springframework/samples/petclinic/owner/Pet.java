@@ -17,25 +17,29 @@ package org.springframework.samples.petclinic.owner;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.OrderBy;
 import javax.persistence.Table;
-
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
+import javax.persistence.Transient;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.springframework.data.domain.DomainEvents;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.samples.petclinic.model.NamedEntity;
+import org.springframework.samples.petclinic.system.ShardKeyed;
 import org.springframework.samples.petclinic.visit.Visit;
 
 /**
@@ -47,7 +51,8 @@ import org.springframework.samples.petclinic.visit.Visit;
  */
 @Entity
 @Table(name = "pets")
-public class Pet extends NamedEntity {
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pets")
+public class Pet extends NamedEntity implements ShardKeyed {
 
     @Column(name = "birth_date")
     @DateTimeFormat(pattern = "yyyy-MM-dd")
@@ -61,8 +66,25 @@ public class Pet extends NamedEntity {
     @JoinColumn(name = "owner_id")
     private Owner owner;
 
-    @OneToMany(cascade = CascadeType.ALL, mappedBy = "petId", fetch = FetchType.EAGER)
-    private Set<Visit> visits = new LinkedHashSet<>();
+    @OneToMany(cascade = CascadeType.ALL, mappedBy = "petId")
+    @Fetch(FetchMode.SUBSELECT)
+    @OrderBy("date DESC, id DESC")
+    private List<Visit> visits = new ArrayList<>();
+
+    @Version
+    @Column(name = "version")
+    private Integer version;
+
+    @Transient
+    private ReadOnlyList<Visit> visitsView;
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        if (this.owner != null) {
+            this.owner.petRenamed();
+        }
+    }
 
     public void setBirthDate(LocalDate birthDate) {
         this.birthDate = birthDate;
@@ -88,27 +110,55 @@ public class Pet extends NamedEntity {
         this.owner = owner;
     }
 
-    protected Set<Visit> getVisitsInternal() {
+    public Integer getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    protected List<Visit> getVisitsInternal() {
         if (this.visits == null) {
-            this.visits = new HashSet<>();
+            this.visits = new ArrayList<>();
         }
         return this.visits;
     }
 
-    protected void setVisitsInternal(Set<Visit> visits) {
+    protected void setVisitsInternal(List<Visit> visits) {
         this.visits = visits;
     }
 
+    /**
+     * Return the visits, most recent first. The visits are loaded in that order and {@link #addVisit(Visit) added} in
+     * place, so this is a read-only view rather than a sorted copy.
+     */
     public List<Visit> getVisits() {
-        List<Visit> sortedVisits = new ArrayList<>(getVisitsInternal());
-        PropertyComparator.sort(sortedVisits,
-                new MutableSortDefinition("date", false, false));
-        return Collections.unmodifiableList(sortedVisits);
+        this.visitsView = ReadOnlyList.of(getVisitsInternal(), this.visitsView);
+        return this.visitsView;
     }
 
     public void addVisit(Visit visit) {
-        getVisitsInternal().add(visit);
+        List<Visit> visits = getVisitsInternal();
+        int index = Collections.binarySearch(visits, visit, Visit.MOST_RECENT_FIRST);
+        visits.add(index < 0 ? -index - 1 : index, visit);
         visit.setPetId(this.getId());
     }
 
+    /**
+     * A pet is kept on the shard of its owner, where it gets its id.
+     */
+    @Override
+    public Integer shardKey() {
+        return (!isNew() || this.owner == null ? getId() : this.owner.getId());
+    }
+
+    /**
+     * The event published by {@link PetRepository#save(Pet)} once this pet has been saved.
+     */
+    @DomainEvents
+    Collection<PetSavedEvent> savedEvents() {
+        return Collections.singletonList(new PetSavedEvent(this.owner != null ? this.owner.getId() : null));
+    }
+
 }
@@ -15,12 +15,17 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.validation.Valid;
 import java.util.Collection;
@@ -35,6 +40,7 @@ import java.util.Collection;
 class PetController {
 
     private static final String VIEWS_PETS_CREATE_OR_UPDATE_FORM = "pets/createOrUpdatePetForm";
+    private static final String UNIQUE_PET_NAME_CONSTRAINT = "pets_owner_name";
     private final PetRepository pets;
     private final OwnerRepository owners;
 
@@ -48,14 +54,17 @@ class PetController {
         return this.pets.findPetTypes();
     }
 
+    /**
+     * Only the owner's name is shown on the pet forms, so it is not loaded with its pets and their visits here. The
+     * owner itself is loaded only to add a pet, as the name of the new pet must not be taken by one of the others.
+     */
     @ModelAttribute("owner")
-    public Owner findOwner(@PathVariable("ownerId") int ownerId) {
-        return this.owners.findById(ownerId);
-    }
-
-    @InitBinder("owner")
-    public void initOwnerBinder(WebDataBinder dataBinder) {
-        dataBinder.setDisallowedFields("id");
+    public OwnerSummary findOwner(@PathVariable("ownerId") int ownerId) {
+        OwnerSummary owner = this.owners.findSummaryById(ownerId);
+        if (owner == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No owner " + ownerId);
+        }
+        return owner;
     }
 
     @InitBinder("pet")
@@ -64,45 +73,84 @@ class PetController {
     }
 
     @GetMapping("/pets/new")
-    public String initCreationForm(Owner owner, ModelMap model) {
+    public String initCreationForm(ModelMap model) {
         Pet pet = new Pet();
-        owner.addPet(pet);
         model.put("pet", pet);
         return VIEWS_PETS_CREATE_OR_UPDATE_FORM;
     }
 
     @PostMapping("/pets/new")
-    public String processCreationForm(Owner owner, @Valid Pet pet, BindingResult result, ModelMap model) {
-        if (StringUtils.hasLength(pet.getName()) && pet.isNew() && owner.getPet(pet.getName(), true) != null){
-            result.rejectValue("name", "duplicate", "already exists");
+    public String processCreationForm(@PathVariable("ownerId") int ownerId, @Valid Pet pet, BindingResult result,
+            ModelMap model) {
+        if (StringUtils.hasLength(pet.getName()) && pet.isNew()) {
+            Owner owner = this.owners.findById(ownerId);
+            if (owner.getPet(pet.getName(), true) != null) {
+                result.rejectValue("name", "duplicate", "already exists");
+            }
+            owner.addPet(pet);
+        } else {
+            pet.setOwner(this.owners.getOne(ownerId));
         }
-        owner.addPet(pet);
-        if (result.hasErrors()) {
+        if (result.hasErrors() || !save(pet, result)) {
             model.put("pet", pet);
             return VIEWS_PETS_CREATE_OR_UPDATE_FORM;
         } else {
-            this.pets.save(pet);
             return "redirect:/owners/{ownerId}";
         }
     }
 
     @GetMapping("/pets/{petId}/edit")
-    public String initUpdateForm(@PathVariable("petId") int petId, ModelMap model) {
+    public String initUpdateForm(@PathVariable("ownerId") int ownerId, @PathVariable("petId") int petId,
+            ModelMap model) {
         Pet pet = this.pets.findById(petId);
+        if (pet == null || !pet.getOwner().getId().equals(ownerId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner " + ownerId + " has no pet " + petId);
+        }
         model.put("pet", pet);
         return VIEWS_PETS_CREATE_OR_UPDATE_FORM;
     }
 
     @PostMapping("/pets/{petId}/edit")
-    public String processUpdateForm(@Valid Pet pet, BindingResult result, Owner owner, ModelMap model) {
+    public String processUpdateForm(@PathVariable("ownerId") int ownerId, @PathVariable("petId") int petId,
+            @Valid Pet pet, BindingResult result, ModelMap model) {
+        if (!this.pets.existsByIdAndOwnerId(petId, ownerId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner " + ownerId + " has no pet " + petId);
+        }
+        if (pet.getVersion() == null) {
+            result.reject("concurrentUpdate", "changed in the meantime");
+        }
         if (result.hasErrors()) {
-            pet.setOwner(owner);
             model.put("pet", pet);
             return VIEWS_PETS_CREATE_OR_UPDATE_FORM;
-        } else {
-            owner.addPet(pet);
+        }
+        pet.setId(petId);
+        pet.setOwner(this.owners.getOne(ownerId));
+        if (!save(pet, result)) {
+            model.put("pet", pet);
+            return VIEWS_PETS_CREATE_OR_UPDATE_FORM;
+        }
+        return "redirect:/owners/{ownerId}";
+    }
+
+    /**
+     * Save the pet, rejecting its name if the database finds another pet of the owner by that name, e.g. one added
+     * concurrently since the owner was loaded, and rejecting an update of a pet that has changed since the form was
+     * loaded.
+     */
+    private boolean save(Pet pet, BindingResult result) {
+        try {
             this.pets.save(pet);
-            return "redirect:/owners/{ownerId}";
+            return true;
+        } catch (DataIntegrityViolationException ex) {
+            if (!(ex.getCause() instanceof ConstraintViolationException) || !UNIQUE_PET_NAME_CONSTRAINT
+                .equalsIgnoreCase(((ConstraintViolationException) ex.getCause()).getConstraintName())) {
+                throw ex;
+            }
+            result.rejectValue("name", "duplicate", "already exists");
+            return false;
+        } catch (ObjectOptimisticLockingFailureException ex) {
+            result.reject("concurrentUpdate", "changed in the meantime");
+            return false;
         }
     }
 
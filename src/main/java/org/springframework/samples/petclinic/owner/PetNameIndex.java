@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.List;
+
+/**
+ * Case-insensitive index of an owner's pets by name, kept by {@link Owner} next to its pets.
+ * <p>
+ * An open addressing hash table whose hash and equality ignore case the way {@link String#equalsIgnoreCase} does, so
+ * a lookup neither lowercases the name nor allocates a key. Where several pets share a name, a pet that has been saved
+ * takes precedence over a new one.
+ */
+final class PetNameIndex {
+
+    private final List<Pet> source;
+
+    private Pet[] table;
+
+    private int size;
+
+    PetNameIndex(List<Pet> pets) {
+        this.source = pets;
+        int capacity = 16;
+        while (capacity < pets.size() * 2) {
+            capacity <<= 1;
+        }
+        this.table = new Pet[capacity];
+        for (Pet pet : pets) {
+            add(pet);
+        }
+    }
+
+    /**
+     * Whether this is the index of the given list instance, which Hibernate replaces when it loads or merges an owner.
+     */
+    boolean isIndexOf(List<Pet> pets) {
+        return this.source == pets;
+    }
+
+    Pet get(String name) {
+        int mask = this.table.length - 1;
+        for (int i = hash(name) & mask; this.table[i] != null; i = (i + 1) & mask) {
+            if (this.table[i].getName().equalsIgnoreCase(name)) {
+                return this.table[i];
+            }
+        }
+        return null;
+    }
+
+    void add(Pet pet) {
+        String name = pet.getName();
+        if (name == null) {
+            return;
+        }
+        int mask = this.table.length - 1;
+        int i = hash(name) & mask;
+        for (; this.table[i] != null; i = (i + 1) & mask) {
+            if (this.table[i].getName().equalsIgnoreCase(name)) {
+                if (this.table[i].isNew() && !pet.isNew()) {
+                    this.table[i] = pet;
+                }
+                return;
+            }
+        }
+        this.table[i] = pet;
+        if (++this.size * 2 > this.table.length) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        Pet[] old = this.table;
+        this.table = new Pet[old.length * 2];
+        int mask = this.table.length - 1;
+        for (Pet pet : old) {
+            if (pet != null) {
+                int i = hash(pet.getName()) & mask;
+                while (this.table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.table[i] = pet;
+            }
+        }
+    }
+
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -15,12 +15,22 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.samples.petclinic.system.ShardKey;
 import org.springframework.transaction.annotation.Transactional;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 /**
  * Repository class for <code>Pet</code> domain objects All method names are compliant with Spring Data naming
  * conventions so this interface can easily be extended for Spring Data See here: http://static.springsource.org/spring-data/jpa/docs/current/reference/html/jpa.repositories.html#jpa.query-methods.query-creation
@@ -33,11 +43,13 @@ import org.springframework.transaction.annotation.Transactional;
 public interface PetRepository extends Repository<Pet, Integer> {
 
     /**
-     * Retrieve all {@link PetType}s from the data store.
+     * Retrieve all {@link PetType}s from the data store. The result is cached, see
+     * {@link PetTypeRepository#save(PetType)} for the eviction.
      * @return a Collection of {@link PetType}s.
      */
     @Query("SELECT ptype FROM PetType ptype ORDER BY ptype.name")
     @Transactional(readOnly = true)
+    @Cacheable("petTypes")
     List<PetType> findPetTypes();
 
     /**
@@ -46,13 +58,50 @@ public interface PetRepository extends Repository<Pet, Integer> {
      * @return the {@link Pet} if found
      */
     @Transactional(readOnly = true)
-    Pet findById(Integer id);
+    Pet findById(@ShardKey Integer id);
+
+    /**
+     * Retrieve a {@link PetSummary} from the data store by id, without loading the pet's visits.
+     * @param id the id to search for
+     * @return the {@link PetSummary} if found, or <code>null</code>
+     */
+    @Query("SELECT new org.springframework.samples.petclinic.owner.PetSummary(pet.id, pet.name, pet.birthDate,"
+        + " type.name, owner.id, owner.firstName, owner.lastName)"
+        + " FROM Pet pet JOIN pet.type type JOIN pet.owner owner WHERE pet.id = :id")
+    @Transactional(readOnly = true)
+    PetSummary findSummaryById(@Param("id") @ShardKey Integer id);
+
+    /**
+     * Check that a {@link Pet} exists and belongs to the given owner, without loading either.
+     * @param id the id of the pet
+     * @param ownerId the id of its owner
+     * @return <code>true</code> if the owner has a pet with this id
+     */
+    @Transactional(readOnly = true)
+    boolean existsByIdAndOwnerId(@ShardKey Integer id, Integer ownerId);
+
+    /**
+     * Retrieve those of the given ids that belong to an existing {@link Pet}.
+     * @param ids the ids to check
+     * @return the ids of existing pets, in no particular order
+     */
+    @Query("SELECT pet.id FROM Pet pet WHERE pet.id IN :ids")
+    @Transactional(readOnly = true)
+    List<Integer> findExistingIds(@Param("ids") @ShardKey Collection<Integer> ids);
+
+    /**
+     * Stream the columns of all pets, ordered by id, for export: <code>id, ownerId, name, birthDate, type</code>. See
+     * {@link OwnerRepository#streamAllForExport()}, streams the pets of the current shard.
+     */
+    @Query("SELECT pet.id, pet.owner.id, pet.name, pet.birthDate, pet.type.name FROM Pet pet ORDER BY pet.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Object[]> streamAllForExport();
 
     /**
      * Save a {@link Pet} to the data store, either inserting or updating it.
      * @param pet the {@link Pet} to save
      */
-    void save(Pet pet);
+    void save(@ShardKey Pet pet);
 
 }
 
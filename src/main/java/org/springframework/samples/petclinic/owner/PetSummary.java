@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.time.LocalDate;
+
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Read-only view of a {@link Pet} with the names of its type and owner, e.g. for the heading of the visit form. Being
+ * a plain projection rather than an entity, it does not load the pet's visits.
+ */
+public class PetSummary {
+
+    private final Integer id;
+
+    private final String name;
+
+    private final LocalDate birthDate;
+
+    private final String type;
+
+    private final Integer ownerId;
+
+    private final String ownerFirstName;
+
+    private final String ownerLastName;
+
+    public PetSummary(Integer id, String name, LocalDate birthDate, String type, Integer ownerId,
+            String ownerFirstName, String ownerLastName) {
+        this.id = id;
+        this.name = name;
+        this.birthDate = birthDate;
+        this.type = type;
+        this.ownerId = ownerId;
+        this.ownerFirstName = ownerFirstName;
+        this.ownerLastName = ownerLastName;
+    }
+
+    public Integer getId() {
+        return this.id;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public LocalDate getBirthDate() {
+        return this.birthDate;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public Integer getOwnerId() {
+        return this.ownerId;
+    }
+
+    public String getOwnerFirstName() {
+        return this.ownerFirstName;
+    }
+
+    public String getOwnerLastName() {
+        return this.ownerLastName;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("id", this.id)
+                .append("name", this.name)
+                .append("type", this.type)
+                .append("ownerId", this.ownerId).toString();
+    }
+
+}
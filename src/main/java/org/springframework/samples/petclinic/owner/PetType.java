@@ -18,14 +18,19 @@ package org.springframework.samples.petclinic.owner;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.samples.petclinic.model.NamedEntity;
 
 /**
  * @author Juergen Hoeller
  *         Can be Cat, Dog, Hamster...
+ *         Types are reference data, rarely changed, cached in the second-level cache. An update evicts the cached
+ *         type, readers may see the old name until the transaction commits.
  */
 @Entity
 @Table(name = "types")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "types")
 public class PetType extends NamedEntity {
 
 }
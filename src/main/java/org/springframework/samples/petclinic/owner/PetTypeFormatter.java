@@ -17,11 +17,14 @@ package org.springframework.samples.petclinic.owner;
 
 
 import java.text.ParseException;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.Formatter;
+import org.springframework.samples.petclinic.system.CacheGenerations;
 import org.springframework.stereotype.Component;
 
 /**
@@ -40,10 +43,14 @@ public class PetTypeFormatter implements Formatter<PetType> {
 
     private final PetRepository pets;
 
+    private final CacheGenerations generations;
+
+    private volatile PetTypeIndex index;
 
     @Autowired
-    public PetTypeFormatter(PetRepository pets) {
+    public PetTypeFormatter(PetRepository pets, CacheGenerations generations) {
         this.pets = pets;
+        this.generations = generations;
     }
 
     @Override
@@ -53,13 +60,42 @@ public class PetTypeFormatter implements Formatter<PetType> {
 
     @Override
     public PetType parse(String text, Locale locale) throws ParseException {
-        Collection<PetType> findPetTypes = this.pets.findPetTypes();
-        for (PetType type : findPetTypes) {
-            if (type.getName().equals(text)) {
-                return type;
+        long generation = this.generations.get("petTypes");
+        PetType type = indexOf(this.pets.findPetTypes(), generation).get(text);
+        if (type == null) {
+            throw new ParseException("type not found: " + text, 0);
+        }
+        return type;
+    }
+
+    /**
+     * Return a name to type map for the given list, reusing the previous map as long as the generation of the
+     * <code>petTypes</code> cache stays the same, see {@link CacheGenerations}. A list of a new generation, e.g. after
+     * the cache has been evicted, gets a new map.
+     */
+    private Map<String, PetType> indexOf(List<PetType> types, long generation) {
+        PetTypeIndex current = this.index;
+        if (current == null || current.generation != generation) {
+            current = new PetTypeIndex(types, generation);
+            this.index = current;
+        }
+        return current.byName;
+    }
+
+    private static final class PetTypeIndex {
+
+        private final long generation;
+
+        private final Map<String, PetType> byName;
+
+        PetTypeIndex(List<PetType> types, long generation) {
+            this.generation = generation;
+            this.byName = new HashMap<>();
+            for (PetType type : types) {
+                this.byName.putIfAbsent(type.getName(), type);
             }
         }
-        throw new ParseException("type not found: " + text, 0);
+
     }
 
 }
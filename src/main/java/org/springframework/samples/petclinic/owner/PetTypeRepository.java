@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.repository.Repository;
+
+/**
+ * Repository class for <code>PetType</code> domain objects. Pet types are read through
+ * {@link PetRepository#findPetTypes()}, which is cached; writes go through this repository so that the cache is
+ * invalidated.
+ */
+public interface PetTypeRepository extends Repository<PetType, Integer> {
+
+    /**
+     * Save a {@link PetType} to the data store, either inserting or updating it, and evict the cached list of types.
+     * @param petType the {@link PetType} to save
+     */
+    @CacheEvict(cacheNames = "petTypes", allEntries = true)
+    void save(PetType petType);
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of an entity's collection, kept by the entity so that its getter does not allocate a new wrapper or
+ * copy on every call. Reading the view reads through to the collection, initializing it if it is lazy.
+ */
+final class ReadOnlyList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final List<E> source;
+
+    private ReadOnlyList(List<E> source) {
+        this.source = source;
+    }
+
+    /**
+     * Return a view of the given list, reusing <code>current</code> if it is a view of the same list instance.
+     * Hibernate replaces an entity's collection when loading or merging it, in which case a new view is returned.
+     */
+    static <E> ReadOnlyList<E> of(List<E> source, ReadOnlyList<E> current) {
+        return (current != null && current.source == source ? current : new ReadOnlyList<>(source));
+    }
+
+    @Override
+    public E get(int index) {
+        return this.source.get(index);
+    }
+
+    @Override
+    public int size() {
+        return this.source.size();
+    }
+
+}
@@ -15,12 +15,17 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.samples.petclinic.visit.VisitCursor;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.validation.Valid;
 import java.util.Map;
@@ -35,6 +40,10 @@ import java.util.Map;
 @Controller
 class VisitController {
 
+    private static final Pageable RECENT_VISITS = PageRequest.of(0, 10);
+
+    static final int HISTORY_PAGE_SIZE = 20;
+
     private final VisitRepository visits;
     private final PetRepository pets;
 
@@ -46,38 +55,40 @@ class VisitController {
 
     @InitBinder
     public void setAllowedFields(WebDataBinder dataBinder) {
-        dataBinder.setDisallowedFields("id");
+        // the pet is the one in the path
+        dataBinder.setDisallowedFields("id", "petId");
     }
 
     /**
-     * Called before each and every @RequestMapping annotated method.
-     * 2 goals:
-     * - Make sure we always have fresh data
-     * - Since we do not use the session scope, make sure that Pet object always has an id
-     * (Even though id is not part of the form fields)
+     * Called before each and every @RequestMapping annotated method. Binds the new visit to the pet by id only: the
+     * pet itself, with its whole visit history, is not loaded to add a visit.
      *
      * @param petId
-     * @return Pet
+     * @return Visit
      */
     @ModelAttribute("visit")
-    public Visit loadPetWithVisit(@PathVariable("petId") int petId, Map<String, Object> model) {
-        Pet pet = this.pets.findById(petId);
-        model.put("pet", pet);
+    public Visit newVisit(@PathVariable("petId") int petId) {
         Visit visit = new Visit();
-        pet.addVisit(visit);
+        visit.setPetId(petId);
         return visit;
     }
 
-    // Spring MVC calls method loadPetWithVisit(...) before initNewVisitForm is called
+    // Spring MVC calls method newVisit(...) before initNewVisitForm is called
     @GetMapping("/owners/*/pets/{petId}/visits/new")
     public String initNewVisitForm(@PathVariable("petId") int petId, Map<String, Object> model) {
+        populateForm(petId, model);
         return "pets/createOrUpdateVisitForm";
     }
 
-    // Spring MVC calls method loadPetWithVisit(...) before processNewVisitForm is called
+    // Spring MVC calls method newVisit(...) before processNewVisitForm is called
     @PostMapping("/owners/{ownerId}/pets/{petId}/visits/new")
-    public String processNewVisitForm(@Valid Visit visit, BindingResult result) {
+    public String processNewVisitForm(@PathVariable("ownerId") int ownerId, @PathVariable("petId") int petId,
+            @Valid Visit visit, BindingResult result, Map<String, Object> model) {
+        if (!this.pets.existsByIdAndOwnerId(petId, ownerId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner " + ownerId + " has no pet " + petId);
+        }
         if (result.hasErrors()) {
+            populateForm(petId, model);
             return "pets/createOrUpdateVisitForm";
         } else {
             this.visits.save(visit);
@@ -85,4 +96,33 @@ class VisitController {
         }
     }
 
+    /**
+     * Show the visit history of a pet, a page of {@value #HISTORY_PAGE_SIZE} visits at a time, most recent first.
+     *
+     * @param cursor the position to continue from, see {@link VisitCursor}, or none for the most recent visits
+     */
+    @GetMapping("/owners/{ownerId}/pets/{petId}/visits")
+    public String showVisitHistory(@PathVariable("ownerId") int ownerId, @PathVariable("petId") int petId,
+            @RequestParam(name = "cursor", required = false) String cursor, Map<String, Object> model) {
+        PetSummary pet = this.pets.findSummaryById(petId);
+        if (pet == null || pet.getOwnerId() != ownerId) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner " + ownerId + " has no pet " + petId);
+        }
+        model.put("pet", pet);
+        model.put("page", this.visits.findPageByPetId(petId, VisitCursor.decode(cursor), HISTORY_PAGE_SIZE));
+        return "pets/visitHistory";
+    }
+
+    /**
+     * Add the pet and its {@link #RECENT_VISITS most recent} visits to the model of the form.
+     */
+    private void populateForm(int petId, Map<String, Object> model) {
+        PetSummary pet = this.pets.findSummaryById(petId);
+        if (pet == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No pet " + petId);
+        }
+        model.put("pet", pet);
+        model.put("recentVisits", this.visits.findByPetIdOrderByDateDescIdDesc(petId, RECENT_VISITS));
+    }
+
 }
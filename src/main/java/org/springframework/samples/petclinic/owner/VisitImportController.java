@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Bulk import of visits, for clinics pushing their visits of the day at once. The request body is read as a stream
+ * rather than bound to a list, see {@link VisitImporter}.
+ */
+@Controller
+class VisitImportController {
+
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final VisitImporter importer;
+
+    public VisitImportController(VisitImporter importer) {
+        this.importer = importer;
+    }
+
+    @PostMapping(path = "/visits/import",
+        consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_STREAM_JSON_VALUE,
+            APPLICATION_NDJSON_VALUE },
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public @ResponseBody VisitImportReport importVisits(InputStream body) throws IOException {
+        return this.importer.importVisits(body);
+    }
+
+}
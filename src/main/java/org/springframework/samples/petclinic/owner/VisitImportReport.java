@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk visit import: how many records were received and saved, and why the others were rejected.
+ */
+public class VisitImportReport {
+
+    private int received;
+
+    private int saved;
+
+    private final List<RecordError> errors = new ArrayList<>();
+
+    /**
+     * Return the number of records read from the request, including rejected ones.
+     */
+    public int getReceived() {
+        return this.received;
+    }
+
+    /**
+     * Return the number of visits that have been saved.
+     */
+    public int getSaved() {
+        return this.saved;
+    }
+
+    /**
+     * Return the rejected records, in the order they were rejected.
+     */
+    public List<RecordError> getErrors() {
+        return Collections.unmodifiableList(this.errors);
+    }
+
+    void received() {
+        this.received++;
+    }
+
+    void saved(int count) {
+        this.saved += count;
+    }
+
+    void reject(int index, String field, String message) {
+        this.errors.add(new RecordError(index, field, message));
+    }
+
+    /**
+     * Why a record was rejected.
+     */
+    public static class RecordError {
+
+        private final int index;
+
+        private final String field;
+
+        private final String message;
+
+        RecordError(int index, String field, String message) {
+            this.index = index;
+            this.field = field;
+            this.message = message;
+        }
+
+        /**
+         * Return the zero-based position of the record in the request.
+         */
+        public int getIndex() {
+            return this.index;
+        }
+
+        /**
+         * Return the rejected field, or <code>null</code> if the record was rejected as a whole.
+         */
+        public String getField() {
+            return this.field;
+        }
+
+        public String getMessage() {
+            return this.message;
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.samples.petclinic.system.Shards;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.samples.petclinic.visit.VisitRepository;
+import org.springframework.stereotype.Component;
+
+/**
+ * Imports visits for many pets from a stream of JSON records, either a JSON array or newline delimited JSON.
+ * <p>
+ * Records are read, validated and saved one chunk at a time, so memory use does not grow with the size of the stream.
+ * Each chunk costs one query to check that the pets exist and one transaction, in which Hibernate sends the inserts in
+ * JDBC batches. The chunk size therefore follows <code>hibernate.jdbc.batch_size</code>. Invalid records are skipped
+ * and reported, they do not affect the other records; a chunk that fails to save is reported as a whole.
+ * <p>
+ * When the database is sharded, each chunk is split by the shard of its pets, and each part is saved in a transaction
+ * of its own, see {@link Shards}. A part that fails to save is reported as a whole, the parts saved on other shards
+ * stay saved and are reported as such, so that a retry of the rejected records does not duplicate them.
+ */
+@Component
+class VisitImporter {
+
+    private final ObjectReader reader;
+
+    private final Validator validator;
+
+    private final PetRepository pets;
+
+    private final VisitRepository visits;
+
+    private final Shards shards;
+
+    private final int chunkSize;
+
+    VisitImporter(ObjectMapper objectMapper, Validator validator, PetRepository pets, VisitRepository visits,
+            Shards shards, @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int chunkSize) {
+        this.reader = objectMapper.readerFor(Visit.class);
+        this.validator = validator;
+        this.pets = pets;
+        this.visits = visits;
+        this.shards = shards;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Import the visits read from the given stream.
+     *
+     * @param in a JSON array of visits, or visits separated by whitespace such as newlines
+     * @return the report of the import
+     * @throws IOException if the stream cannot be read
+     */
+    public VisitImportReport importVisits(InputStream in) throws IOException {
+        VisitImportReport report = new VisitImportReport();
+        List<Visit> chunk = new ArrayList<>(this.chunkSize);
+        List<Integer> indexes = new ArrayList<>(this.chunkSize);
+        try (MappingIterator<Visit> records = this.reader.readValues(in)) {
+            int index = 0;
+            while (true) {
+                Visit visit;
+                try {
+                    if (!records.hasNextValue()) {
+                        break;
+                    }
+                    visit = records.nextValue();
+                } catch (JsonParseException ex) {
+                    // malformed JSON, there is no telling where the next record starts
+                    report.received();
+                    report.reject(index, null, "Malformed JSON: " + ex.getOriginalMessage());
+                    break;
+                } catch (JsonMappingException ex) {
+                    // the iterator skips the rest of the record
+                    report.received();
+                    report.reject(index++, fieldOf(ex), ex.getOriginalMessage());
+                    continue;
+                }
+                report.received();
+                if (validate(visit, index, report)) {
+                    chunk.add(visit);
+                    indexes.add(index);
+                    if (chunk.size() == this.chunkSize) {
+                        save(chunk, indexes, report);
+                    }
+                }
+                index++;
+            }
+        }
+        save(chunk, indexes, report);
+        return report;
+    }
+
+    private boolean validate(Visit visit, int index, VisitImportReport report) {
+        boolean valid = true;
+        if (visit.getId() != null) {
+            report.reject(index, "id", "must not be set");
+            valid = false;
+        }
+        if (visit.getPetId() == null) {
+            report.reject(index, "petId", "must not be null");
+            valid = false;
+        }
+        for (ConstraintViolation<Visit> violation : this.validator.validate(visit)) {
+            report.reject(index, violation.getPropertyPath().toString(), violation.getMessage());
+            valid = false;
+        }
+        return valid;
+    }
+
+    private void save(List<Visit> chunk, List<Integer> indexes, VisitImportReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<Integer> petIds = new HashSet<>();
+        for (Visit visit : chunk) {
+            petIds.add(visit.getPetId());
+        }
+        Set<Integer> existing = new HashSet<>(this.pets.findExistingIds(petIds));
+        // saved in one transaction per shard
+        Map<Integer, List<Visit>> valid = new LinkedHashMap<>();
+        Map<Integer, List<Integer>> validIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Visit visit = chunk.get(i);
+            if (existing.contains(visit.getPetId())) {
+                int shard = this.shards.shardOf(visit.getPetId());
+                valid.computeIfAbsent(shard, key -> new ArrayList<>()).add(visit);
+                validIndexes.computeIfAbsent(shard, key -> new ArrayList<>()).add(indexes.get(i));
+            } else {
+                report.reject(indexes.get(i), "petId", "no pet with id " + visit.getPetId());
+            }
+        }
+        chunk.clear();
+        indexes.clear();
+        for (Map.Entry<Integer, List<Visit>> part : valid.entrySet()) {
+            try {
+                this.visits.saveAll(part.getValue());
+                report.saved(part.getValue().size());
+            } catch (DataAccessException ex) {
+                for (Integer index : validIndexes.get(part.getKey())) {
+                    report.reject(index, null, "Could not save: " + ex.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private static String fieldOf(JsonMappingException ex) {
+        List<JsonMappingException.Reference> path = ex.getPath();
+        return (path.isEmpty() ? null : path.get(path.size() - 1).getFieldName());
+    }
+
+}
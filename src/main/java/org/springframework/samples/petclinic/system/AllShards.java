@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a repository method, typically a search, that is run on every shard when the database is sharded, see
+ * {@link Shards}. The shards are queried in parallel, each in a transaction of its own, and their results are
+ * concatenated and sorted by the given properties. The results of a method taking a
+ * {@link org.springframework.data.domain.Pageable} are cut to its page size once merged.
+ * <p>
+ * The method must return a <code>List</code> or <code>Collection</code>, or nothing.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AllShards {
+
+    /**
+     * The properties the merged results are sorted by, as the <code>ORDER BY</code> of each shard's query. Strings
+     * are compared in the order of the database, see {@link Shards#getCollation()}. No sorting if empty.
+     */
+    String[] orderBy() default {};
+
+    /**
+     * Whether to sort in ascending order.
+     */
+    boolean ascending() default true;
+
+}
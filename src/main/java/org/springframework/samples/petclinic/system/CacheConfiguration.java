@@ -1,36 +1,186 @@
 package org.springframework.samples.petclinic.system;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
 import org.springframework.boot.autoconfigure.cache.JCacheManagerCustomizer;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.jcache.JCacheCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import javax.cache.configuration.MutableConfiguration;
+import javax.cache.CacheManager;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
 
 /**
- * Cache configuration intended for caches providing the JCache API. This configuration creates the used cache for the
- * application and enables statistics that become accessible via JMX.
+ * Cache configuration intended for caches providing the JCache API, backed by Ehcache 3. This configuration creates
+ * the used caches for the application, sized and expired as described by {@link CacheSpecProperties}, and enables
+ * statistics that become accessible via JMX and the <code>cache.*</code> actuator metrics. The changes of these caches
+ * are counted by {@link CacheGenerations}.
+ * <p>
+ * The same cache manager backs the Hibernate second-level cache: each entity and collection region, and the query
+ * cache regions, is one of its caches, configured and measured like the others.
+ * </p>
  */
 @Configuration
 @EnableCaching
+@EnableConfigurationProperties(CacheSpecProperties.class)
 class CacheConfiguration {
 
+    static final String[] CACHE_NAMES = { "vets", "petTypes" };
+
+    /**
+     * The second-level cache regions, named by the <code>@Cache</code> annotations of the entities, and the regions of
+     * the query cache. Regions must be created here, Hibernate fails to start on a region that is missing.
+     */
+    static final String[] REGION_NAMES = { "types", "specialties", "vetSpecialties", "owners", "ownerPets", "pets",
+        "default-query-results-region", "default-update-timestamps-region" };
+
     @Bean
-    public JCacheManagerCustomizer petclinicCacheConfigurationCustomizer() {
+    public JCacheManagerCustomizer petclinicCacheConfigurationCustomizer(CacheSpecProperties properties,
+            CacheGenerations generations) {
         return cm -> {
-            cm.createCache("vets", cacheConfiguration());
+            for (String name : CACHE_NAMES) {
+                generations.register(cm.createCache(name, cacheConfiguration(properties.getSpec(name))));
+                cm.enableStatistics(name, true);
+            }
+            for (String name : REGION_NAMES) {
+                cm.createCache(name, cacheConfiguration(properties.getSpec(name)));
+                cm.enableStatistics(name, true);
+            }
         };
     }
 
     /**
-     * Create a simple configuration that enable statistics via the JCache programmatic configuration API.
+     * Have Hibernate keep its second-level cache regions in the application's cache manager, rather than in a cache
+     * manager of its own, and fail rather than create a region that is missing there with no size limit.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer petclinicSecondLevelCacheCustomizer(CacheManager cacheManager) {
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY,
+                MissingCacheStrategy.FAIL.getExternalRepresentation());
+        };
+    }
+
+    /**
+     * Defer cache puts and evictions to the end of the surrounding transaction, so that an eviction on save cannot be
+     * undone by a concurrent read caching the old state before the transaction commits.
+     */
+    @Bean
+    public CacheManagerCustomizer<JCacheCacheManager> petclinicTransactionAwareCacheCustomizer() {
+        return cm -> cm.setTransactionAware(true);
+    }
+
+    /**
+     * Publish the hit ratio of each cache as the <code>cache.hit.ratio</code> gauge, next to the
+     * <code>cache.gets</code>, <code>cache.puts</code> and <code>cache.evictions</code> meters that Spring Boot binds
+     * for every cache, and tagged with the same cache manager name.
+     */
+    @Bean
+    public MeterBinder petclinicCacheHitRatioMetrics(CacheManager cacheManager,
+            Map<String, JCacheCacheManager> springCacheManagers) {
+        String managerName = cacheManagerName(cacheManager, springCacheManagers);
+        return registry -> {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (String name : cacheManager.getCacheNames()) {
+                Gauge.builder("cache.hit.ratio", server, s -> hitRatio(s, cacheManager, name))
+                    .tag("cache", name)
+                    .tag("cacheManager", managerName)
+                    .description("The ratio of cache gets that were hits")
+                    .register(registry);
+            }
+        };
+    }
+
+    /**
+     * Create the Ehcache configuration of a cache.
      * <p>
-     * Within the configuration object that is provided by the JCache API standard, there is only a very limited set of
-     * configuration options. The really relevant configuration options (like the size limit) must be set via a
-     * configuration mechanism that is provided by the selected JCache implementation.
+     * The JCache programmatic configuration API has no notion of size limits or storage tiers, so the cache is
+     * configured through the native Ehcache API and handed to JCache wrapped in an {@link Eh107Configuration}. Entries
+     * are stored by reference on heap; only the optional off-heap tier holds serialized copies. A cache with an
+     * off-heap tier is therefore declared with {@link Serializable} keys and values, so that Ehcache rejects any other
+     * key or value on put with a {@link ClassCastException}, rather than failing to serialize it later.
+     */
+    @SuppressWarnings("unchecked")
+    static javax.cache.configuration.Configuration<Object, Object> cacheConfiguration(CacheSpecProperties.Spec spec) {
+        ResourcePoolsBuilder pools = ResourcePoolsBuilder.newResourcePoolsBuilder()
+            .heap(spec.getHeapEntries(), EntryUnit.ENTRIES);
+        Class<Object> type = Object.class;
+        if (spec.getOffHeapSize() != null) {
+            pools = pools.offheap(spec.getOffHeapSize().toKilobytes(), MemoryUnit.KB);
+            type = (Class<Object>) (Class<?>) Serializable.class;
+        }
+        CacheConfigurationBuilder<Object, Object> builder = CacheConfigurationBuilder
+            .newCacheConfigurationBuilder(type, type, pools);
+        if (spec.getTimeToLive() != null && spec.getTimeToIdle() != null) {
+            throw new IllegalStateException("Only one of time-to-live and time-to-idle may be set per cache");
+        } else if (spec.getTimeToLive() != null) {
+            builder = builder.withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(spec.getTimeToLive()));
+        } else if (spec.getTimeToIdle() != null) {
+            builder = builder.withExpiry(ExpiryPolicyBuilder.timeToIdleExpiration(spec.getTimeToIdle()));
+        }
+        return Eh107Configuration.fromEhcacheCacheConfiguration(builder.build());
+    }
+
+    /**
+     * The name Spring Boot tags the cache meters with: the name of the Spring cache manager bean wrapping the given
+     * cache manager, without its <code>CacheManager</code> suffix, or its URI if no bean wraps it.
      */
-    private javax.cache.configuration.Configuration<Object, Object> cacheConfiguration() {
-        return new MutableConfiguration<>().setStatisticsEnabled(true);
+    static String cacheManagerName(CacheManager cacheManager, Map<String, JCacheCacheManager> springCacheManagers) {
+        String suffix = "CacheManager";
+        for (Map.Entry<String, JCacheCacheManager> entry : springCacheManagers.entrySet()) {
+            if (entry.getValue().getCacheManager() == cacheManager) {
+                String beanName = entry.getKey();
+                if (beanName.length() > suffix.length() && beanName.toLowerCase().endsWith(suffix.toLowerCase())) {
+                    return beanName.substring(0, beanName.length() - suffix.length());
+                }
+                return beanName;
+            }
+        }
+        return cacheManager.getURI().toString();
+    }
+
+    /**
+     * The statistics MBean of the named cache of the given cache manager, named as Ehcache registers it. Caches of
+     * other cache managers, e.g. of another class loader, may have the same name, so the manager's URI is part of it.
+     */
+    static ObjectName statisticsName(CacheManager cacheManager, String cacheName) throws JMException {
+        return new ObjectName("javax.cache:type=CacheStatistics,CacheManager="
+            + sanitize(cacheManager.getURI().toString()) + ",Cache=" + sanitize(cacheName));
+    }
+
+    private static String sanitize(String value) {
+        return value.replaceAll(",|:|=|\n", ".");
+    }
+
+    private static double hitRatio(MBeanServer server, CacheManager cacheManager, String cacheName) {
+        try {
+            ObjectName name = statisticsName(cacheManager, cacheName);
+            if (!server.isRegistered(name)) {
+                return Double.NaN;
+            }
+            Number percentage = (Number) server.getAttribute(name, "CacheHitPercentage");
+            return percentage.doubleValue() / 100;
+        } catch (JMException ex) {
+            return Double.NaN;
+        }
     }
 
 }
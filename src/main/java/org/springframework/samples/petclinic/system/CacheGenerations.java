@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.cache.Cache;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * The generation of each of the application's caches: a number that changes whenever an entry of the cache is
+ * created, updated, removed or expires, be it by <code>@Cacheable</code>, <code>@CachePut</code>,
+ * <code>@CacheEvict</code> or the cache itself.
+ * <p>
+ * Whatever is derived from a cached value, e.g. its serialized form, stays valid as long as the generation of its
+ * cache does. Comparing the cached value itself is no substitute: a cache with an off-heap tier hands out a new
+ * copy on every get.
+ * </p>
+ */
+@Component
+public class CacheGenerations {
+
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Return the current generation of the named cache. Read it <i>before</i> getting the cached value, so that what is
+     * derived from the value is never taken for that of a later generation.
+     */
+    public long get(String cacheName) {
+        return generation(cacheName).get();
+    }
+
+    /**
+     * Start a new generation of the named cache, as its listener does on every change of an entry.
+     */
+    public void advance(String cacheName) {
+        generation(cacheName).incrementAndGet();
+    }
+
+    /**
+     * Listen to the changes of the given cache, synchronously, so that its generation has advanced by the time the
+     * change returns.
+     */
+    void register(Cache<Object, Object> cache) {
+        String name = cache.getName();
+        CacheEntryListener<Object, Object> listener = new GenerationListener(() -> advance(name));
+        cache.registerCacheEntryListener(
+            new MutableCacheEntryListenerConfiguration<>(() -> listener, null, false, true));
+    }
+
+    private AtomicLong generation(String cacheName) {
+        return this.generations.computeIfAbsent(cacheName, name -> new AtomicLong());
+    }
+
+    private static final class GenerationListener implements CacheEntryCreatedListener<Object, Object>,
+            CacheEntryUpdatedListener<Object, Object>, CacheEntryRemovedListener<Object, Object>,
+            CacheEntryExpiredListener<Object, Object> {
+
+        private final Runnable advance;
+
+        GenerationListener(Runnable advance) {
+            this.advance = advance;
+        }
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends Object, ? extends Object>> events) {
+            this.advance.run();
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<? extends Object, ? extends Object>> events) {
+            this.advance.run();
+        }
+
+        @Override
+        public void onRemoved(Iterable<CacheEntryEvent<? extends Object, ? extends Object>> events) {
+            this.advance.run();
+        }
+
+        @Override
+        public void onExpired(Iterable<CacheEntryEvent<? extends Object, ? extends Object>> events) {
+            this.advance.run();
+        }
+
+    }
+
+}
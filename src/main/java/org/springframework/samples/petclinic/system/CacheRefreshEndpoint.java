@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint reloading named caches from the data store: <code>POST /manage/cacherefresh/{cache}</code>.
+ * Evicting a cache without reloading it is covered by Spring Boot's <code>DELETE /manage/caches/{cache}</code>.
+ * <p>
+ * Unless <code>petclinic.cache.warm-on-startup</code> is disabled, all refreshable caches are also filled once the
+ * application is ready, so that the first requests do not pay for a cold load. The warm-up runs on the
+ * <code>applicationTaskExecutor</code>, it does not hold up the application becoming ready.
+ * </p>
+ */
+@Component
+@WebEndpoint(id = "cacherefresh")
+class CacheRefreshEndpoint {
+
+    private static final Log logger = LogFactory.getLog(CacheRefreshEndpoint.class);
+
+    private final Map<String, CacheRefresher> refreshers = new LinkedHashMap<>();
+
+    private final CacheSpecProperties properties;
+
+    private final Executor executor;
+
+    CacheRefreshEndpoint(List<CacheRefresher> refreshers, CacheSpecProperties properties,
+            @Qualifier("applicationTaskExecutor") Executor executor) {
+        for (CacheRefresher refresher : refreshers) {
+            this.refreshers.put(refresher.getCacheName(), refresher);
+        }
+        this.properties = properties;
+        this.executor = executor;
+    }
+
+    /**
+     * Return the names of the caches that can be refreshed.
+     */
+    @ReadOperation
+    public Set<String> refreshableCaches() {
+        return this.refreshers.keySet();
+    }
+
+    /**
+     * Reload the named cache.
+     *
+     * @param cache the name of the cache
+     * @return the name of the refreshed cache, or HTTP 404 if it cannot be refreshed
+     */
+    @WriteOperation
+    public WebEndpointResponse<String> refresh(@Selector String cache) {
+        CacheRefresher refresher = this.refreshers.get(cache);
+        if (refresher == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        refresher.refresh();
+        return new WebEndpointResponse<>(cache);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpInBackground() {
+        if (!this.properties.isWarmOnStartup()) {
+            return;
+        }
+        try {
+            this.executor.execute(this::warmUp);
+        } catch (RejectedExecutionException ex) {
+            logger.warn("Could not start the warm-up of the caches", ex);
+        }
+    }
+
+    /**
+     * Fill all refreshable caches, in the calling thread.
+     */
+    public void warmUp() {
+        for (CacheRefresher refresher : this.refreshers.values()) {
+            try {
+                refresher.refresh();
+            } catch (RuntimeException ex) {
+                // a cold cache is not fatal, it is filled by the first request instead
+                logger.warn("Could not warm up cache '" + refresher.getCacheName() + "'", ex);
+            }
+        }
+    }
+
+}
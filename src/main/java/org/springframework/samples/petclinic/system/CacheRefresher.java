@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+/**
+ * Reloads the content of one cache from the data store. Beans of this type are picked up by the
+ * {@link CacheRefreshEndpoint} and by the cache warm-up on startup.
+ */
+public interface CacheRefresher {
+
+    /**
+     * Return the name of the cache this refresher fills.
+     */
+    String getCacheName();
+
+    /**
+     * Reload the cache content from the data store, replacing what is cached.
+     */
+    void refresh();
+
+}
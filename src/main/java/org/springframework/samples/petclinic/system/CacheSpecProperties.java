@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Sizing and expiry of the application caches, bound from <code>petclinic.cache.*</code>. Every cache is configured
+ * by a {@link Spec} under <code>petclinic.cache.specs.&lt;cacheName&gt;</code>; caches without one use the defaults
+ * of {@link Spec}. Like any other property these can be overridden in a profile specific properties file.
+ */
+@ConfigurationProperties("petclinic.cache")
+public class CacheSpecProperties {
+
+    /**
+     * Whether to fill the refreshable caches once the application is ready.
+     */
+    private boolean warmOnStartup = true;
+
+    private final Map<String, Spec> specs = new LinkedHashMap<>();
+
+    public boolean isWarmOnStartup() {
+        return this.warmOnStartup;
+    }
+
+    public void setWarmOnStartup(boolean warmOnStartup) {
+        this.warmOnStartup = warmOnStartup;
+    }
+
+    public Map<String, Spec> getSpecs() {
+        return this.specs;
+    }
+
+    /**
+     * Return the spec of the given cache, or the default spec if none is configured.
+     */
+    public Spec getSpec(String cacheName) {
+        Spec spec = this.specs.get(cacheName);
+        return (spec != null ? spec : new Spec());
+    }
+
+    public static class Spec {
+
+        /**
+         * Maximum number of entries held on heap.
+         */
+        private long heapEntries = 100;
+
+        /**
+         * Size of an optional off-heap tier behind the heap. Off-heap entries are stored serialized.
+         */
+        private DataSize offHeapSize;
+
+        /**
+         * Time after which an entry expires once it has been created or updated.
+         */
+        private Duration timeToLive;
+
+        /**
+         * Time after which an entry expires once it has last been accessed. Mutually exclusive with timeToLive.
+         */
+        private Duration timeToIdle;
+
+        public long getHeapEntries() {
+            return this.heapEntries;
+        }
+
+        public void setHeapEntries(long heapEntries) {
+            this.heapEntries = heapEntries;
+        }
+
+        public DataSize getOffHeapSize() {
+            return this.offHeapSize;
+        }
+
+        public void setOffHeapSize(DataSize offHeapSize) {
+            this.offHeapSize = offHeapSize;
+        }
+
+        public Duration getTimeToLive() {
+            return this.timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public Duration getTimeToIdle() {
+            return this.timeToIdle;
+        }
+
+        public void setTimeToIdle(Duration timeToIdle) {
+            this.timeToIdle = timeToIdle;
+        }
+
+    }
+
+}
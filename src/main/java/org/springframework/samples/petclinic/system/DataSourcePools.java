@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+/**
+ * Creates the connection pools of databases other than that of <code>spring.datasource.*</code>, such as replicas or
+ * shards, configured like it: the driver and credentials default to those of <code>spring.datasource.*</code>, and each
+ * pool is configured by <code>spring.datasource.hikari.*</code> and published in the <code>hikaricp.*</code> metrics
+ * under its own name. Each pool is wrapped in a {@link SqlAccountingDataSource}, beneath the data source routing to
+ * it, which is left as is by the post-processor of {@link SqlAccountingConfiguration}.
+ */
+final class DataSourcePools {
+
+    private final DataSourceProperties properties;
+
+    private final Binder binder;
+
+    private final MeterRegistry registry;
+
+    private final SqlAccountingProperties accounting;
+
+    DataSourcePools(DataSourceProperties properties, Environment environment, MeterRegistry registry,
+            SqlAccountingProperties accounting) {
+        this.properties = properties;
+        this.binder = Binder.get(environment);
+        this.registry = registry;
+        this.accounting = accounting;
+    }
+
+    /**
+     * Create the pool of the database of <code>spring.datasource.*</code>.
+     */
+    DataSource create(String name) {
+        return configure(this.properties.initializeDataSourceBuilder().type(HikariDataSource.class).build(), name);
+    }
+
+    /**
+     * Create the pool of another database.
+     * @param url the JDBC URL of the database
+     * @param username the login username, that of <code>spring.datasource.*</code> if empty
+     * @param password the login password, that of <code>spring.datasource.*</code> if <code>null</code>
+     */
+    DataSource create(String name, String url, String username, String password) {
+        return configure(this.properties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .url(url)
+            .username(StringUtils.hasText(username) ? username : this.properties.determineUsername())
+            .password(password != null ? password : this.properties.determinePassword())
+            .build(), name);
+    }
+
+    private DataSource configure(HikariDataSource pool, String name) {
+        this.binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        if (this.registry != null) {
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(this.registry));
+        }
+        return new SqlAccountingDataSource(pool, this.accounting);
+    }
+
+}
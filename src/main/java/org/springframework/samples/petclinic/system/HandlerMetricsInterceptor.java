@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.view.UrlBasedViewResolver;
+
+/**
+ * Splits the time of a request handled by a controller method into the time of the handler itself, the
+ * <code>petclinic.handler.invocations</code> timer tagged with the controller and its method, and the time of rendering
+ * its view, the <code>petclinic.view.render</code> timer tagged with the name of the template. Both also carry the
+ * exception that ended them, if any.
+ * <p>
+ * The handler time of an asynchronous request lasts from the start of the request to its result. Redirects and
+ * responses written by the handler itself have no render time.
+ */
+class HandlerMetricsInterceptor implements HandlerInterceptor {
+
+    static final String HANDLER_METRIC_NAME = "petclinic.handler.invocations";
+
+    static final String RENDER_METRIC_NAME = "petclinic.view.render";
+
+    private static final String HANDLER_SAMPLE_ATTRIBUTE = HandlerMetricsInterceptor.class.getName() + ".handler";
+
+    private static final String RENDER_SAMPLE_ATTRIBUTE = HandlerMetricsInterceptor.class.getName() + ".render";
+
+    private static final String VIEW_NAME_ATTRIBUTE = HandlerMetricsInterceptor.class.getName() + ".view";
+
+    private final MeterRegistry registry;
+
+    HandlerMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // an asynchronous request passes here again with its result, and is timed from its start
+        if (handler instanceof HandlerMethod && request.getAttribute(HANDLER_SAMPLE_ATTRIBUTE) == null) {
+            request.setAttribute(HANDLER_SAMPLE_ATTRIBUTE, Timer.start(this.registry));
+        }
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+            ModelAndView modelAndView) {
+        stopHandler(request, handler, null);
+        String viewName = (modelAndView != null ? modelAndView.getViewName() : null);
+        if (viewName != null && !viewName.startsWith(UrlBasedViewResolver.REDIRECT_URL_PREFIX)
+                && !viewName.startsWith(UrlBasedViewResolver.FORWARD_URL_PREFIX)) {
+            request.setAttribute(VIEW_NAME_ATTRIBUTE, viewName);
+            request.setAttribute(RENDER_SAMPLE_ATTRIBUTE, Timer.start(this.registry));
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        // the handler has thrown an exception if it has not been stopped yet
+        stopHandler(request, handler, ex);
+        Timer.Sample sample = (Timer.Sample) request.getAttribute(RENDER_SAMPLE_ATTRIBUTE);
+        if (sample != null) {
+            request.removeAttribute(RENDER_SAMPLE_ATTRIBUTE);
+            sample.stop(Timer.builder(RENDER_METRIC_NAME)
+                .description("Rendering of the views of controller methods")
+                .tag("view", (String) request.getAttribute(VIEW_NAME_ATTRIBUTE))
+                .tag("exception", exception(ex))
+                .register(this.registry));
+        }
+    }
+
+    private void stopHandler(HttpServletRequest request, Object handler, Exception ex) {
+        Timer.Sample sample = (Timer.Sample) request.getAttribute(HANDLER_SAMPLE_ATTRIBUTE);
+        if (sample == null) {
+            return;
+        }
+        request.removeAttribute(HANDLER_SAMPLE_ATTRIBUTE);
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        sample.stop(Timer.builder(HANDLER_METRIC_NAME)
+            .description("Invocations of controller methods, without rendering their views")
+            .tag("handler", handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName())
+            .tag("exception", exception(ex))
+            .register(this.registry));
+    }
+
+    private static String exception(Exception ex) {
+        return (ex != null ? ex.getClass().getSimpleName() : "None");
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Timers for the layers of a request, next to the <code>http.server.requests</code> timer of the whole request that
+ * Spring Boot records: the controller method, the rendering of its view, see {@link HandlerMetricsInterceptor}, and
+ * each repository method it calls, see {@link RepositoryMetricsPostProcessor}. Cache hits and misses are counted per
+ * cache by the <code>cache.gets</code> meters, see {@link CacheConfiguration}.
+ * <p>
+ * The timers publish percentile histograms, configured with <code>management.metrics.distribution.*</code>, so that
+ * percentiles such as the p99 can be aggregated across instances by the monitoring system.
+ */
+@Configuration
+class MetricsConfiguration {
+
+    @Bean
+    public static RepositoryMetricsPostProcessor petclinicRepositoryMetricsPostProcessor(
+            ObjectProvider<MeterRegistry> registryProvider) {
+        return new RepositoryMetricsPostProcessor(registryProvider);
+    }
+
+    @Bean
+    public WebMvcConfigurer petclinicHandlerMetricsConfigurer(MeterRegistry registry) {
+        return new WebMvcConfigurer() {
+
+            @Override
+            public void addInterceptors(InterceptorRegistry interceptors) {
+                interceptors.addInterceptor(new HandlerMetricsInterceptor(registry));
+            }
+
+        };
+    }
+
+}
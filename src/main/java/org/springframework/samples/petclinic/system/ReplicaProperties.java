@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Read replicas of the database, bound from <code>petclinic.datasource.*</code>, see
+ * {@link ReplicaRoutingConfiguration}. The primary database is the one of <code>spring.datasource.*</code>.
+ */
+@ConfigurationProperties("petclinic.datasource")
+public class ReplicaProperties {
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * Maximum replication lag of a replica to serve reads.
+     */
+    private Duration maxLag = Duration.ofSeconds(5);
+
+    /**
+     * Interval of checking the replicas' health and lag.
+     */
+    private Duration checkInterval = Duration.ofSeconds(5);
+
+    /**
+     * Query returning the replication lag of a replica in seconds, e.g. from a heartbeat table written on the primary.
+     * Without one the lag of the replicas is not checked.
+     */
+    private String lagQuery;
+
+    public List<Replica> getReplicas() {
+        return this.replicas;
+    }
+
+    public Duration getMaxLag() {
+        return this.maxLag;
+    }
+
+    public void setMaxLag(Duration maxLag) {
+        this.maxLag = maxLag;
+    }
+
+    public Duration getCheckInterval() {
+        return this.checkInterval;
+    }
+
+    public void setCheckInterval(Duration checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    public String getLagQuery() {
+        return this.lagQuery;
+    }
+
+    public void setLagQuery(String lagQuery) {
+        this.lagQuery = lagQuery;
+    }
+
+    public static class Replica {
+
+        /**
+         * JDBC URL of the replica.
+         */
+        private String url;
+
+        /**
+         * Login username of the replica, that of the primary if not set.
+         */
+        private String username;
+
+        /**
+         * Login password of the replica, that of the primary if not set.
+         */
+        private String password;
+
+        public String getUrl() {
+            return this.url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return this.username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return this.password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+    }
+
+}
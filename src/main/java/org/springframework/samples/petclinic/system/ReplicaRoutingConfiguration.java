@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Read replicas of the database, enabled by <code>petclinic.datasource.replicas[0].url</code>: read-only transactions
+ * are routed to the replicas by a {@link ReplicaRoutingDataSource}, see {@link ReplicaProperties}. The primary and
+ * the replicas each get a connection pool configured by <code>spring.datasource.hikari.*</code>, named
+ * <code>primary</code> and <code>replica-0</code>, <code>replica-1</code>, etc. in the <code>hikaricp.*</code>
+ * metrics.
+ * <p>
+ * Without replicas the single data source of <code>spring.datasource.*</code> is used as before.
+ */
+@Configuration
+@ConditionalOnProperty("petclinic.datasource.replicas[0].url")
+@EnableConfigurationProperties({ ReplicaProperties.class, DataSourceProperties.class })
+class ReplicaRoutingConfiguration {
+
+    @Bean
+    public ReplicatedDataSources replicas(DataSourceProperties primary, ReplicaProperties properties,
+            Environment environment, ObjectProvider<MeterRegistry> registry, SqlAccountingProperties accounting) {
+        DataSourcePools pools = new DataSourcePools(primary, environment, registry.getIfAvailable(), accounting);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ReplicaProperties.Replica> replicaProperties = properties.getReplicas();
+        for (int i = 0; i < replicaProperties.size(); i++) {
+            ReplicaProperties.Replica replica = replicaProperties.get(i);
+            replicas.put("replica-" + i,
+                pools.create("replica-" + i, replica.getUrl(), replica.getUsername(), replica.getPassword()));
+        }
+        ReplicatedDataSources dataSources = new ReplicatedDataSources(pools.create("primary"), replicas,
+            properties.getMaxLag(), properties.getLagQuery());
+        dataSources.start(properties.getCheckInterval());
+        return dataSources;
+    }
+
+    @Bean
+    public DataSource dataSource(ReplicatedDataSources replicas, ReplicaProperties properties) {
+        // a client reads its own writes from the primary until the replicas have caught up and been checked again
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(replicas,
+            properties.getMaxLag().plus(properties.getCheckInterval())));
+    }
+
+}
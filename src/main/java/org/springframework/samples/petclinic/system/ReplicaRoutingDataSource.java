@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Data source routing read-only transactions to a healthy replica of {@link ReplicatedDataSources}, and everything else
+ * to the primary. A replica that cannot hand out a connection is taken out of rotation and the read goes to the
+ * primary instead.
+ * <p>
+ * Reads follow the writes of the same client: once a write transaction has committed during a request, the rest of
+ * that request and, by a cookie, the requests of the following read-your-writes window, e.g. the one redirected to
+ * after a form has been saved, read from the primary. The window should cover the maximum lag of the replicas.
+ * <p>
+ * The read-only flag of a transaction is only known once it has begun, after a JPA transaction has asked for its
+ * connection, so this data source must be wrapped in a {@link LazyConnectionDataSourceProxy}.
+ * <p>
+ * A replica may be behind the primary, so what a transaction loads from it is not put into the Hibernate
+ * second-level cache, which also serves the reads on the primary. Such a transaction still reads from the cache.
+ */
+class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    static final String PRIMARY_COOKIE = "petclinic-primary";
+
+    private static final String PRIMARY_ATTRIBUTE = ReplicaRoutingDataSource.class.getName() + ".PRIMARY";
+
+    private final ReplicatedDataSources dataSources;
+
+    private final int readYourWritesSeconds;
+
+    ReplicaRoutingDataSource(ReplicatedDataSources dataSources, Duration readYourWrites) {
+        this.dataSources = dataSources;
+        this.readYourWritesSeconds = (int) readYourWrites.getSeconds();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !hasWritten()) {
+            ReplicatedDataSources.Replica replica;
+            while ((replica = this.dataSources.nextReplica()) != null) {
+                try {
+                    Connection connection = connect(replica.getDataSource(), username, password);
+                    stopCachePuts();
+                    return connection;
+                } catch (SQLException ex) {
+                    replica.down(ex.toString());
+                }
+            }
+        } else if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            TransactionSynchronizationManager.registerSynchronization(new WriteSynchronization());
+        }
+        return connect(this.dataSources.getPrimary(), username, password);
+    }
+
+    private static Connection connect(DataSource dataSource, String username, String password)
+            throws SQLException {
+        return (username != null ? dataSource.getConnection(username, password) : dataSource.getConnection());
+    }
+
+    /**
+     * Stop the sessions of the current transaction from putting what they load into the second-level cache, until the
+     * transaction completes.
+     */
+    private static void stopCachePuts() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+            if (resource instanceof EntityManagerHolder) {
+                Session session = ((EntityManagerHolder) resource).getEntityManager().unwrap(Session.class);
+                CacheMode cacheMode = session.getCacheMode();
+                if (cacheMode.isPutEnabled()) {
+                    session.setCacheMode(CacheMode.GET);
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                        @Override
+                        public void afterCompletion(int status) {
+                            if (session.isOpen()) {
+                                session.setCacheMode(cacheMode);
+                            }
+                        }
+
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the current client has committed a write within the read-your-writes window.
+     */
+    private static boolean hasWritten() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return false;
+        }
+        if (attributes.getAttribute(PRIMARY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) != null) {
+            return true;
+        }
+        return attributes instanceof ServletRequestAttributes
+                && WebUtils.getCookie(((ServletRequestAttributes) attributes).getRequest(), PRIMARY_COOKIE) != null;
+    }
+
+    private class WriteSynchronization extends TransactionSynchronizationAdapter {
+
+        @Override
+        public void afterCommit() {
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            if (attributes == null
+                    || attributes.getAttribute(PRIMARY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) != null) {
+                return;
+            }
+            attributes.setAttribute(PRIMARY_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+            if (attributes instanceof ServletRequestAttributes) {
+                HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+                HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+                if (response != null && !response.isCommitted()) {
+                    Cookie cookie = new Cookie(PRIMARY_COOKIE, "1");
+                    cookie.setMaxAge(readYourWritesSeconds);
+                    cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+                    cookie.setHttpOnly(true);
+                    response.addCookie(cookie);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * The primary database and its read replicas, which the {@link ReplicaRoutingDataSource} chooses from.
+ * <p>
+ * Each replica is checked periodically: it is healthy if it is reachable and, given a lag query, lags behind the
+ * primary by no more than the maximum lag. Reads are spread over the healthy replicas in turn. A replica that fails to
+ * hand out a connection is taken out of rotation until its next successful check.
+ * <p>
+ * The health of each replica is reported by the <code>replicas</code> health indicator, and published as the
+ * <code>petclinic.datasource.replica.healthy</code> and <code>petclinic.datasource.replica.lag</code> gauges.
+ */
+class ReplicatedDataSources implements HealthIndicator, MeterBinder, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(ReplicatedDataSources.class);
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final Duration maxLag;
+
+    private final String lagQuery;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private ScheduledExecutorService checker;
+
+    /**
+     * Create a new instance, all replicas are taken to be unhealthy until they have been {@link #check() checked}.
+     * @param primary the primary database
+     * @param replicas the replicas by name
+     * @param maxLag the maximum replication lag of a replica to serve reads
+     * @param lagQuery the query returning the replication lag in seconds, or <code>null</code> not to check it
+     */
+    ReplicatedDataSources(DataSource primary, Map<String, DataSource> replicas, Duration maxLag, String lagQuery) {
+        this.primary = primary;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+    }
+
+    DataSource getPrimary() {
+        return this.primary;
+    }
+
+    List<Replica> getReplicas() {
+        return this.replicas;
+    }
+
+    /**
+     * Return the next healthy replica in turn, or <code>null</code> if none is healthy.
+     */
+    Replica nextReplica() {
+        int size = this.replicas.size();
+        int start = this.next.getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            Replica replica = this.replicas.get(Math.floorMod(start + i, size));
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check all replicas now, then every given interval.
+     */
+    void start(Duration interval) {
+        check();
+        this.checker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-check-"));
+        this.checker.scheduleWithFixedDelay(this::check, interval.toMillis(), interval.toMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Check the health and lag of all replicas.
+     */
+    void check() {
+        for (Replica replica : this.replicas) {
+            replica.check();
+        }
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = Health.up();
+        for (Replica replica : this.replicas) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("status", replica.healthy ? "UP" : "DOWN");
+            if (replica.lag != null) {
+                details.put("lag", replica.lag.toString());
+            }
+            if (replica.error != null) {
+                details.put("error", replica.error);
+            }
+            builder.withDetail(replica.name, details);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Replica replica : this.replicas) {
+            Gauge.builder("petclinic.datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                .description("Whether the replica serves reads")
+                .tag("replica", replica.name)
+                .register(registry);
+            Gauge.builder("petclinic.datasource.replica.lag", replica,
+                    r -> r.lag != null ? r.lag.toMillis() / 1000.0 : Double.NaN)
+                .description("Replication lag of the replica at its last check")
+                .tag("replica", replica.name)
+                .baseUnit("seconds")
+                .register(registry);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (this.checker != null) {
+            this.checker.shutdownNow();
+        }
+        for (Replica replica : this.replicas) {
+            close(replica.dataSource);
+        }
+        close(this.primary);
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    final class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private volatile boolean healthy;
+
+        private volatile Duration lag;
+
+        private volatile String error;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        String getName() {
+            return this.name;
+        }
+
+        DataSource getDataSource() {
+            return this.dataSource;
+        }
+
+        boolean isHealthy() {
+            return this.healthy;
+        }
+
+        void check() {
+            try (Connection connection = this.dataSource.getConnection()) {
+                if (lagQuery != null) {
+                    try (Statement statement = connection.createStatement();
+                            ResultSet result = statement.executeQuery(lagQuery)) {
+                        Duration lag = null;
+                        if (result.next()) {
+                            double seconds = result.getDouble(1);
+                            // NULL, e.g. of an empty or stalled heartbeat table, is an unknown lag
+                            if (!result.wasNull()) {
+                                lag = Duration.ofMillis((long) (seconds * 1000));
+                            }
+                        }
+                        this.lag = lag;
+                    }
+                    if (this.lag == null || this.lag.compareTo(maxLag) > 0) {
+                        down(this.lag == null ? "Unknown lag" : "Lag of " + this.lag + " exceeds " + maxLag);
+                        return;
+                    }
+                }
+                if (!this.healthy) {
+                    logger.info("Replica " + this.name + " serves reads");
+                }
+                this.healthy = true;
+                this.error = null;
+            } catch (SQLException ex) {
+                this.lag = null;
+                down(ex.toString());
+            }
+        }
+
+        /**
+         * Take the replica out of rotation, until its next successful check.
+         */
+        void down(String error) {
+            if (this.healthy) {
+                logger.warn("Replica " + this.name + " no longer serves reads: " + error);
+            }
+            this.healthy = false;
+            this.error = error;
+        }
+
+    }
+
+}
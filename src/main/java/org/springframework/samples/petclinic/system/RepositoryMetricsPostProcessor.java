@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.lang.reflect.Method;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+
+/**
+ * Times every method of every Spring Data repository as the <code>petclinic.repository.invocations</code> timer, tagged
+ * with the repository interface, the method and the exception thrown, if any.
+ * <p>
+ * The timing advice is added in front of the advice of the repository proxy, so it includes the transaction and the
+ * exception translation. Default methods calling other methods of their repository are timed as a whole, and each
+ * method they call once more. A method returning a stream is timed until the stream is returned, not consumed.
+ */
+class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+
+    static final String METRIC_NAME = "petclinic.repository.invocations";
+
+    private final ObjectProvider<MeterRegistry> registryProvider;
+
+    RepositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registryProvider) {
+        this.registryProvider = registryProvider;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised) {
+            Class<?> repositoryInterface = repositoryInterface((Advised) bean);
+            if (repositoryInterface != null) {
+                ((Advised) bean).addAdvice(0, new TimingInterceptor(repositoryInterface.getSimpleName()));
+            }
+        }
+        return bean;
+    }
+
+    /**
+     * Return the application's repository interface implemented by the given proxy, as opposed to the Spring Data and
+     * Spring AOP interfaces it implements as well.
+     */
+    private static Class<?> repositoryInterface(Advised proxy) {
+        for (Class<?> candidate : proxy.getProxiedInterfaces()) {
+            if (Repository.class.isAssignableFrom(candidate)
+                    && !candidate.getName().startsWith("org.springframework.data.")) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private class TimingInterceptor implements MethodInterceptor {
+
+        private final String repository;
+
+        private volatile MeterRegistry registry;
+
+        TimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            MeterRegistry registry = registry();
+            if (registry == null || method.getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+            Timer.Sample sample = Timer.start(registry);
+            Throwable exception = null;
+            try {
+                return invocation.proceed();
+            } catch (Throwable ex) {
+                exception = ex;
+                throw ex;
+            } finally {
+                sample.stop(Timer.builder(METRIC_NAME)
+                    .description("Invocations of Spring Data repository methods")
+                    .tag("repository", this.repository)
+                    .tag("method", method.getName())
+                    .tag("exception", exception == null ? "None" : exception.getClass().getSimpleName())
+                    .register(registry));
+            }
+        }
+
+        /**
+         * Return the meter registry, looked up on first use: repositories are created before the registry is
+         * configured, e.g. by the beans the registry depends on.
+         */
+        private MeterRegistry registry() {
+            MeterRegistry registry = this.registry;
+            if (registry == null) {
+                registry = registryProvider.getIfAvailable();
+                this.registry = registry;
+            }
+            return registry;
+        }
+
+    }
+
+}
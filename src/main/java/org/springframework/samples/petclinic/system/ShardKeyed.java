@@ -0,0 +1,29 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+/**
+ * An entity kept on the shard of its owner, see {@link ShardKey}.
+ */
+public interface ShardKeyed {
+
+    /**
+     * Return the id that tells the shard of this entity, such as its own id or that of its owner or pet, or
+     * <code>null</code> for a new owner, which is placed on a shard in turn.
+     */
+    Integer shardKey();
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Routes the methods of every Spring Data repository to the shards of their {@link ShardKey} or to
+ * {@link AllShards all shards}, see {@link Shards}.
+ * <p>
+ * The routing advice is added in front of the advice of the repository proxy, so the transaction of the method begins
+ * on its shard. A method called within a transaction on another shard, e.g. from a default method, runs in a
+ * transaction of its own if the transaction is read-only, and fails otherwise: a transaction cannot span shards.
+ * <p>
+ * An entity is saved in a transaction on its shard, which rolls back if the shard has given the entity an id beyond
+ * its range, see {@link Shards}.
+ */
+class ShardRoutingPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<Shards> shards;
+
+    private final ObjectProvider<PlatformTransactionManager> transactionManager;
+
+    ShardRoutingPostProcessor(ObjectProvider<Shards> shards,
+            ObjectProvider<PlatformTransactionManager> transactionManager) {
+        this.shards = shards;
+        this.transactionManager = transactionManager;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised) {
+            ((Advised) bean).addAdvice(0, new RoutingInterceptor());
+        }
+        return bean;
+    }
+
+    private class RoutingInterceptor implements MethodInterceptor {
+
+        private final Map<Method, Route> routes = new ConcurrentHashMap<>();
+
+        private volatile TransactionTemplate transaction;
+
+        private volatile TransactionTemplate readOnlyTransaction;
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Shards shards = ShardRoutingPostProcessor.this.shards.getObject();
+            Route route = this.routes.computeIfAbsent(invocation.getMethod(),
+                method -> new Route(method, shards.getCollation()));
+            if (route.allShards) {
+                ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+                return route.combine(invocation,
+                    shards.callOnAll(() -> proxyInvocation.invocableClone().proceed()));
+            }
+            if (route.keyIndex < 0) {
+                return invocation.proceed();
+            }
+            Object key = invocation.getArguments()[route.keyIndex];
+            if (key instanceof ShardKeyed) {
+                return save(shards, shardOf(shards, key), (ShardKeyed) key, invocation);
+            }
+            if (!(key instanceof Iterable)) {
+                return proceedOn(shards, shardOf(shards, key), invocation);
+            }
+            Map<Integer, Collection<Object>> keysByShard = new LinkedHashMap<>();
+            for (Object element : (Iterable<?>) key) {
+                keysByShard.computeIfAbsent(shardOf(shards, element), shard -> route.newKeyCollection())
+                    .add(element);
+            }
+            if (keysByShard.size() <= 1) {
+                int shard = (keysByShard.isEmpty() ? Shards.current() : keysByShard.keySet().iterator().next());
+                return proceedOn(shards, shard, invocation);
+            }
+            List<Object> results = new ArrayList<>(keysByShard.size());
+            for (Map.Entry<Integer, Collection<Object>> entry : keysByShard.entrySet()) {
+                Object[] arguments = invocation.getArguments().clone();
+                arguments[route.keyIndex] = entry.getValue();
+                results.add(proceedOn(shards, entry.getKey(),
+                    ((ProxyMethodInvocation) invocation).invocableClone(arguments)));
+            }
+            return route.combine(invocation, results);
+        }
+
+        private int shardOf(Shards shards, Object key) {
+            Integer id = (key instanceof ShardKeyed ? ((ShardKeyed) key).shardKey() : (Integer) key);
+            if (id == null) {
+                return (key != null ? shards.place() : Shards.current());
+            }
+            return shards.shardOf(id);
+        }
+
+        private Object proceedOn(Shards shards, int shard, MethodInvocation invocation) throws Throwable {
+            int current = Shards.current();
+            if (shard == current || !TransactionSynchronizationManager.isActualTransactionActive()) {
+                return shards.callOn(shard, invocation::proceed);
+            }
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                throw new IllegalStateException(invocation.getMethod() + " needs shard " + shard
+                        + ", but the current transaction writes to shard " + current);
+            }
+            return shards.callOn(shard, () -> readOnlyTransaction().execute(status -> proceed(invocation)));
+        }
+
+        private Object proceed(MethodInvocation invocation) {
+            try {
+                return invocation.proceed();
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new UndeclaredThrowableException(ex);
+            }
+        }
+
+        /**
+         * Save the given entity on the given shard, and check that the shard has given it an id within its range: the
+         * transaction of the save rolls back otherwise.
+         */
+        private Object save(Shards shards, int shard, ShardKeyed entity, MethodInvocation invocation) {
+            if (shard != Shards.current() && TransactionSynchronizationManager.isActualTransactionActive()) {
+                throw new IllegalStateException(invocation.getMethod() + " needs shard " + shard
+                        + ", but the current transaction is on shard " + Shards.current());
+            }
+            return shards.callOn(shard, () -> transaction().execute(status -> {
+                Object result = proceed(invocation);
+                Integer id = entity.shardKey();
+                if (id != null && shards.shardOf(id) != shard) {
+                    throw new IllegalStateException("Shard " + shard + " has handed out the id " + id
+                            + " beyond its range, which ends at " + shards.getLastId(shard));
+                }
+                return result;
+            }));
+        }
+
+        private TransactionTemplate transaction() {
+            if (this.transaction == null) {
+                this.transaction = new TransactionTemplate(transactionManager.getObject());
+            }
+            return this.transaction;
+        }
+
+        private TransactionTemplate readOnlyTransaction() {
+            if (this.readOnlyTransaction == null) {
+                TransactionTemplate template = new TransactionTemplate(transactionManager.getObject());
+                template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                template.setReadOnly(true);
+                this.readOnlyTransaction = template;
+            }
+            return this.readOnlyTransaction;
+        }
+
+    }
+
+    /**
+     * How a repository method is routed.
+     */
+    private static final class Route {
+
+        private final boolean allShards;
+
+        private final int keyIndex;
+
+        private final Class<?> keyType;
+
+        private final Comparator<Object> order;
+
+        Route(Method method, Comparator<String> collation) {
+            AllShards allShards = method.getAnnotation(AllShards.class);
+            this.allShards = (allShards != null);
+            this.order = (allShards != null ? order(allShards, collation) : null);
+            int keyIndex = -1;
+            Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                for (Annotation annotation : parameterAnnotations[i]) {
+                    if (annotation instanceof ShardKey) {
+                        keyIndex = i;
+                    }
+                }
+            }
+            this.keyIndex = keyIndex;
+            this.keyType = (keyIndex >= 0 ? method.getParameterTypes()[keyIndex] : null);
+            if (this.allShards || (this.keyType != null && Iterable.class.isAssignableFrom(this.keyType))) {
+                Class<?> returnType = method.getReturnType();
+                if (returnType != void.class && !returnType.isAssignableFrom(ArrayList.class)) {
+                    throw new IllegalStateException("Cannot combine the results of " + method + " from several shards");
+                }
+            }
+        }
+
+        /**
+         * The order of the <code>ORDER BY</code> of each shard's query: strings in the collation of the database,
+         * other values in their natural order, <code>NULL</code> first when ascending.
+         */
+        @SuppressWarnings("unchecked")
+        private static Comparator<Object> order(AllShards allShards, Comparator<String> collation) {
+            Comparator<Object> values = (value, other) -> (value instanceof String
+                    ? collation.compare((String) value, (String) other)
+                    : ((Comparable<Object>) value).compareTo(other));
+            Comparator<Object> order = null;
+            for (String property : allShards.orderBy()) {
+                Comparator<Object> next = Comparator.comparing(
+                    result -> new BeanWrapperImpl(result).getPropertyValue(property), Comparator.nullsFirst(values));
+                order = (order != null ? order.thenComparing(next) : next);
+            }
+            return (order != null && !allShards.ascending() ? order.reversed() : order);
+        }
+
+        Collection<Object> newKeyCollection() {
+            return (Set.class.isAssignableFrom(this.keyType) ? new LinkedHashSet<>() : new ArrayList<>());
+        }
+
+        /**
+         * Combine the results of the given invocation on several shards.
+         */
+        Object combine(MethodInvocation invocation, List<?> results) {
+            if (invocation.getMethod().getReturnType() == void.class) {
+                return null;
+            }
+            List<Object> combined = new ArrayList<>();
+            for (Object result : results) {
+                if (result != null) {
+                    combined.addAll((Collection<?>) result);
+                }
+            }
+            // the results of a single shard are in its order already
+            if (this.order != null && results.size() > 1) {
+                combined.sort(this.order);
+            }
+            for (Object argument : invocation.getArguments()) {
+                if (argument instanceof Pageable && ((Pageable) argument).isPaged()
+                        && combined.size() > ((Pageable) argument).getPageSize()) {
+                    combined = new ArrayList<>(combined.subList(0, ((Pageable) argument).getPageSize()));
+                }
+            }
+            return combined;
+        }
+
+    }
+
+}
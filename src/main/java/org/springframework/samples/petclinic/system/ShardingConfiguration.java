@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Sharding of owners, their pets and their visits by owner, enabled by <code>petclinic.sharding.shards[0].url</code>,
+ * see {@link Shards} and {@link ShardingProperties}. The data source routes to the current shard, and the repositories
+ * to the shard of their {@link ShardKey}. Each shard gets a connection pool configured by
+ * <code>spring.datasource.hikari.*</code>, named <code>shard-0</code>, <code>shard-1</code>, etc. in the
+ * <code>hikaricp.*</code> metrics.
+ * <p>
+ * The schema and the reference data (vets, specialties and pet types, with the same ids) of the additional shards are
+ * set up like those of shard 0. The id ranges of empty shards are set on startup, and the ids of all shards are checked
+ * to be within their ranges. Sharding and read replicas are not combined.
+ * <p>
+ * Results of several shards are merged in the order of the database's collation, see {@link #collation}.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+class ShardingConfiguration {
+
+    @Bean
+    public Shards shards(ShardingProperties properties) {
+        return new Shards(properties.getShards().size() + 1, properties.getIdsPerShard(), properties.getThreads());
+    }
+
+    /**
+     * Set the identity columns and sequences of the given shard, if it has no owners yet, to hand out ids from its
+     * range, see {@link Shards}.
+     */
+    static void initializeIdRange(DataSource shard, int firstId) throws MetaDataAccessException {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shard);
+        if (firstId <= 1 || jdbcTemplate.queryForObject("SELECT COUNT(*) FROM owners", Integer.class) > 0) {
+            return;
+        }
+        String product = JdbcUtils.extractDatabaseMetaData(shard, "getDatabaseProductName");
+        switch (DatabaseDriver.fromProductName(product)) {
+            case HSQLDB:
+                jdbcTemplate.execute("ALTER TABLE owners ALTER COLUMN id RESTART WITH " + firstId);
+                jdbcTemplate.execute("ALTER TABLE pets ALTER COLUMN id RESTART WITH " + firstId);
+                jdbcTemplate.execute("ALTER SEQUENCE visits_seq RESTART WITH " + firstId);
+                break;
+            case MYSQL:
+                jdbcTemplate.execute("ALTER TABLE owners AUTO_INCREMENT = " + firstId);
+                jdbcTemplate.execute("ALTER TABLE pets AUTO_INCREMENT = " + firstId);
+                jdbcTemplate.update("UPDATE visits_seq SET next_val = ?", firstId);
+                break;
+            default:
+                throw new IllegalStateException("Cannot set the id range of a shard on " + product
+                        + ", start the ids of owners, pets and visits at " + firstId);
+        }
+    }
+
+    /**
+     * Return the order of the searched strings in <code>ORDER BY</code> and comparisons of the given database:
+     * ignoring case on HSQLDB, whose <code>VARCHAR_IGNORECASE</code> columns compare as
+     * <code>String.compareToIgnoreCase</code> does, and ignoring case and accents on MySQL, whose
+     * <code>utf8_general_ci</code> collation the schema sets, as a root locale collator of primary strength does.
+     */
+    static Comparator<String> collation(DatabaseDriver database) {
+        switch (database) {
+            case HSQLDB:
+                return String.CASE_INSENSITIVE_ORDER;
+            case MYSQL:
+                Collator collator = Collator.getInstance(Locale.ROOT);
+                collator.setStrength(Collator.PRIMARY);
+                return collator::compare;
+            default:
+                throw new IllegalStateException("Cannot merge the results of several shards in the order of "
+                        + database + ", the order of its strings is unknown");
+        }
+    }
+
+    /**
+     * Check that the owners and pets of the given shard have ids within its range, see {@link Shards}.
+     * @throws IllegalStateException if the shard has handed out ids beyond its range
+     */
+    static void checkIdRange(DataSource shard, int firstId, int lastId) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shard);
+        for (String table : new String[] { "owners", "pets" }) {
+            Integer maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Integer.class);
+            if (maxId != null && (maxId < firstId || maxId > lastId)) {
+                throw new IllegalStateException("The " + table + " of the shard with the ids " + firstId + " to "
+                        + lastId + " have ids up to " + maxId + ", beyond its range");
+            }
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty("petclinic.sharding.shards[0].url")
+    @EnableConfigurationProperties(DataSourceProperties.class)
+    static class RoutingConfiguration {
+
+        @Bean
+        public static ShardRoutingPostProcessor petclinicShardRoutingPostProcessor(ObjectProvider<Shards> shards,
+                ObjectProvider<PlatformTransactionManager> transactionManager) {
+            return new ShardRoutingPostProcessor(shards, transactionManager);
+        }
+
+        @Bean
+        public DataSource dataSource(DataSourceProperties properties, ShardingProperties sharding, Shards shards,
+                Environment environment, ObjectProvider<MeterRegistry> registry, SqlAccountingProperties accounting)
+                throws MetaDataAccessException {
+            DataSourcePools pools = new DataSourcePools(properties, environment, registry.getIfAvailable(),
+                accounting);
+            List<DataSource> dataSources = new ArrayList<>();
+            dataSources.add(pools.create("shard-0"));
+            for (ShardingProperties.Shard shard : sharding.getShards()) {
+                String name = "shard-" + dataSources.size();
+                DataSource dataSource = pools.create(name, shard.getUrl(), shard.getUsername(), shard.getPassword());
+                initializeIdRange(dataSource, shards.getFirstId(dataSources.size()));
+                dataSources.add(dataSource);
+            }
+            for (int shard = 0; shard < dataSources.size(); shard++) {
+                checkIdRange(dataSources.get(shard), shards.getFirstId(shard), shards.getLastId(shard));
+            }
+            String product = JdbcUtils.extractDatabaseMetaData(dataSources.get(0), "getDatabaseProductName");
+            shards.setCollation(collation(DatabaseDriver.fromProductName(product)));
+            return new ShardRoutingDataSource(dataSources);
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Shards of the database, bound from <code>petclinic.sharding.*</code>, see {@link Shards}. The database of
+ * <code>spring.datasource.*</code> is shard 0, the databases listed here are shards 1, 2 and so on.
+ */
+@ConfigurationProperties("petclinic.sharding")
+public class ShardingProperties {
+
+    private final List<Shard> shards = new ArrayList<>();
+
+    /**
+     * Size of the range of owner and pet ids each shard hands out.
+     */
+    private int idsPerShard = 100_000_000;
+
+    /**
+     * Threads querying the shards in parallel, for the searches that run on all shards.
+     */
+    private int threads = 10;
+
+    public List<Shard> getShards() {
+        return this.shards;
+    }
+
+    public int getIdsPerShard() {
+        return this.idsPerShard;
+    }
+
+    public void setIdsPerShard(int idsPerShard) {
+        this.idsPerShard = idsPerShard;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public static class Shard {
+
+        /**
+         * JDBC URL of the shard.
+         */
+        private String url;
+
+        /**
+         * Login username of the shard, that of shard 0 if not set.
+         */
+        private String username;
+
+        /**
+         * Login password of the shard, that of shard 0 if not set.
+         */
+        private String password;
+
+        public String getUrl() {
+            return this.url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return this.username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return this.password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * The shards of the database, when owners, their pets and their visits are spread over several databases, see
+ * {@link ShardingConfiguration}. Without sharding there is a single shard.
+ * <p>
+ * An owner is kept on one shard with its pets and their visits. Each shard hands out the ids of owners and pets from a
+ * range of its own, so ids are unique across shards and the id of an owner or pet tells its shard: shard <i>n</i> has
+ * the ids from <i>n</i> &times; <code>idsPerShard</code> up to the first id of the next shard, the last shard all ids
+ * beyond. The existing database is shard 0, whose ids start at 1. A shard must not hand out ids beyond its range,
+ * these would be taken for ids of the next shard: the ranges are checked on startup, and each new owner and pet when
+ * it is saved, see {@link ShardingConfiguration}.
+ * <p>
+ * Repository methods are routed to the shard of their {@link ShardKey}, or run on {@link AllShards all shards}.
+ * Other data access runs on the current shard of the thread, shard 0 unless another has been set by
+ * {@link #callOn(int, Task)}.
+ */
+public class Shards implements DisposableBean {
+
+    private static final ThreadLocal<Integer> current = new ThreadLocal<>();
+
+    private final int count;
+
+    private final int idsPerShard;
+
+    private final ExecutorService executor;
+
+    private final AtomicInteger nextPlacement = new AtomicInteger();
+
+    private volatile Comparator<String> collation = Comparator.naturalOrder();
+
+    /**
+     * Create a new instance.
+     * @param count the number of shards
+     * @param idsPerShard the size of the id range of each shard
+     * @param threads the threads running the queries of {@link #callOnAll(Task)} in parallel
+     */
+    public Shards(int count, int idsPerShard, int threads) {
+        if ((long) (count - 1) * idsPerShard > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The id ranges of " + count + " shards of " + idsPerShard
+                    + " ids exceed the range of an integer id");
+        }
+        this.count = count;
+        this.idsPerShard = idsPerShard;
+        this.executor = (count > 1 ? Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("shard-"))
+                : null);
+    }
+
+    /**
+     * Return the number of shards.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Return the shard of the owner or pet with the given id.
+     */
+    public int shardOf(int id) {
+        return Math.max(0, Math.min(id / this.idsPerShard, this.count - 1));
+    }
+
+    /**
+     * Return the first id handed out by the given shard.
+     */
+    public int getFirstId(int shard) {
+        return (shard == 0 ? 1 : shard * this.idsPerShard);
+    }
+
+    /**
+     * Return the last id the given shard may hand out.
+     */
+    public int getLastId(int shard) {
+        return (shard < this.count - 1 ? (shard + 1) * this.idsPerShard - 1 : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Return the order of strings in the databases of the shards, in which the results of {@link AllShards} methods
+     * are merged: that of <code>String.compareTo</code> unless set otherwise.
+     */
+    public Comparator<String> getCollation() {
+        return this.collation;
+    }
+
+    /**
+     * Set the order of strings in the databases of the shards, that of their <code>ORDER BY</code>.
+     */
+    public void setCollation(Comparator<String> collation) {
+        this.collation = collation;
+    }
+
+    /**
+     * Return the shard to place a new owner on, each shard in turn.
+     */
+    int place() {
+        return Math.floorMod(this.nextPlacement.getAndIncrement(), this.count);
+    }
+
+    /**
+     * Return the shard the current thread works on.
+     */
+    public static int current() {
+        Integer shard = current.get();
+        return (shard != null ? shard : 0);
+    }
+
+    /**
+     * Run the given task on the given shard: data access of the task that is not routed by a {@link ShardKey} runs on
+     * that shard. A transaction must begin within the task to run on the shard, transactions already active stay on
+     * theirs.
+     * @param shard the shard
+     * @param task the task
+     * @return the result of the task
+     */
+    public <T, E extends Throwable> T callOn(int shard, Task<T, E> task) throws E {
+        Integer previous = current.get();
+        current.set(shard);
+        try {
+            return task.call();
+        } finally {
+            if (previous != null) {
+                current.set(previous);
+            } else {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * Run the given task on every shard, in parallel: the task runs on the current shard in the calling thread, and on
+     * the other shards in threads of their own, outside of the transaction of the calling thread, if any. These
+     * threads continue the {@link SqlStatistics} recorded by the calling thread, and have its request and locale.
+     * @param task the task
+     * @return the results of the task on each shard, by shard
+     */
+    public <T, E extends Throwable> List<T> callOnAll(Task<T, E> task) throws E {
+        int local = current();
+        ThreadContext context = new ThreadContext();
+        List<Future<T>> futures = new ArrayList<>(this.count);
+        for (int shard = 0; shard < this.count; shard++) {
+            int target = shard;
+            futures.add(shard == local ? null : this.executor.submit(() -> callInThread(target, task, context)));
+        }
+        List<T> results = new ArrayList<>(this.count);
+        try {
+            T localResult = callOn(local, task);
+            for (Future<T> future : futures) {
+                results.add(future != null ? get(future) : localResult);
+            }
+        } finally {
+            for (Future<T> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return results;
+    }
+
+    private <T> T callInThread(int shard, Task<T, ?> task, ThreadContext context) throws Exception {
+        try (SqlStatistics.Binding binding = context.bind()) {
+            return callOn(shard, task);
+        } catch (Exception | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new UndeclaredThrowableException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Throwable> T get(Future<T> future) throws E {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a shard", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (E) cause;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * What the calling thread of {@link #callOnAll(Task)} has bound to itself for the current request, carried over to
+     * the threads of the other shards.
+     */
+    private static final class ThreadContext {
+
+        private final SqlStatistics.Recordings recordings = SqlStatistics.capture();
+
+        private final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+        private final LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+
+        /**
+         * Bind the context to the current thread, until the returned binding is closed.
+         */
+        SqlStatistics.Binding bind() {
+            SqlStatistics.Binding recordings = this.recordings.bind();
+            RequestContextHolder.setRequestAttributes(this.requestAttributes);
+            LocaleContextHolder.setLocaleContext(this.localeContext);
+            return () -> {
+                LocaleContextHolder.resetLocaleContext();
+                RequestContextHolder.resetRequestAttributes();
+                recordings.close();
+            };
+        }
+
+    }
+
+    /**
+     * A task run on a shard.
+     */
+    @FunctionalInterface
+    public interface Task<T, E extends Throwable> {
+
+        T call() throws E;
+
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import javax.servlet.DispatcherType;
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Accounting of the SQL statements executed per request, to catch N+1 queries and slow statements early: the
+ * application's physical data sources are wrapped in a {@link SqlAccountingDataSource}, and the statements of each
+ * request are recorded by the {@link SqlAccountingFilter}. Tests can record {@link SqlStatistics} of their own to pin
+ * the query budget of a page.
+ */
+@Configuration
+@EnableConfigurationProperties(SqlAccountingProperties.class)
+class SqlAccountingConfiguration {
+
+    /**
+     * Wrap each data source bean that is a physical data source. Data sources routing to others, and proxies of others
+     * such as a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, are left as is: the time a
+     * connection is held would start with their handle rather than with the pool's connection. The pools beneath
+     * them are wrapped where they are created, see {@link DataSourcePools}.
+     */
+    @Bean
+    public static BeanPostProcessor petclinicSqlAccountingDataSourcePostProcessor(
+            ObjectProvider<SqlAccountingProperties> properties) {
+        return new BeanPostProcessor() {
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof DelegatingDataSource)
+                        && !(bean instanceof AbstractRoutingDataSource)) {
+                    return new SqlAccountingDataSource((DataSource) bean, properties.getObject());
+                }
+                return bean;
+            }
+
+        };
+    }
+
+    @Bean
+    public SqlAccountingFilter petclinicSqlAccountingFilter(SqlAccountingProperties properties,
+            MeterRegistry registry) {
+        return new SqlAccountingFilter(properties, registry);
+    }
+
+    /**
+     * Register the filter for asynchronous dispatches too, which complete the recording of asynchronous requests.
+     */
+    @Bean
+    public FilterRegistrationBean<SqlAccountingFilter> petclinicSqlAccountingFilterRegistration(
+            SqlAccountingFilter filter) {
+        FilterRegistrationBean<SqlAccountingFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        return registration;
+    }
+
+}
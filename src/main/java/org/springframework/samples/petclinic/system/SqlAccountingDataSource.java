@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Proxy of the application's {@link DataSource} that accounts for the SQL statements executed through it: each
+ * statement, each row read from its results, and the time each connection is held, are added to the
+ * {@link SqlStatistics} recorded on the current thread, and statements slower than a threshold are logged with their
+ * bind parameters.
+ * <p>
+ * Connections, statements and result sets are wrapped in JDK proxies. Bind parameters are only kept while slow
+ * statements are logged, and result sets only wrapped while statistics are recorded.
+ * <p>
+ * The proxy wraps a physical data source, such as a connection pool, so that a connection is held from the moment the
+ * pool hands it out. Closing the proxy closes the pool.
+ */
+class SqlAccountingDataSource extends DelegatingDataSource implements Closeable {
+
+    private static final Log logger = LogFactory.getLog(SqlAccountingDataSource.class);
+
+    private final SqlAccountingProperties properties;
+
+    SqlAccountingDataSource(DataSource targetDataSource, SqlAccountingProperties properties) {
+        super(targetDataSource);
+        this.properties = properties;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection(username, password)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (getTargetDataSource() instanceof Closeable) {
+            ((Closeable) getTargetDataSource()).close();
+        }
+    }
+
+    /**
+     * Return the time from which a statement is logged as slow, or <code>null</code> to log none.
+     */
+    private Duration getSlowStatementThreshold() {
+        return this.properties.getSlowStatementThreshold();
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SqlAccountingDataSource.class.getClassLoader(),
+            new Class<?>[] { type }, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        }
+    }
+
+    /**
+     * Base class of the proxies, which are equal to nothing but themselves.
+     */
+    private abstract static class Handler implements InvocationHandler {
+
+        final Object target;
+
+        Handler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return handle(method, args);
+            }
+        }
+
+        abstract Object handle(Method method, Object[] args) throws Throwable;
+
+    }
+
+    private class ConnectionHandler extends Handler {
+
+        private final long obtained = System.nanoTime();
+
+        private boolean closed;
+
+        ConnectionHandler(Connection target) {
+            super(target);
+        }
+
+        @Override
+        Object handle(Method method, Object[] args) throws Throwable {
+            Object result = SqlAccountingDataSource.invoke(this.target, method, args);
+            switch (method.getName()) {
+            case "close":
+                if (!this.closed) {
+                    this.closed = true;
+                    SqlStatistics.connectionReleased(System.nanoTime() - this.obtained);
+                }
+                return result;
+            case "createStatement":
+                return proxy(Statement.class, new StatementHandler(result, null));
+            case "prepareStatement":
+                return proxy(PreparedStatement.class, new StatementHandler(result, (String) args[0]));
+            case "prepareCall":
+                return proxy(CallableStatement.class, new StatementHandler(result, (String) args[0]));
+            default:
+                return result;
+            }
+        }
+
+    }
+
+    private class StatementHandler extends Handler {
+
+        private final String sql;
+
+        private final Map<Integer, Object> parameters;
+
+        StatementHandler(Object target, String sql) {
+            super(target);
+            this.sql = sql;
+            this.parameters = (sql != null && getSlowStatementThreshold() != null ? new TreeMap<>() : null);
+        }
+
+        @Override
+        Object handle(Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            Object result = SqlAccountingDataSource.invoke(this.target, method, args);
+            if (name.equals("getResultSet")) {
+                return resultSet(result);
+            }
+            if (this.parameters != null) {
+                if (name.equals("clearParameters")) {
+                    this.parameters.clear();
+                } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    this.parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                }
+            }
+            return result;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String sql = (args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : this.sql);
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = SqlAccountingDataSource.invoke(this.target, method, args);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                SqlStatistics.statementExecuted(sql, nanos);
+                Duration threshold = getSlowStatementThreshold();
+                if (threshold != null && nanos >= threshold.toNanos()) {
+                    logger.warn("Slow SQL statement (" + Duration.ofNanos(nanos).toMillis() + " ms): " + sql
+                        + (this.parameters != null ? " " + this.parameters.values() : ""));
+                }
+            }
+            return resultSet(result);
+        }
+
+        private Object resultSet(Object result) {
+            if (result instanceof ResultSet && SqlStatistics.isRecording()) {
+                return proxy(ResultSet.class, new ResultSetHandler(result));
+            }
+            return result;
+        }
+
+    }
+
+    private static class ResultSetHandler extends Handler {
+
+        ResultSetHandler(Object target) {
+            super(target);
+        }
+
+        @Override
+        Object handle(Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("next")) {
+                return SqlAccountingDataSource.invoke(this.target, method, args);
+            }
+            long start = System.nanoTime();
+            Boolean row = (Boolean) SqlAccountingDataSource.invoke(this.target, method, args);
+            SqlStatistics.rowsRead(row ? 1 : 0, System.nanoTime() - start);
+            return row;
+        }
+
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Records the {@link SqlStatistics} of each request: as the <code>petclinic.sql.statements</code>,
+ * <code>petclinic.sql.rows</code>, <code>petclinic.sql.time</code> and <code>petclinic.sql.connection.time</code>
+ * meters tagged with the URI pattern of the request, and, if enabled, in a <code>Server-Timing</code> response header.
+ * Compared with the SQL time, the connection time shows how long requests keep connections from the pool beyond the
+ * time their statements need. A request executing the same statement
+ * repeatedly is logged with the statement, and counted by the <code>petclinic.sql.repeated</code> counter.
+ * <p>
+ * The header is added when the response is committed, which the filter delays by enlarging the response buffer, so
+ * that it usually covers the rendering of the view; the statements of a response that is committed earlier, e.g.
+ * because it outgrows the buffer, are reported up to that point.
+ * <p>
+ * An asynchronous request is recorded once it completes, with the statements of its asynchronous dispatches and of
+ * the tasks it handed to other threads with the {@link SqlStatistics#capture() captured} recordings, e.g. those of the
+ * JSON API.
+ */
+class SqlAccountingFilter extends OncePerRequestFilter {
+
+    static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    private static final int SERVER_TIMING_BUFFER_SIZE = 64 * 1024;
+
+    private static final String RECORDING_ATTRIBUTE = SqlAccountingFilter.class.getName() + ".RECORDING";
+
+    private static final Log logger = LogFactory.getLog(SqlAccountingFilter.class);
+
+    private final SqlAccountingProperties properties;
+
+    private final MeterRegistry registry;
+
+    SqlAccountingFilter(SqlAccountingProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Recording recording = (Recording) request.getAttribute(RECORDING_ATTRIBUTE);
+        SqlStatistics.Binding binding;
+        if (recording == null) {
+            // the first dispatch of the request, asynchronous dispatches continue its recording
+            SqlStatistics statistics = SqlStatistics.start();
+            recording = new Recording(statistics, SqlStatistics.capture(),
+                (this.properties.isResponseHeader() ? new ServerTimingResponse(response, statistics) : null));
+            binding = statistics::stop;
+            if (recording.timingResponse != null) {
+                response = recording.timingResponse;
+            }
+        } else {
+            binding = recording.recordings.bind();
+        }
+        try {
+            chain.doFilter(request, response);
+            if (!isAsyncStarted(request) && recording.timingResponse != null) {
+                recording.timingResponse.addServerTiming();
+            }
+        } finally {
+            binding.close();
+            if (isAsyncStarted(request)) {
+                request.setAttribute(RECORDING_ATTRIBUTE, recording);
+            } else {
+                request.removeAttribute(RECORDING_ATTRIBUTE);
+                record(request, recording.statistics);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, SqlStatistics statistics) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = (pattern != null ? pattern.toString() : "UNKNOWN");
+        DistributionSummary.builder("petclinic.sql.statements")
+            .description("SQL statements executed per request")
+            .baseUnit("statements")
+            .tag("uri", uri)
+            .register(this.registry)
+            .record(statistics.getStatementCount());
+        DistributionSummary.builder("petclinic.sql.rows")
+            .description("Rows read by the SQL statements of a request")
+            .baseUnit("rows")
+            .tag("uri", uri)
+            .register(this.registry)
+            .record(statistics.getRowCount());
+        Timer.builder("petclinic.sql.time")
+            .description("Time spent executing the SQL statements of a request")
+            .tag("uri", uri)
+            .register(this.registry)
+            .record(statistics.getTime());
+        Timer.builder("petclinic.sql.connection.time")
+            .description("Time the database connections of a request were held")
+            .tag("uri", uri)
+            .register(this.registry)
+            .record(statistics.getConnectionTime());
+        Map<String, Integer> repeated = statistics.getRepeatedStatements(
+            this.properties.getRepeatedStatementThreshold());
+        if (!repeated.isEmpty()) {
+            Counter.builder("petclinic.sql.repeated")
+                .description("Requests executing the same SQL statement repeatedly, likely N+1 queries")
+                .tag("uri", uri)
+                .register(this.registry)
+                .increment();
+            if (logger.isWarnEnabled()) {
+                StringBuilder message = new StringBuilder(request.getMethod()).append(' ')
+                    .append(request.getRequestURI()).append(" executed statements repeatedly, likely N+1 queries:");
+                repeated.forEach((sql, executions) -> message.append("\n  ").append(executions).append("x ")
+                    .append(sql));
+                logger.warn(message);
+            }
+        }
+    }
+
+    /**
+     * The recording of a request, kept across its asynchronous dispatches.
+     */
+    private static class Recording {
+
+        private final SqlStatistics statistics;
+
+        private final SqlStatistics.Recordings recordings;
+
+        private final ServerTimingResponse timingResponse;
+
+        Recording(SqlStatistics statistics, SqlStatistics.Recordings recordings, ServerTimingResponse timingResponse) {
+            this.statistics = statistics;
+            this.recordings = recordings;
+            this.timingResponse = timingResponse;
+        }
+
+    }
+
+    /**
+     * Adds the <code>Server-Timing</code> header just before the response is committed, the last moment it can.
+     */
+    private static class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final SqlStatistics statistics;
+
+        private boolean added;
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        ServerTimingResponse(HttpServletResponse response, SqlStatistics statistics) {
+            super(response);
+            this.statistics = statistics;
+            if (response.getBufferSize() < SERVER_TIMING_BUFFER_SIZE) {
+                response.setBufferSize(SERVER_TIMING_BUFFER_SIZE);
+            }
+        }
+
+        void addServerTiming() {
+            if (this.added || isCommitted()) {
+                return;
+            }
+            this.added = true;
+            addHeader(SERVER_TIMING_HEADER, String.format(Locale.ROOT,
+                "sql;dur=%.3f;desc=\"%d statements, %d rows\", connection;dur=%.3f",
+                this.statistics.getTime().toNanos() / 1e6, this.statistics.getStatementCount(),
+                this.statistics.getRowCount(), this.statistics.getConnectionTime().toNanos() / 1e6));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (this.outputStream == null) {
+                this.outputStream = new TimingOutputStream(super.getOutputStream());
+            }
+            return this.outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (this.writer == null) {
+                this.writer = new PrintWriter(super.getWriter()) {
+
+                    @Override
+                    public void flush() {
+                        addServerTiming();
+                        super.flush();
+                    }
+
+                    @Override
+                    public void close() {
+                        addServerTiming();
+                        super.close();
+                    }
+
+                };
+            }
+            return this.writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addServerTiming();
+            super.sendRedirect(location);
+        }
+
+        private class TimingOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream delegate;
+
+            TimingOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                this.delegate.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.delegate.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                addServerTiming();
+                this.delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                addServerTiming();
+                this.delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return this.delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                this.delegate.setWriteListener(writeListener);
+            }
+
+        }
+
+    }
+
+}
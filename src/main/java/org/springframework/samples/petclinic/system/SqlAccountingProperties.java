@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the SQL accounting, bound from <code>petclinic.sql.*</code>, see {@link SqlAccountingConfiguration}.
+ */
+@ConfigurationProperties("petclinic.sql")
+public class SqlAccountingProperties {
+
+    /**
+     * Time from which a statement is logged as slow, with its bind parameters. Not set to log none.
+     */
+    private Duration slowStatementThreshold = Duration.ofMillis(100);
+
+    /**
+     * Number of times a request may execute the same statement before it is logged as a likely N+1 query.
+     */
+    private int repeatedStatementThreshold = 3;
+
+    /**
+     * Whether to report the statements of each request in a <code>Server-Timing</code> response header. Not meant for
+     * production, where it discloses the database activity of a page to anyone.
+     */
+    private boolean responseHeader;
+
+    public Duration getSlowStatementThreshold() {
+        return this.slowStatementThreshold;
+    }
+
+    public void setSlowStatementThreshold(Duration slowStatementThreshold) {
+        this.slowStatementThreshold = slowStatementThreshold;
+    }
+
+    public int getRepeatedStatementThreshold() {
+        return this.repeatedStatementThreshold;
+    }
+
+    public void setRepeatedStatementThreshold(int repeatedStatementThreshold) {
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+    }
+
+    public boolean isResponseHeader() {
+        return this.responseHeader;
+    }
+
+    public void setResponseHeader(boolean responseHeader) {
+        this.responseHeader = responseHeader;
+    }
+
+}
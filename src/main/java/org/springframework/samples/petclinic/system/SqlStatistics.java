@@ -0,0 +1,258 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The SQL statements executed by the current thread between {@link #start()} and {@link #stop()}, as recorded by the
+ * {@link SqlAccountingDataSource}: how many, how many rows they read, how long they took, and how often each distinct
+ * statement was executed, which reveals N+1 queries as one statement executed once per row of another. Also how long
+ * the thread held database connections, which is what the size of the connection pool has to cover.
+ * <p>
+ * Recordings may overlap, e.g. that of a test around that of the request it performs; each statement is added to all
+ * recordings active on the thread. Statements executed on other threads, e.g. by asynchronous requests, are only
+ * recorded when the recordings are carried over to them, see {@link #capture()}. A batch counts as one statement.
+ */
+public final class SqlStatistics {
+
+    private static final ThreadLocal<List<SqlStatistics>> active = ThreadLocal.withInitial(ArrayList::new);
+
+    private final Map<String, Integer> statements = new LinkedHashMap<>();
+
+    private int statementCount;
+
+    private long rowCount;
+
+    private long nanos;
+
+    private long connectionNanos;
+
+    private SqlStatistics() {
+    }
+
+    /**
+     * Start recording the statements executed by the current thread.
+     */
+    public static SqlStatistics start() {
+        SqlStatistics statistics = new SqlStatistics();
+        active.get().add(statistics);
+        return statistics;
+    }
+
+    /**
+     * Stop recording, the statistics keep what has been recorded so far.
+     */
+    public SqlStatistics stop() {
+        List<SqlStatistics> statistics = active.get();
+        statistics.remove(this);
+        if (statistics.isEmpty()) {
+            active.remove();
+        }
+        return this;
+    }
+
+    /**
+     * Capture the recordings active on the current thread, to continue them on another thread, e.g. in a task the
+     * current thread hands to an executor. Recordings continued on several threads at once may be recorded to
+     * concurrently.
+     */
+    public static Recordings capture() {
+        return new Recordings(new ArrayList<>(active.get()));
+    }
+
+    static boolean isRecording() {
+        return !active.get().isEmpty();
+    }
+
+    static void statementExecuted(String sql, long nanos) {
+        for (SqlStatistics statistics : active.get()) {
+            synchronized (statistics) {
+                statistics.statements.merge(sql, 1, Integer::sum);
+                statistics.statementCount++;
+                statistics.nanos += nanos;
+            }
+        }
+    }
+
+    static void rowsRead(int rows, long nanos) {
+        for (SqlStatistics statistics : active.get()) {
+            synchronized (statistics) {
+                statistics.rowCount += rows;
+                statistics.nanos += nanos;
+            }
+        }
+    }
+
+    static void connectionReleased(long nanos) {
+        for (SqlStatistics statistics : active.get()) {
+            synchronized (statistics) {
+                statistics.connectionNanos += nanos;
+            }
+        }
+    }
+
+    /**
+     * Return the number of statements executed.
+     */
+    public synchronized int getStatementCount() {
+        return this.statementCount;
+    }
+
+    /**
+     * Return the number of rows read from the results of the statements.
+     */
+    public synchronized long getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Return the time spent in the JDBC driver executing the statements and reading their results.
+     */
+    public synchronized Duration getTime() {
+        return Duration.ofNanos(this.nanos);
+    }
+
+    /**
+     * Return the time database connections were held, from being obtained from the data source until being closed.
+     * Connections still open are not included.
+     */
+    public synchronized Duration getConnectionTime() {
+        return Duration.ofNanos(this.connectionNanos);
+    }
+
+    /**
+     * Return the distinct statements executed, in the order of their first execution, with the number of times each
+     * was executed.
+     */
+    public synchronized Map<String, Integer> getStatements() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.statements));
+    }
+
+    /**
+     * Return the statements executed at least the given number of times, with the number of times each was executed.
+     */
+    public synchronized Map<String, Integer> getRepeatedStatements(int minExecutions) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        this.statements.forEach((sql, executions) -> {
+            if (executions >= minExecutions) {
+                repeated.put(sql, executions);
+            }
+        });
+        return repeated;
+    }
+
+    /**
+     * Clear what has been recorded so far, recording continues.
+     */
+    public synchronized void clear() {
+        this.statements.clear();
+        this.statementCount = 0;
+        this.rowCount = 0;
+        this.nanos = 0;
+        this.connectionNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.statementCount + " statements, " + this.rowCount + " rows, " + getTime().toMillis() + " ms, "
+            + "connections held " + getConnectionTime().toMillis() + " ms";
+    }
+
+    /**
+     * Recordings captured on one thread by {@link SqlStatistics#capture()}, to continue on others.
+     */
+    public static final class Recordings {
+
+        private final List<SqlStatistics> statistics;
+
+        private Recordings(List<SqlStatistics> statistics) {
+            this.statistics = statistics;
+        }
+
+        /**
+         * Continue the recordings on the current thread, next to those already active on it, until the returned
+         * binding is closed.
+         */
+        public Binding bind() {
+            List<SqlStatistics> previous = active.get();
+            List<SqlStatistics> bound = new ArrayList<>(previous);
+            for (SqlStatistics recording : this.statistics) {
+                if (!bound.contains(recording)) {
+                    bound.add(recording);
+                }
+            }
+            active.set(bound);
+            return () -> {
+                if (previous.isEmpty()) {
+                    active.remove();
+                } else {
+                    active.set(previous);
+                }
+            };
+        }
+
+        /**
+         * Wrap the given task to continue the recordings while it runs.
+         */
+        public Runnable wrap(Runnable task) {
+            if (this.statistics.isEmpty()) {
+                return task;
+            }
+            return () -> {
+                try (Binding binding = bind()) {
+                    task.run();
+                }
+            };
+        }
+
+        /**
+         * Wrap the given task to continue the recordings while it runs.
+         */
+        public <T> Supplier<T> wrap(Supplier<T> task) {
+            if (this.statistics.isEmpty()) {
+                return task;
+            }
+            return () -> {
+                try (Binding binding = bind()) {
+                    return task.get();
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Recordings continued on a thread, see {@link Recordings#bind()}.
+     */
+    @FunctionalInterface
+    public interface Binding extends AutoCloseable {
+
+        /**
+         * Stop continuing the recordings, those active on the thread before are active again.
+         */
+        @Override
+        void close();
+
+    }
+
+}
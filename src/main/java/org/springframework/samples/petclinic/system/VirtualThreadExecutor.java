@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Runs every task on a new virtual thread, and publishes the number of tasks in flight as the
+ * <code>petclinic.threads.virtual.active</code> gauge and the tasks run as the
+ * <code>petclinic.threads.virtual.tasks</code> counter, tagged with the name of the executor.
+ * <p>
+ * Virtual threads need Java 21 or later. The application is compiled for Java 8, so they are created through the
+ * <code>Thread.ofVirtual()</code> builder by reflection.
+ */
+class VirtualThreadExecutor implements Executor, MeterBinder, DisposableBean {
+
+    private final String name;
+
+    private final ExecutorService executor;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong tasks = new AtomicLong();
+
+    /**
+     * Create an executor whose threads are named after it, e.g. <code>http-vt-42</code> for <code>http</code>.
+     * @throws IllegalStateException if the JVM does not support virtual threads
+     */
+    VirtualThreadExecutor(String name) {
+        this.name = name;
+        this.executor = newThreadPerTaskExecutor(name + "-vt-");
+    }
+
+    /**
+     * Whether the running JVM supports virtual threads.
+     */
+    static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newThreadPerTaskExecutor(String threadNamePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, this is Java "
+                + System.getProperty("java.version") + "; unset petclinic.threads.virtual to use platform threads");
+        }
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, threadFactory);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException ex) {
+            throw new IllegalStateException("Cannot create virtual threads", ex);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.active.incrementAndGet();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    this.active.decrementAndGet();
+                    this.tasks.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.active.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    int getActiveCount() {
+        return this.active.get();
+    }
+
+    long getTaskCount() {
+        return this.tasks.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("petclinic.threads.virtual.active", this.active, AtomicInteger::get)
+            .tag("executor", this.name)
+            .description("The number of tasks running on virtual threads")
+            .register(registry);
+        FunctionCounter.builder("petclinic.threads.virtual.tasks", this.tasks, AtomicLong::get)
+            .tag("executor", this.name)
+            .description("The number of tasks run on virtual threads")
+            .register(registry);
+    }
+
+    /**
+     * Stop accepting tasks; tasks in flight run to completion.
+     */
+    @Override
+    public void destroy() {
+        this.executor.shutdown();
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+
+/**
+ * Opt-in execution of requests and asynchronous tasks on virtual threads, enabled by
+ * <code>petclinic.threads.virtual=true</code>, e.g. through the <code>virtual</code> profile, on Java 21 or later.
+ * <p>
+ * Tomcat hands every request to a new virtual thread instead of one of its worker threads, so a request blocked on
+ * JDBC no longer holds one of a fixed number of threads; what bounds concurrent database work is the connection pool.
+ * The <code>applicationTaskExecutor</code>, used for <code>@Async</code> methods and asynchronous MVC requests,
+ * replaces Spring Boot's thread pool with virtual threads as well.
+ */
+@Configuration
+@ConditionalOnProperty("petclinic.threads.virtual")
+class VirtualThreadsConfiguration {
+
+    @Bean
+    public VirtualThreadExecutor requestVirtualThreads() {
+        return new VirtualThreadExecutor("http");
+    }
+
+    @Bean
+    public VirtualThreadExecutor taskVirtualThreads() {
+        return new VirtualThreadExecutor("task");
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> petclinicVirtualThreadsTomcatCustomizer() {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            ProtocolHandler handler = connector.getProtocolHandler();
+            if (handler instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) handler).setExecutor(requestVirtualThreads());
+            }
+        });
+    }
+
+    @Bean(name = "applicationTaskExecutor")
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new ConcurrentTaskExecutor(taskVirtualThreads());
+    }
+
+}
@@ -20,15 +20,20 @@ import java.io.Serializable;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.samples.petclinic.model.NamedEntity;
 
 /**
- * Models a {@link Vet Vet's} specialty (for example, dentistry).
+ * Models a {@link Vet Vet's} specialty (for example, dentistry). Specialties are reference data, rarely changed,
+ * cached in the second-level cache. An update evicts the cached specialty, readers may see the old name until the
+ * transaction commits.
  *
  * @author Juergen Hoeller
  */
 @Entity
 @Table(name = "specialties")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "specialties")
 public class Specialty extends NamedEntity implements Serializable {
 
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vet;
+
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
+/**
+ * Repository class for <code>Specialty</code> domain objects. Specialties are part of the cached
+ * {@link VetRepository#findAll() vets}, so saving one evicts that cache.
+ */
+public interface SpecialtyRepository extends Repository<Specialty, Integer> {
+
+    /**
+     * Retrieve all <code>Specialty</code>s from the data store, ordered by name.
+     *
+     * @return a <code>List</code> of <code>Specialty</code>s, from the query cache unless a specialty has been saved
+     */
+    @Query("SELECT specialty FROM Specialty specialty ORDER BY specialty.name")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Transactional(readOnly = true)
+    List<Specialty> findSpecialties() throws DataAccessException;
+
+    /**
+     * Save a <code>Specialty</code> to the data store, either inserting or updating it, and evict the cached vets.
+     *
+     * @param specialty the <code>Specialty</code> to save
+     */
+    @CacheEvict(cacheNames = "vets", allEntries = true)
+    void save(Specialty specialty) throws DataAccessException;
+
+}
@@ -15,10 +15,17 @@
  */
 package org.springframework.samples.petclinic.vet;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -30,10 +37,16 @@ import java.util.Map;
 @Controller
 class VetController {
 
+    private static final List<MediaType> PRODUCIBLE_TYPES = Arrays.asList(MediaType.APPLICATION_JSON,
+        MediaType.APPLICATION_XML, MediaType.TEXT_XML);
+
     private final VetRepository vets;
 
-    public VetController(VetRepository clinicService) {
+    private final VetsRepresentations representations;
+
+    public VetController(VetRepository clinicService, VetsRepresentations representations) {
         this.vets = clinicService;
+        this.representations = representations;
     }
 
     @GetMapping("/vets.html")
@@ -46,13 +59,47 @@ class VetController {
         return "vets/vetList";
     }
 
+    /**
+     * Serve the precomputed JSON or XML body of the vet list. Clients sending the ETag of their copy in
+     * <code>If-None-Match</code> get a 304 while the list is unchanged.
+     */
     @GetMapping({ "/vets" })
-    public @ResponseBody Vets showResourcesVetList() {
-        // Here we are returning an object of type 'Vets' rather than a collection of Vet
-        // objects so it is simpler for JSon/Object mapping
-        Vets vets = new Vets();
-        vets.getVetList().addAll(this.vets.findAll());
-        return vets;
+    public ResponseEntity<byte[]> showResourcesVetList(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+            throws HttpMediaTypeNotAcceptableException {
+        VetsRepresentations.Representation representation = isXmlPreferred(accept)
+            ? this.representations.xml() : this.representations.json();
+        return ResponseEntity.ok()
+            .eTag(representation.getETag())
+            .varyBy(HttpHeaders.ACCEPT)
+            .contentType(representation.getContentType())
+            .body(representation.getBody());
+    }
+
+    /**
+     * Whether the most preferred of the accepted types that we can produce is XML. JSON is the default, also for
+     * <code>*&#47;*</code>.
+     */
+    private static boolean isXmlPreferred(String accept) throws HttpMediaTypeNotAcceptableException {
+        if (accept == null || accept.isEmpty()) {
+            return false;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException ex) {
+            throw new HttpMediaTypeNotAcceptableException(
+                "Could not parse 'Accept' header [" + accept + "]: " + ex.getMessage());
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            for (MediaType producible : PRODUCIBLE_TYPES) {
+                if (type.isCompatibleWith(producible)) {
+                    return !producible.equals(MediaType.APPLICATION_JSON);
+                }
+            }
+        }
+        throw new HttpMediaTypeNotAcceptableException(PRODUCIBLE_TYPES);
     }
 
 }
@@ -17,8 +17,11 @@ package org.springframework.samples.petclinic.vet;
 
 import java.util.Collection;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -42,5 +45,23 @@ public interface VetRepository extends Repository<Vet, Integer> {
     @Cacheable("vets")
     Collection<Vet> findAll() throws DataAccessException;
 
+    /**
+     * Reload all <code>Vet</code>s from the data store and replace the cached result of {@link #findAll()} with them.
+     *
+     * @return a <code>Collection</code> of <code>Vet</code>s
+     */
+    @Query("SELECT vet FROM Vet vet")
+    @Transactional(readOnly = true)
+    @CachePut("vets")
+    Collection<Vet> refreshAll() throws DataAccessException;
+
+    /**
+     * Save a <code>Vet</code> to the data store, either inserting or updating it, and evict the cached result of
+     * {@link #findAll()}.
+     *
+     * @param vet the <code>Vet</code> to save
+     */
+    @CacheEvict(cacheNames = "vets", allEntries = true)
+    void save(Vet vet) throws DataAccessException;
 
 }
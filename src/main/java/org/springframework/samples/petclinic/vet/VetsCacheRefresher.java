@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vet;
+
+import org.springframework.samples.petclinic.system.CacheRefresher;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link CacheRefresher} for the <code>vets</code> cache.
+ */
+@Component
+class VetsCacheRefresher implements CacheRefresher {
+
+    private final VetRepository vets;
+
+    VetsCacheRefresher(VetRepository vets) {
+        this.vets = vets;
+    }
+
+    @Override
+    public String getCacheName() {
+        return "vets";
+    }
+
+    @Override
+    public void refresh() {
+        this.vets.refreshAll();
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.samples.petclinic.system.CacheGenerations;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Serialized JSON and XML bodies of the vet list, each with a strong ETag. The bodies are computed once per
+ * generation of the <code>vets</code> cache, see {@link CacheGenerations}, and are rebuilt after the cache has been
+ * evicted, refreshed or has expired. The list is still read from the cache on every request, which is where the cache
+ * notices that its entry has expired.
+ */
+@Component
+class VetsRepresentations {
+
+    private final VetRepository vets;
+
+    private final CacheGenerations generations;
+
+    private final ObjectMapper objectMapper;
+
+    private final JAXBContext jaxbContext;
+
+    private volatile Snapshot snapshot;
+
+    VetsRepresentations(VetRepository vets, CacheGenerations generations, ObjectMapper objectMapper)
+            throws JAXBException {
+        this.vets = vets;
+        this.generations = generations;
+        this.objectMapper = objectMapper;
+        this.jaxbContext = JAXBContext.newInstance(Vets.class);
+    }
+
+    public Representation json() {
+        return current().json;
+    }
+
+    public Representation xml() {
+        return current().xml;
+    }
+
+    private Snapshot current() {
+        long generation = this.generations.get("vets");
+        Collection<Vet> source = this.vets.findAll();
+        Snapshot current = this.snapshot;
+        if (current == null || current.generation != generation) {
+            Vets vets = new Vets();
+            vets.getVetList().addAll(source);
+            current = new Snapshot(generation,
+                    new Representation(MediaType.APPLICATION_JSON_UTF8, toJson(vets)),
+                    new Representation(MediaType.APPLICATION_XML, toXml(vets)));
+            this.snapshot = current;
+        }
+        return current;
+    }
+
+    private byte[] toJson(Vets vets) {
+        try {
+            return this.objectMapper.writeValueAsBytes(vets);
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotWritableException("Could not write JSON: " + ex.getOriginalMessage(), ex);
+        }
+    }
+
+    private byte[] toXml(Vets vets) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Marshaller marshaller = this.jaxbContext.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+            marshaller.marshal(vets, out);
+            return out.toByteArray();
+        } catch (JAXBException ex) {
+            throw new HttpMessageNotWritableException("Could not marshal [" + vets + "]: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * A serialized body of the vet list, ready to be written as is.
+     */
+    static final class Representation {
+
+        private final MediaType contentType;
+
+        private final byte[] body;
+
+        private final String eTag;
+
+        Representation(MediaType contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+            this.eTag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        }
+
+        public MediaType getContentType() {
+            return this.contentType;
+        }
+
+        public byte[] getBody() {
+            return this.body;
+        }
+
+        public String getETag() {
+            return this.eTag;
+        }
+
+    }
+
+    private static final class Snapshot {
+
+        private final long generation;
+
+        private final Representation json;
+
+        private final Representation xml;
+
+        private Snapshot(long generation, Representation json, Representation xml) {
+            this.generation = generation;
+            this.json = json;
+            this.xml = xml;
+        }
+
+    }
+
+}
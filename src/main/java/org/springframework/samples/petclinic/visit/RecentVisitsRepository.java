@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visit;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.samples.petclinic.system.ShardKey;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Queries of the {@link VisitRepository} that Spring Data cannot derive, see {@link RecentVisitsRepositoryImpl}.
+ */
+public interface RecentVisitsRepository {
+
+    /**
+     * Retrieve the most recent visits of each of the given pets, in one statement per ten pets: per pet, at most
+     * <code>limit</code> visits are read from the <code>(pet_id, visit_date, id)</code> index, however long its
+     * history.
+     *
+     * @param petIds the ids of the pets
+     * @param limit the number of visits to retrieve per pet
+     * @return at most <code>limit</code> visits of each pet, in no guaranteed order
+     */
+    @Transactional(readOnly = true)
+    List<Visit> findRecentByPetIds(@ShardKey Collection<Integer> petIds, int limit);
+
+}
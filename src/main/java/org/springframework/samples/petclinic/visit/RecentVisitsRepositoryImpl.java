@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+/**
+ * Reads the recent visits of several pets as a <code>UNION ALL</code> of one limited query per pet. JPQL has no limit
+ * in subqueries, and neither HSQLDB nor MySQL 5.7 offer window functions or lateral joins that would limit the visits
+ * of each pet in a single query otherwise.
+ * <p>
+ * The statement always has {@value #BATCH_SIZE} branches, and the limit is a parameter, so that it is prepared and
+ * planned once whatever the number of pets. More pets take one statement per batch, fewer leave branches with a pet
+ * id that matches no pet.
+ */
+class RecentVisitsRepositoryImpl implements RecentVisitsRepository {
+
+    static final int BATCH_SIZE = 10;
+
+    private static final int NO_PET = -1;
+
+    private static final String SQL = sql();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Visit> findRecentByPetIds(Collection<Integer> petIds, int limit) {
+        List<Visit> visits = new ArrayList<>();
+        Iterator<Integer> ids = petIds.iterator();
+        while (ids.hasNext()) {
+            Query query = this.entityManager.createNativeQuery(SQL, Visit.class);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                query.setParameter("pet" + i, ids.hasNext() ? ids.next() : NO_PET);
+            }
+            query.setParameter("limit", limit);
+            visits.addAll(query.getResultList());
+        }
+        return visits;
+    }
+
+    private static String sql() {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            // undated visits last, like NULLS LAST which MySQL lacks
+            sql.append("(SELECT id, pet_id, visit_date, description, version FROM visits WHERE pet_id = :pet").append(i)
+                .append(" ORDER BY CASE WHEN visit_date IS NULL THEN 1 ELSE 0 END, visit_date DESC, id DESC")
+                .append(" LIMIT :limit)");
+        }
+        return sql.toString();
+    }
+
+}
@@ -15,25 +15,58 @@
  */
 package org.springframework.samples.petclinic.visit;
 
+import java.io.Serializable;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotEmpty;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.springframework.data.domain.DomainEvents;
 import org.springframework.format.annotation.DateTimeFormat;
-import org.springframework.samples.petclinic.model.BaseEntity;
+import org.springframework.samples.petclinic.system.ShardKeyed;
 
 /**
  * Simple JavaBean domain object representing a visit.
+ * <p>
+ * Unlike the other entities a visit does not extend {@link org.springframework.samples.petclinic.model.BaseEntity}:
+ * visits are inserted in bulk, and Hibernate cannot batch inserts of <code>IDENTITY</code> ids since it has to execute
+ * each insert to learn its id. Visit ids are drawn from the <code>visits_seq</code> sequence instead, which hands out
+ * blocks of 50 ids per call.
  *
  * @author Ken Krebs
  * @author Dave Syer
  */
 @Entity
 @Table(name = "visits")
-public class Visit extends BaseEntity {
+public class Visit implements Serializable, ShardKeyed {
+
+    /**
+     * The order of visits most recent first, matching <code>ORDER BY visit_date DESC, id DESC</code>, which sorts
+     * undated visits last on HSQLDB and MySQL. A visit not saved yet comes first of its date, as its id will be the
+     * highest.
+     */
+    public static final Comparator<Visit> MOST_RECENT_FIRST = Comparator
+        .comparing(Visit::getDate, Comparator.nullsLast(Comparator.<LocalDate>reverseOrder()))
+        .thenComparing(Visit::getId, Comparator.nullsFirst(Comparator.<Integer>reverseOrder()));
+
+    @Id
+    @GeneratedValue(generator = "visits_seq")
+    @GenericGenerator(name = "visits_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+        parameters = {
+            @Parameter(name = "sequence_name", value = "visits_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo") })
+    private Integer id;
 
     @Column(name = "visit_date")
     @DateTimeFormat(pattern = "yyyy-MM-dd")
@@ -46,6 +79,10 @@ public class Visit extends BaseEntity {
     @Column(name = "pet_id")
     private Integer petId;
 
+    @Version
+    @Column(name = "version")
+    private Integer version;
+
     /**
      * Creates a new instance of Visit for the current date
      */
@@ -53,6 +90,18 @@ public class Visit extends BaseEntity {
         this.date = LocalDate.now();
     }
 
+    public Integer getId() {
+        return this.id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public boolean isNew() {
+        return this.id == null;
+    }
+
     public LocalDate getDate() {
         return this.date;
     }
@@ -77,4 +126,29 @@ public class Visit extends BaseEntity {
         this.petId = petId;
     }
 
+    public Integer getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    /**
+     * A visit is kept on the shard of its pet. Its id is unique across shards, but does not tell its shard.
+     */
+    @Override
+    public Integer shardKey() {
+        return this.petId;
+    }
+
+    /**
+     * The event published by {@link VisitRepository#save(Visit)} and <code>saveAll</code> once this visit has been
+     * saved.
+     */
+    @DomainEvents
+    Collection<VisitSavedEvent> savedEvents() {
+        return Collections.singletonList(new VisitSavedEvent(this.petId));
+    }
+
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import org.springframework.core.style.ToStringCreator;
+import org.springframework.util.StringUtils;
+
+/**
+ * Position in the visit history of a pet, expressed as the <code>(date, id)</code> key of the last visit of a page.
+ * The next page is read from the <code>(pet_id, visit_date, id)</code> index starting right after that key, so the
+ * cost of a page does not depend on how many visits precede it. Visits without a date come last, and their cursors
+ * have no date.
+ * <p>
+ * Cursors travel as opaque, URL-safe tokens (see {@link #encode()} and {@link #decode(String)}).
+ * </p>
+ */
+public final class VisitCursor {
+
+    private static final char SEPARATOR = ':';
+
+    private final LocalDate date;
+
+    private final int id;
+
+    private VisitCursor(LocalDate date, int id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    /**
+     * Create a cursor selecting the visits that precede the given visit, most recent first.
+     */
+    public static VisitCursor after(Visit visit) {
+        return new VisitCursor(visit.getDate(), visit.getId());
+    }
+
+    /**
+     * Parse a token previously created by {@link #encode()}.
+     *
+     * @param token the token, may be <code>null</code> or empty
+     * @return the cursor, or <code>null</code> if the token is absent or malformed
+     */
+    public static VisitCursor decode(String token) {
+        if (!StringUtils.hasLength(token)) {
+            return null;
+        }
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        int separator = value.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return new VisitCursor(separator > 0 ? LocalDate.parse(value.substring(0, separator)) : null,
+                Integer.parseInt(value.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Render this cursor as a URL-safe token.
+     */
+    public String encode() {
+        String value = (this.date != null ? this.date.toString() : "") + SEPARATOR + this.id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Return the date of the visit, <code>null</code> for a visit without a date.
+     */
+    public LocalDate getDate() {
+        return this.date;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this).append("date", this.date).append("id", this.id).toString();
+    }
+
+}
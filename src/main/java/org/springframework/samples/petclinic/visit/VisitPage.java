@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of the visit history of a pet, most recent first, together with the cursor leading to the older visits.
+ */
+public class VisitPage {
+
+    /**
+     * Largest number of visits a page may hold.
+     */
+    public static final int MAX_SIZE = 100;
+
+    private final List<Visit> visits;
+
+    private final VisitCursor next;
+
+    public VisitPage(List<Visit> visits, VisitCursor next) {
+        this.visits = Collections.unmodifiableList(visits);
+        this.next = next;
+    }
+
+    /**
+     * Build a page from the rows returned by a keyset query that asked for one row more than <code>pageSize</code>.
+     * The extra row only tells whether there are older visits and is dropped.
+     *
+     * @param rows the rows in query order, most recent first
+     * @param pageSize the requested page size
+     */
+    static VisitPage of(List<Visit> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new VisitPage(rows, null);
+        }
+        List<Visit> visits = new ArrayList<>(rows.subList(0, pageSize));
+        Visit last = visits.get(pageSize - 1);
+        return new VisitPage(visits, VisitCursor.after(last));
+    }
+
+    public List<Visit> getVisits() {
+        return this.visits;
+    }
+
+    public boolean isEmpty() {
+        return this.visits.isEmpty();
+    }
+
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    /**
+     * Return the cursor selecting the older visits, or <code>null</code> if this is the last page.
+     */
+    public VisitCursor getNext() {
+        return this.next;
+    }
+
+}
@@ -15,11 +15,27 @@
  */
 package org.springframework.samples.petclinic.visit;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.Repository;
-import org.springframework.samples.petclinic.model.BaseEntity;
+import org.springframework.data.repository.query.Param;
+import org.springframework.samples.petclinic.system.ShardKey;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
  * Repository class for <code>Visit</code> domain objects All method names are compliant with Spring Data naming
@@ -30,16 +46,124 @@ import org.springframework.samples.petclinic.model.BaseEntity;
  * @author Sam Brannen
  * @author Michael Isvy
  */
-public interface VisitRepository extends Repository<Visit, Integer> {
+public interface VisitRepository extends Repository<Visit, Integer>, RecentVisitsRepository {
 
     /**
      * Save a <code>Visit</code> to the data store, either inserting or updating it.
      *
      * @param visit the <code>Visit</code> to save
-     * @see BaseEntity#isNew
+     * @see Visit#isNew
+     */
+    void save(@ShardKey Visit visit) throws DataAccessException;
+
+    /**
+     * Save all given visits in one transaction, one per shard when the database is sharded. With
+     * <code>hibernate.jdbc.batch_size</code> set, the inserts of new visits are sent to the database in JDBC batches
+     * when the transaction commits.
+     *
+     * @param visits the visits to save
+     * @return the saved visits
+     */
+    List<Visit> saveAll(@ShardKey Iterable<Visit> visits) throws DataAccessException;
+
+    /**
+     * Retrieve one page of the visit history of a pet, most recent first. Pages are addressed by keyset rather than by
+     * offset, so a page costs the same however long the history is and however far into it the page is.
+     *
+     * @param petId the id of the pet
+     * @param cursor the position to continue from, or <code>null</code> for the most recent visits
+     * @param pageSize the maximum number of visits on the page
+     * @return the requested {@link VisitPage} (empty if there are no more visits)
+     */
+    @Transactional(readOnly = true)
+    default VisitPage findPageByPetId(@ShardKey Integer petId, VisitCursor cursor, int pageSize) {
+        // one extra row tells whether there are older visits
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<Visit> rows = (cursor == null ? findByPetIdOrderByDateDescIdDesc(petId, limit)
+            : findByPetIdAfter(petId, cursor.getDate(), cursor.getId(), limit));
+        return VisitPage.of(rows, pageSize);
+    }
+
+    /**
+     * Retrieve the first page of the visit history of each of the given pets, e.g. for the page of their owner, in one
+     * statement per ten pets, see {@link #findRecentByPetIds}.
+     *
+     * @param petIds the ids of the pets
+     * @param pageSize the maximum number of visits per pet
+     * @return the {@link VisitPage} of each pet, by pet id, in the order of <code>petIds</code>
+     */
+    @Transactional(readOnly = true)
+    default Map<Integer, VisitPage> findFirstPagesByPetIds(Collection<Integer> petIds, int pageSize) {
+        Map<Integer, List<Visit>> rows = new LinkedHashMap<>();
+        for (Integer petId : petIds) {
+            rows.put(petId, new ArrayList<>());
+        }
+        for (Visit visit : findRecentByPetIds(petIds, pageSize + 1)) {
+            rows.get(visit.getPetId()).add(visit);
+        }
+        Map<Integer, VisitPage> pages = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Visit>> entry : rows.entrySet()) {
+            entry.getValue().sort(Visit.MOST_RECENT_FIRST);
+            pages.put(entry.getKey(), VisitPage.of(entry.getValue(), pageSize));
+        }
+        return pages;
+    }
+
+    /**
+     * Retrieve the most recent visits of a pet, most recent first like
+     * {@link org.springframework.samples.petclinic.owner.Pet#getVisits()}.
+     *
+     * @param petId the id of the pet
+     * @param limit the visits to retrieve, e.g. <code>PageRequest.of(0, 10)</code> for the ten most recent ones
+     * @return the visits, most recent first, those without a date last
+     */
+    @Query("SELECT visit FROM Visit visit WHERE visit.petId = :petId"
+        + " ORDER BY visit.date DESC NULLS LAST, visit.id DESC")
+    List<Visit> findByPetIdOrderByDateDescIdDesc(@Param("petId") @ShardKey Integer petId, Pageable limit);
+
+    /**
+     * Retrieve the visits of a pet that follow the given visit in the order of
+     * {@link #findByPetIdOrderByDateDescIdDesc}, to page through them by keyset: the next page starts after the last
+     * visit of the previous one. Visits without a date come last, ordered by id.
+     *
+     * @param petId the id of the pet
+     * @param date the date of the last visit of the previous page, <code>null</code> if it has none
+     * @param id the id of the last visit of the previous page
+     * @param limit the number of visits to retrieve, e.g. <code>PageRequest.of(0, 10)</code>
+     * @return the visits, most recent first
      */
-    void save(Visit visit) throws DataAccessException;
+    @Transactional(readOnly = true)
+    default List<Visit> findByPetIdAfter(@ShardKey Integer petId, LocalDate date, Integer id, Pageable limit) {
+        return (date != null ? findByPetIdAfterDated(petId, date, id, limit)
+            : findByPetIdAfterUndated(petId, id, limit));
+    }
 
-    List<Visit> findByPetId(Integer petId);
+    /**
+     * Retrieve the visits of a pet that follow a dated visit, those without a date included, see
+     * {@link #findByPetIdAfter}.
+     */
+    @Query("SELECT visit FROM Visit visit WHERE visit.petId = :petId"
+        + " AND (visit.date < :date OR (visit.date = :date AND visit.id < :id) OR visit.date IS NULL)"
+        + " ORDER BY visit.date DESC NULLS LAST, visit.id DESC")
+    List<Visit> findByPetIdAfterDated(@Param("petId") @ShardKey Integer petId, @Param("date") LocalDate date,
+        @Param("id") Integer id, Pageable limit);
+
+    /**
+     * Retrieve the visits of a pet without a date that follow one without a date, see {@link #findByPetIdAfter}.
+     */
+    @Query("SELECT visit FROM Visit visit WHERE visit.petId = :petId AND visit.date IS NULL AND visit.id < :id"
+        + " ORDER BY visit.id DESC")
+    List<Visit> findByPetIdAfterUndated(@Param("petId") @ShardKey Integer petId, @Param("id") Integer id,
+        Pageable limit);
+
+    /**
+     * Stream the columns of all visits, ordered by id, for export: <code>id, petId, date, description</code>. Rows
+     * are fetched from a forward-only cursor as the stream is consumed, and are not entities, so they are not retained
+     * by the persistence context. Must be called within a transaction, and the stream closed. Streams the visits of the
+     * current shard.
+     */
+    @Query("SELECT visit.id, visit.petId, visit.date, visit.description FROM Visit visit ORDER BY visit.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Object[]> streamAllForExport();
 
 }
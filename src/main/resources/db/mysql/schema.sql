@@ -42,6 +42,7 @@ CREATE TABLE IF NOT EXISTS owners (
   address VARCHAR(255),
   city VARCHAR(80),
   telephone VARCHAR(20),
+  version INT(4) UNSIGNED NOT NULL DEFAULT 0,
   INDEX(last_name)
 ) engine=InnoDB;
 
@@ -51,15 +52,73 @@ CREATE TABLE IF NOT EXISTS pets (
   birth_date DATE,
   type_id INT(4) UNSIGNED NOT NULL,
   owner_id INT(4) UNSIGNED NOT NULL,
+  version INT(4) UNSIGNED NOT NULL DEFAULT 0,
   INDEX(name),
+  UNIQUE KEY pets_owner_name (owner_id, name),
   FOREIGN KEY (owner_id) REFERENCES owners(id),
   FOREIGN KEY (type_id) REFERENCES types(id)
 ) engine=InnoDB;
 
 CREATE TABLE IF NOT EXISTS visits (
-  id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  id INT(4) UNSIGNED NOT NULL PRIMARY KEY,
   pet_id INT(4) UNSIGNED NOT NULL,
   visit_date DATE,
   description VARCHAR(255),
+  version INT(4) UNSIGNED NOT NULL DEFAULT 0,
+  -- the visit history of a pet, most recent first; InnoDB appends the primary key to the index
+  INDEX visits_pet_date (pet_id, visit_date),
   FOREIGN KEY (pet_id) REFERENCES pets(id)
 ) engine=InnoDB;
+
+-- Databases created by an earlier version of this script: CREATE TABLE IF NOT EXISTS leaves existing tables as they
+-- are, so the columns and indexes added since are added here, each only if missing. MySQL 5.7 has no IF NOT EXISTS
+-- for columns and indexes, hence the statements prepared from information_schema.
+-- Optimistic versions of owners, pets and visits
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+  WHERE table_schema = DATABASE() AND table_name = 'owners' AND column_name = 'version') = 0,
+  'ALTER TABLE owners ADD COLUMN version INT(4) UNSIGNED NOT NULL DEFAULT 0', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+  WHERE table_schema = DATABASE() AND table_name = 'pets' AND column_name = 'version') = 0,
+  'ALTER TABLE pets ADD COLUMN version INT(4) UNSIGNED NOT NULL DEFAULT 0', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+  WHERE table_schema = DATABASE() AND table_name = 'visits' AND column_name = 'version') = 0,
+  'ALTER TABLE visits ADD COLUMN version INT(4) UNSIGNED NOT NULL DEFAULT 0', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+-- The duplicate pet name check; fails if an owner already has two pets of the same name, rename one of them first
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics
+  WHERE table_schema = DATABASE() AND table_name = 'pets' AND index_name = 'pets_owner_name') = 0,
+  'ALTER TABLE pets ADD UNIQUE KEY pets_owner_name (owner_id, name)', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+-- The visit history of a pet
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics
+  WHERE table_schema = DATABASE() AND table_name = 'visits' AND index_name = 'visits_pet_date') = 0,
+  'ALTER TABLE visits ADD INDEX visits_pet_date (pet_id, visit_date)', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+-- Visit ids are drawn from visits_seq rather than generated by the table
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+  WHERE table_schema = DATABASE() AND table_name = 'visits' AND column_name = 'id'
+  AND extra LIKE '%auto_increment%') = 0,
+  'DO 0', 'ALTER TABLE visits MODIFY id INT(4) UNSIGNED NOT NULL');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+-- MySQL has no sequences, Hibernate emulates visits_seq with a single row table
+CREATE TABLE IF NOT EXISTS visits_seq (
+  next_val BIGINT
+) engine=InnoDB;
+-- starts after the visits of an existing database
+INSERT INTO visits_seq SELECT next_val FROM (SELECT GREATEST(100, COALESCE(MAX(id), 0) + 1) AS next_val FROM visits) start
+  WHERE NOT EXISTS (SELECT * FROM visits_seq);
@@ -16,11 +16,24 @@
 
 package org.springframework.samples.petclinic;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.owner.PetType;
+import org.springframework.samples.petclinic.owner.PetTypeRepository;
 import org.springframework.samples.petclinic.vet.VetRepository;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -31,9 +44,85 @@ public class PetclinicIntegrationTests {
     @Autowired
     private VetRepository vets;
 
+    @Autowired
+    private PetRepository pets;
+
+    @Autowired
+    private PetTypeRepository petTypes;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @Test
     public void testFindAll() throws Exception {
         vets.findAll();
         vets.findAll(); // served from cache
     }
+
+    @Test
+    public void testFindPetTypesIsCachedUntilATypeIsSaved() throws Exception {
+        List<PetType> types = pets.findPetTypes();
+        assertThat(pets.findPetTypes()).isSameAs(types); // served from cache
+
+        petTypes.save(types.get(0));
+        List<PetType> reloaded = pets.findPetTypes();
+        assertThat(reloaded).isNotSameAs(types);
+        assertThat(reloaded).extracting(PetType::getName).containsExactlyElementsOf(
+            types.stream().map(PetType::getName).collect(Collectors.toList()));
+
+        assertThat(registry.get("cache.hit.ratio").tag("cache", "petTypes").gauge().value()).isBetween(0.0, 1.0);
+    }
+
+    @Test
+    public void testRenamedPetTypeIsReadFromTheSecondLevelCache() throws Exception {
+        PetType type = pets.findPetTypes().get(0);
+        String name = type.getName();
+        try {
+            type.setName(name + "-renamed");
+            petTypes.save(type);
+            assertThat(entityManagerFactory.getCache().contains(PetType.class, type.getId())).isFalse();
+            assertThat(pets.findPetTypes()).extracting(PetType::getName).contains(name + "-renamed");
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                assertThat(entityManager.find(PetType.class, type.getId()).getName()).isEqualTo(name + "-renamed");
+            } finally {
+                entityManager.close();
+            }
+        } finally {
+            type.setName(name);
+            petTypes.save(type);
+        }
+    }
+
+    @Test
+    public void testCacheMetricsArePublishedForEveryCache() throws Exception {
+        for (String cache : new String[] { "vets", "petTypes" }) {
+            assertThat(registry.get("cache.gets").tag("cache", cache).tag("result", "hit").functionCounter()).isNotNull();
+            assertThat(registry.get("cache.gets").tag("cache", cache).tag("result", "miss").functionCounter()).isNotNull();
+            assertThat(registry.get("cache.puts").tag("cache", cache).functionCounter()).isNotNull();
+            assertThat(registry.get("cache.evictions").tag("cache", cache).functionCounter()).isNotNull();
+            String manager = registry.get("cache.puts").tag("cache", cache).functionCounter().getId()
+                .getTag("cacheManager");
+            assertThat(registry.get("cache.hit.ratio").tag("cache", cache).tag("cacheManager", manager).gauge())
+                .isNotNull();
+        }
+        vets.findAll();
+        assertThat(registry.get("cache.puts").tag("cache", "vets").functionCounter().count()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testEntitiesAreReadFromTheSecondLevelCache() throws Exception {
+        entityManagerFactory.getCache().evictAll();
+        double hits = registry.get("cache.gets").tag("cache", "pets").tag("result", "hit").functionCounter().count();
+
+        Pet pet = pets.findById(7);
+        assertThat(entityManagerFactory.getCache().contains(Pet.class, 7)).isTrue();
+        assertThat(entityManagerFactory.getCache().contains(PetType.class, pet.getType().getId())).isTrue();
+        assertThat(pets.findById(7).getName()).isEqualTo(pet.getName());
+        assertThat(registry.get("cache.gets").tag("cache", "pets").tag("result", "hit").functionCounter().count())
+            .isGreaterThan(hits);
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for {@link ExportController} and {@link ClinicExporter}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ExportControllerTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+        this.statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+        this.statistics.clear();
+    }
+
+    @After
+    public void tearDown() {
+        this.statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void testExportOwnersAsCsv() throws Exception {
+        String csv = mockMvc.perform(get("/export/owners.csv"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("text/csv;charset=UTF-8"))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"owners.csv\""))
+            .andReturn().getResponse().getContentAsString();
+        String[] lines = csv.split("\r\n");
+        assertThat(lines).hasSize(11);
+        assertThat(lines[0]).isEqualTo("id,firstName,lastName,address,city,telephone");
+        assertThat(lines[1]).isEqualTo("1,George,Franklin,110 W. Liberty St.,Madison,6085551023");
+        // one query, no entities
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(this.statistics.getEntityLoadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExportPetsAsNdjson() throws Exception {
+        String ndjson = mockMvc.perform(get("/export/pets.ndjson"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson"))
+            .andReturn().getResponse().getContentAsString();
+        String[] lines = ndjson.split("\n");
+        assertThat(lines).hasSize(13);
+        assertThat(lines[0])
+            .isEqualTo("{\"id\":1,\"ownerId\":1,\"name\":\"Leo\",\"birthDate\":\"2010-09-07\",\"type\":\"cat\"}");
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(this.statistics.getEntityLoadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExportVisits() throws Exception {
+        String csv = mockMvc.perform(get("/export/visits.csv"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertThat(csv).startsWith("id,petId,date,description\r\n1,7,2013-01-01,rabies shot\r\n");
+        mockMvc.perform(get("/export/visits.ndjson"))
+            .andExpect(status().isOk())
+            .andExpect(content().string(startsWith(
+                "{\"id\":1,\"petId\":7,\"date\":\"2013-01-01\",\"description\":\"rabies shot\"}\n")));
+    }
+
+    @Test
+    public void testExportUnknownFormat() throws Exception {
+        mockMvc.perform(get("/export/owners.xlsx"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testCsvFieldQuoting() {
+        assertThat(ClinicExporter.csvField(null)).isEqualTo("");
+        assertThat(ClinicExporter.csvField(42)).isEqualTo("42");
+        assertThat(ClinicExporter.csvField("Madison")).isEqualTo("Madison");
+        assertThat(ClinicExporter.csvField("Madison, WI")).isEqualTo("\"Madison, WI\"");
+        assertThat(ClinicExporter.csvField("the \"Leo\"")).isEqualTo("\"the \"\"Leo\"\"\"");
+        assertThat(ClinicExporter.csvField("two\nlines")).isEqualTo("\"two\nlines\"");
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for {@link OwnerApiController}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class OwnerApiControllerTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+    }
+
+    @After
+    public void tearDown() {
+        this.jdbcTemplate.update("DELETE FROM visits WHERE id >= 100");
+    }
+
+    @Test
+    public void testFindOwners() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/owners").param("lastName", "Davis"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        String[] lines = awaitStream(mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson"))
+            .andReturn(), 2);
+        assertThat(lines[0]).isEqualTo("{\"id\":2,\"firstName\":\"Betty\",\"lastName\":\"Davis\","
+            + "\"address\":\"638 Cardinal Ave.\",\"city\":\"Sun Prairie\",\"telephone\":\"6085551749\","
+            + "\"petNames\":[\"Basil\"]}");
+        assertThat(lines[1]).contains("\"firstName\":\"Harold\"");
+    }
+
+    @Test
+    public void testShowOwner() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/owners/{ownerId}", 6))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.lastName").value("Coleman"))
+            .andExpect(jsonPath("$.pets[0].name").value("Max"))
+            .andExpect(jsonPath("$.pets[1].birthDate").value("2012-09-04"))
+            .andExpect(jsonPath("$.pets[1].type").value("cat"));
+    }
+
+    @Test
+    public void testShowUnknownOwner() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/owners/{ownerId}", 99))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testFindVisitsPageByPage() throws Exception {
+        int visits = OwnerApiController.PAGE_SIZE * 2 + 1;
+        for (int i = 0; i < visits; i++) {
+            this.jdbcTemplate.update("INSERT INTO visits VALUES (NEXT VALUE FOR visits_seq, 7, ?, 'checkup', 0)",
+                Date.valueOf(LocalDate.of(2014, 1, 1).plusDays(i % 50)));
+        }
+        MvcResult result = mockMvc.perform(get("/api/owners/{ownerId}/pets/{petId}/visits", 6, 7))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        String[] lines = awaitStream(mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andReturn(), visits + 2);
+        assertThat(lines[0]).startsWith("{\"id\":")
+            .endsWith("\"date\":\"2014-02-19\",\"description\":\"checkup\"}");
+        assertThat(lines[visits + 1]).isEqualTo("{\"id\":1,\"date\":\"2013-01-01\",\"description\":\"rabies shot\"}");
+        // most recent first, each visit once
+        Visit[] read = new Visit[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            read[i] = this.objectMapper.readValue(lines[i], Visit.class);
+        }
+        assertThat(read).extracting(Visit::getId).doesNotHaveDuplicates();
+        assertThat(read).extracting(Visit::getDate).isSortedAccordingTo(Comparator.reverseOrder());
+    }
+
+    @Test
+    public void testFindVisitsPageWithCursor() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/owners/{ownerId}/pets/{petId}/visits/page", 6, 7)
+            .param("size", "1"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        String next = JsonPath.read(mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.visits[*].id").value(4))
+            .andReturn().getResponse().getContentAsString(), "$.next");
+        result = mockMvc.perform(get("/api/owners/{ownerId}/pets/{petId}/visits/page", 6, 7)
+            .param("size", "1").param("cursor", next))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.visits[*].id").value(1))
+            .andExpect(jsonPath("$.next").doesNotExist());
+    }
+
+    @Test
+    public void testFindVisitsOfPetOfAnotherOwner() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/owners/{ownerId}/pets/{petId}/visits", 1, 7))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testRejectWhenSaturated() throws Exception {
+        OwnerApiExecutor executor = new OwnerApiExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> awaitQuietly(release));
+            executor.execute(() -> awaitQuietly(release));
+            assertThatThrownBy(() -> executor.supply(() -> "rejected"))
+                .isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            release.countDown();
+            executor.destroy();
+        }
+    }
+
+    /**
+     * Wait for the stream to complete, on the threads of the {@link OwnerApiExecutor}, and return its lines.
+     */
+    private static String[] awaitStream(MvcResult result, int lines) throws Exception {
+        String content = "";
+        for (long deadline = System.currentTimeMillis() + 10000; System.currentTimeMillis() < deadline;) {
+            content = result.getResponse().getContentAsString();
+            if (content.split("\n").length >= lines) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        assertThat(content).endsWith("\n");
+        return content.split("\n");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -1,10 +1,20 @@
 package org.springframework.samples.petclinic.owner;
 
 import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
@@ -16,9 +26,12 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.samples.petclinic.owner.OwnerController;
 import org.springframework.samples.petclinic.owner.OwnerRepository;
+import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -39,8 +52,15 @@ public class OwnerControllerTests {
     @MockBean
     private OwnerRepository owners;
 
+    @MockBean
+    private VisitRepository visits;
+
     private Owner george;
 
+    private OwnerSummary georgeSummary;
+
+    private OwnerSummary bettySummary;
+
     @Before
     public void setup() {
         george = new Owner();
@@ -50,7 +70,14 @@ public class OwnerControllerTests {
         george.setAddress("110 W. Liberty St.");
         george.setCity("Madison");
         george.setTelephone("6085551023");
+        george.setVersion(0);
         given(this.owners.findById(TEST_OWNER_ID)).willReturn(george);
+        georgeSummary = new OwnerSummary(TEST_OWNER_ID, "George", "Franklin", "110 W. Liberty St.", "Madison",
+            "6085551023");
+        georgeSummary.addPetName("Leo");
+        bettySummary = new OwnerSummary(2, "Betty", "Davis", "638 Cardinal Ave.", "Sun Prairie", "6085551749");
+        given(this.owners.findPageByLastName(anyString(), any(), anyInt()))
+            .willReturn(new OwnerPage(Lists.newArrayList(), null, null));
     }
 
     @Test
@@ -97,15 +124,43 @@ public class OwnerControllerTests {
 
     @Test
     public void testProcessFindFormSuccess() throws Exception {
-        given(this.owners.findByLastName("")).willReturn(Lists.newArrayList(george, new Owner()));
+        given(this.owners.findPageByLastName(eq(""), isNull(), eq(OwnerController.DEFAULT_PAGE_SIZE)))
+            .willReturn(new OwnerPage(Lists.newArrayList(georgeSummary, bettySummary), null, null));
         mockMvc.perform(get("/owners"))
             .andExpect(status().isOk())
             .andExpect(view().name("owners/ownersList"));
     }
 
+    @Test
+    public void testProcessFindFormWithCursor() throws Exception {
+        OwnerCursor cursor = OwnerCursor.after(bettySummary);
+        given(this.owners.findPageByLastName(eq(""), any(OwnerCursor.class), eq(5)))
+            .willReturn(new OwnerPage(Lists.newArrayList(georgeSummary), null, OwnerCursor.before(georgeSummary)));
+        mockMvc.perform(get("/owners")
+            .param("cursor", cursor.encode())
+            .param("size", "5")
+        )
+            .andExpect(status().isOk())
+            .andExpect(model().attribute("selections", hasSize(1)))
+            .andExpect(view().name("owners/ownersList"));
+    }
+
+    @Test
+    public void testProcessFindFormPageSizeIsBounded() throws Exception {
+        given(this.owners.findPageByLastName(eq(""), isNull(), eq(OwnerController.MAX_PAGE_SIZE)))
+            .willReturn(new OwnerPage(Lists.newArrayList(georgeSummary, bettySummary), null, null));
+        mockMvc.perform(get("/owners")
+            .param("size", "100000")
+        )
+            .andExpect(status().isOk())
+            .andExpect(model().attribute("size", OwnerController.MAX_PAGE_SIZE))
+            .andExpect(view().name("owners/ownersList"));
+    }
+
     @Test
     public void testProcessFindFormByLastName() throws Exception {
-        given(this.owners.findByLastName(george.getLastName())).willReturn(Lists.newArrayList(george));
+        given(this.owners.findPageByLastName(eq(george.getLastName()), isNull(), anyInt()))
+            .willReturn(new OwnerPage(Lists.newArrayList(georgeSummary), null, null));
         mockMvc.perform(get("/owners")
             .param("lastName", "Franklin")
         )
@@ -145,11 +200,44 @@ public class OwnerControllerTests {
             .param("address", "123 Caramel Street")
             .param("city", "London")
             .param("telephone", "01616291589")
+            .param("version", "0")
         )
             .andExpect(status().is3xxRedirection())
             .andExpect(view().name("redirect:/owners/{ownerId}"));
     }
 
+    @Test
+    public void testProcessUpdateOwnerFormWithoutVersion() throws Exception {
+        mockMvc.perform(post("/owners/{ownerId}/edit", TEST_OWNER_ID)
+            .param("firstName", "Joe")
+            .param("lastName", "Bloggs")
+            .param("address", "123 Caramel Street")
+            .param("city", "London")
+            .param("telephone", "01616291589")
+        )
+            .andExpect(status().isOk())
+            .andExpect(model().attributeHasErrors("owner"))
+            .andExpect(view().name("owners/createOrUpdateOwnerForm"));
+        verify(this.owners, never()).save(any(Owner.class));
+    }
+
+    @Test
+    public void testProcessUpdateOwnerFormChangedInTheMeantime() throws Exception {
+        willThrow(new ObjectOptimisticLockingFailureException(Owner.class, TEST_OWNER_ID))
+            .given(this.owners).save(any(Owner.class));
+        mockMvc.perform(post("/owners/{ownerId}/edit", TEST_OWNER_ID)
+            .param("firstName", "Joe")
+            .param("lastName", "Bloggs")
+            .param("address", "123 Caramel Street")
+            .param("city", "London")
+            .param("telephone", "01616291589")
+            .param("version", "0")
+        )
+            .andExpect(status().isOk())
+            .andExpect(model().attributeHasErrors("owner"))
+            .andExpect(view().name("owners/createOrUpdateOwnerForm"));
+    }
+
     @Test
     public void testProcessUpdateOwnerFormHasErrors() throws Exception {
         mockMvc.perform(post("/owners/{ownerId}/edit", TEST_OWNER_ID)
@@ -173,6 +261,26 @@ public class OwnerControllerTests {
             .andExpect(model().attribute("owner", hasProperty("address", is("110 W. Liberty St."))))
             .andExpect(model().attribute("owner", hasProperty("city", is("Madison"))))
             .andExpect(model().attribute("owner", hasProperty("telephone", is("6085551023"))))
+            .andExpect(model().attributeExists("visits"))
+            .andExpect(view().name("owners/ownerDetails"))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"owner-1-0-en\""));
+    }
+
+    @Test
+    public void testShowOwnerNotModified() throws Exception {
+        given(this.owners.findVersionById(TEST_OWNER_ID)).willReturn(0);
+        mockMvc.perform(get("/owners/{ownerId}", TEST_OWNER_ID).header(HttpHeaders.IF_NONE_MATCH, "\"owner-1-0-en\""))
+            .andExpect(status().isNotModified());
+        verify(this.owners, never()).findById(anyInt());
+    }
+
+    @Test
+    public void testShowOwnerModified() throws Exception {
+        given(this.owners.findVersionById(TEST_OWNER_ID)).willReturn(1);
+        george.setVersion(1);
+        mockMvc.perform(get("/owners/{ownerId}", TEST_OWNER_ID).header(HttpHeaders.IF_NONE_MATCH, "\"owner-1-0-en\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"owner-1-1-en\""))
             .andExpect(view().name("owners/ownerDetails"));
     }
 
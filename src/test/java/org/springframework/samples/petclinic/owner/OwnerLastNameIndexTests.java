@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for {@link OwnerLastNameIndex}, its endpoint and the typeahead of {@link OwnerApiController}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class OwnerLastNameIndexTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private OwnerLastNameIndex index;
+
+    @Autowired
+    private OwnerRepository owners;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+    }
+
+    @After
+    public void tearDown() {
+        this.jdbcTemplate.update("DELETE FROM owners WHERE id > 10");
+        this.entityManagerFactory.getCache().evictAll();
+        this.index.rebuild();
+    }
+
+    @Test
+    public void shouldBeBuiltOnStartup() {
+        assertThat(this.index.size()).isEqualTo(10);
+        assertThat(this.index.getLastNameCount()).isEqualTo(9);
+        assertThat(this.index.getEstimatedSize()).isGreaterThan(0);
+    }
+
+    @Test
+    public void shouldFindOwnersByPrefixIgnoringCase() {
+        List<OwnerLastNameIndex.Match> matches = this.index.findByLastNamePrefix("dA", 10);
+        assertThat(matches).extracting(OwnerLastNameIndex.Match::getId).containsExactly(2, 4);
+        assertThat(matches).extracting(OwnerLastNameIndex.Match::getLastName).containsOnly("Davis");
+
+        assertThat(this.index.findByLastNamePrefix("Es", 10)).extracting(OwnerLastNameIndex.Match::getLastName)
+            .containsExactly("Escobito", "Estaban");
+        assertThat(this.index.findByLastNamePrefix("Es", 1)).hasSize(1);
+        assertThat(this.index.findByLastNamePrefix("Davisson", 10)).isEmpty();
+        assertThat(this.index.findByLastNamePrefix("Zz", 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldIndexSavedOwners() {
+        Owner owner = new Owner();
+        owner.setFirstName("Sam");
+        owner.setLastName("Dawson");
+        owner.setAddress("4, Evans Street");
+        owner.setCity("Wollongong");
+        owner.setTelephone("4444444444");
+        this.owners.save(owner);
+        assertThat(this.index.findByLastNamePrefix("Da", 10)).extracting(OwnerLastNameIndex.Match::getId)
+            .containsExactly(2, 4, owner.getId());
+
+        owner.setLastName("Black");
+        this.owners.save(owner);
+        assertThat(this.index.findByLastNamePrefix("Da", 10)).extracting(OwnerLastNameIndex.Match::getId)
+            .containsExactly(2, 4);
+        assertThat(this.index.findByLastNamePrefix("Bl", 10)).extracting(OwnerLastNameIndex.Match::getId)
+            .containsExactly(7, owner.getId());
+        assertThat(this.index.size()).isEqualTo(11);
+        assertThat(this.index.getLastNameCount()).isEqualTo(9);
+    }
+
+    @Test
+    public void shouldKeepEntriesSortedOnUpdate() {
+        OwnerLastNameIndex index = new OwnerLastNameIndex(null, null, null);
+        index.update(3, "davis");
+        index.update(1, "Davis");
+        index.update(2, "Coleman");
+        index.update(4, "Davis");
+        assertThat(index.findByLastNamePrefix("", 10)).extracting(OwnerLastNameIndex.Match::getId)
+            .containsExactly(2, 1, 4, 3);
+        assertThat(index.getLastNameCount()).isEqualTo(3);
+
+        index.update(3, null);
+        index.update(2, "Davies");
+        assertThat(index.findByLastNamePrefix("dav", 10)).extracting(OwnerLastNameIndex.Match::getId)
+            .containsExactly(2, 1, 4);
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getLastNameCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testTypeahead() throws Exception {
+        mockMvc.perform(get("/api/owners/typeahead").param("q", " dav"))
+            .andExpect(status().isOk())
+            .andExpect(content().json("[{\"id\":2,\"lastName\":\"Davis\"},{\"id\":4,\"lastName\":\"Davis\"}]"));
+        mockMvc.perform(get("/api/owners/typeahead").param("q", "Davis").param("limit", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1));
+        mockMvc.perform(get("/api/owners/typeahead").param("q", ""))
+            .andExpect(status().isOk())
+            .andExpect(content().json("[]"));
+    }
+
+    @Test
+    public void shouldReportAndRebuildThroughEndpoint() throws Exception {
+        this.jdbcTemplate.update("INSERT INTO owners VALUES (1000, 'Sam', 'Dawson', '4, Evans Street', 'Wollongong',"
+            + " '4444444444', 0)");
+        mockMvc.perform(get("/manage/ownerindex"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.owners").value(10))
+            .andExpect(jsonPath("$.lastNames").value(9));
+        mockMvc.perform(post("/manage/ownerindex"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.owners").value(11));
+        assertThat(this.index.findByLastNamePrefix("Daw", 10)).extracting(OwnerLastNameIndex.Match::getId)
+            .containsExactly(1000);
+    }
+
+}
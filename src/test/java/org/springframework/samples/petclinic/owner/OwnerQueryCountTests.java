@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.system.QueryBudget;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Guards the number of SQL statements issued to render the owner pages, including lazy loading from the templates.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class OwnerQueryCountTests {
+
+    @Rule
+    public final QueryBudget queries = new QueryBudget();
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    private int lastVisitId;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+        this.statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+        this.statistics.clear();
+        this.lastVisitId = this.jdbcTemplate.queryForObject("SELECT MAX(id) FROM visits", Integer.class);
+        this.queries.reset();
+    }
+
+    @After
+    public void tearDown() {
+        this.statistics.setStatisticsEnabled(false);
+        // a visit form commits, remove the visits added; the tests do not depend on the versions of the owners
+        this.jdbcTemplate.update("DELETE FROM visits WHERE id > ?", this.lastVisitId);
+        this.entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    public void ownersListNeverTouchesVisits() throws Exception {
+        mockMvc.perform(get("/owners").param("lastName", ""))
+            .andExpect(status().isOk())
+            .andExpect(view().name("owners/ownersList"));
+        // one statement for the owners of the page, one for their pet names
+        this.queries.assertStatements(2).assertNoRepeatedStatements();
+        assertThat(this.statistics.getEntityLoadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void ownerDetailsLoadsRecentVisitsInOneStatement() throws Exception {
+        Map<String, Object> model = mockMvc.perform(get("/owners/{ownerId}", 6))
+            .andExpect(status().isOk())
+            .andExpect(view().name("owners/ownerDetails"))
+            .andReturn().getModelAndView().getModel();
+        // one statement for the owner, its pets and their types, one for the recent visits of all pets
+        this.queries.assertStatements(2).assertNoRepeatedStatements();
+        assertThat(this.statistics.getCollectionFetchCount()).isEqualTo(0);
+        Owner owner = (Owner) model.get("owner");
+        Map<?, ?> visits = (Map<?, ?>) model.get("visits");
+        for (Pet pet : owner.getPets()) {
+            assertThat(Hibernate.isInitialized(pet.getVisitsInternal())).isFalse();
+            assertThat(visits.containsKey(pet.getId())).isTrue();
+        }
+    }
+
+    @Test
+    public void ownerDetailsCostTheSameWithALongVisitHistory() throws Exception {
+        for (int i = 0; i < 10 * 365; i++) {
+            this.jdbcTemplate.update("INSERT INTO visits VALUES (NEXT VALUE FOR visits_seq, 7, ?, 'checkup', 0)",
+                Date.valueOf(LocalDate.of(2008, 1, 1).plusDays(i)));
+        }
+        this.queries.reset();
+        String html = mockMvc.perform(get("/owners/{ownerId}", 6))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        this.queries.assertStatements(2).assertNoRepeatedStatements();
+        // the recent visits of the pet only, and a link to the older ones
+        assertThat(this.statistics.getEntityLoadCount()).isLessThan(20);
+        assertThat(html).contains("2017-12-24").doesNotContain("2017-12-23").contains("\"6/pets/7/visits?cursor=");
+
+        this.queries.reset();
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/visits", 6, 7))
+            .andExpect(status().isOk())
+            .andExpect(view().name("pets/visitHistory"));
+        // the pet, and one page of its visits
+        this.queries.assertStatements(2);
+    }
+
+    @Test
+    public void ownerDetailsRevalidatesWithOneStatement() throws Exception {
+        int version = ownerVersion(6);
+        String etag = mockMvc.perform(get("/owners/{ownerId}", 6))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        this.statistics.clear();
+        this.queries.reset();
+        mockMvc.perform(get("/owners/{ownerId}", 6).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+        // the owner's version only
+        this.queries.assertStatements(1);
+        assertThat(this.statistics.getEntityLoadCount()).isEqualTo(0);
+
+        // a new visit of one of the owner's pets changes the page
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/visits/new", 6, 7)
+            .param("date", "2018-01-01")
+            .param("description", "checkup"))
+            .andExpect(status().is3xxRedirection());
+        assertThat(ownerVersion(6)).isEqualTo(version + 1);
+        mockMvc.perform(get("/owners/{ownerId}", 6).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG,
+                etag.replace("-" + version + "-", "-" + (version + 1) + "-")));
+    }
+
+    private int ownerVersion(int ownerId) {
+        return this.jdbcTemplate.queryForObject("SELECT version FROM owners WHERE id = ?", Integer.class, ownerId);
+    }
+
+}
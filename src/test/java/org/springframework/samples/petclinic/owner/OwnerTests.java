@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.samples.petclinic.visit.Visit;
+
+/**
+ * Test class for the ordering of {@link Owner#getPets()} and {@link Pet#getVisits()} and for
+ * {@link Owner#getPet(String, boolean)}.
+ */
+public class OwnerTests {
+
+    @Test
+    public void testPetsAreAddedInNameOrder() {
+        Owner owner = new Owner();
+        for (String name : new String[] { "sly", "Basil", "max", "Leo" }) {
+            Pet pet = new Pet();
+            pet.setName(name);
+            owner.addPet(pet);
+        }
+        assertThat(owner.getPets()).extracting(Pet::getName).containsExactly("Basil", "Leo", "max", "sly");
+    }
+
+    @Test
+    public void testViewFollowsTheCollection() {
+        Owner owner = new Owner();
+        assertThat(owner.getPets()).isEmpty();
+        Pet pet = new Pet();
+        pet.setName("Leo");
+        owner.addPet(pet);
+        assertThat(owner.getPets()).containsExactly(pet);
+    }
+
+    @Test
+    public void testGetPetIgnoresCase() {
+        Owner owner = new Owner();
+        for (int i = 0; i < 100; i++) {
+            Pet pet = new Pet();
+            pet.setName("Pet" + i);
+            owner.addPet(pet);
+        }
+        assertThat(owner.getPet("pet42").getName()).isEqualTo("Pet42");
+        assertThat(owner.getPet("PET99").getName()).isEqualTo("Pet99");
+        assertThat(owner.getPet("Pet100")).isNull();
+        assertThat(owner.getPet("Pet")).isNull();
+    }
+
+    @Test
+    public void testGetPetPrefersSavedPets() {
+        Owner owner = new Owner();
+        Pet saved = new Pet();
+        saved.setId(1);
+        saved.setName("Leo");
+        owner.setPetsInternal(new ArrayList<>(Collections.singletonList(saved)));
+        Pet added = new Pet();
+        added.setName("LEO");
+        owner.addPet(added);
+        assertThat(owner.getPet("leo")).isSameAs(saved);
+        assertThat(owner.getPet("leo", true)).isSameAs(saved);
+
+        Pet other = new Pet();
+        other.setName("Max");
+        owner.addPet(other);
+        assertThat(owner.getPet("max")).isSameAs(other);
+        assertThat(owner.getPet("max", true)).isNull();
+    }
+
+    @Test
+    public void testGetPetFollowsRenames() {
+        Owner owner = new Owner();
+        Pet pet = new Pet();
+        pet.setName("Leo");
+        owner.addPet(pet);
+        assertThat(owner.getPet("leo")).isSameAs(pet);
+        pet.setName("Basil");
+        assertThat(owner.getPet("leo")).isNull();
+        assertThat(owner.getPet("basil")).isSameAs(pet);
+    }
+
+    @Test
+    public void testVisitsAreAddedMostRecentFirst() {
+        Pet pet = new Pet();
+        for (int day : new int[] { 2, 4, 1, 3 }) {
+            Visit visit = new Visit();
+            visit.setDate(LocalDate.of(2013, 1, day));
+            pet.addVisit(visit);
+        }
+        assertThat(pet.getVisits()).extracting(Visit::getDate).containsExactly(LocalDate.of(2013, 1, 4),
+            LocalDate.of(2013, 1, 3), LocalDate.of(2013, 1, 2), LocalDate.of(2013, 1, 1));
+    }
+
+    @Test
+    public void testVisitsAreAddedInTheOrderOfTheMapping() {
+        Pet pet = new Pet();
+        Visit[] visits = new Visit[4];
+        for (int i = 0; i < visits.length; i++) {
+            visits[i] = new Visit();
+            visits[i].setId(i + 1);
+            visits[i].setDate(i < 2 ? LocalDate.of(2013, 1, 1) : null);
+        }
+        for (int i : new int[] { 2, 0, 3, 1 }) {
+            pet.addVisit(visits[i]);
+        }
+        Visit unsaved = new Visit();
+        unsaved.setDate(LocalDate.of(2013, 1, 1));
+        pet.addVisit(unsaved);
+        // date descending with undated visits last, then id descending, as loaded by ORDER BY visit_date DESC, id DESC
+        assertThat(pet.getVisits()).containsExactly(unsaved, visits[1], visits[0], visits[3], visits[2]);
+    }
+
+}
@@ -1,19 +1,30 @@
 package org.springframework.samples.petclinic.owner;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+
 import org.assertj.core.util.Lists;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
 import org.springframework.samples.petclinic.owner.Owner;
@@ -23,6 +34,7 @@ import org.springframework.samples.petclinic.owner.PetController;
 import org.springframework.samples.petclinic.owner.PetRepository;
 import org.springframework.samples.petclinic.owner.PetType;
 import org.springframework.samples.petclinic.owner.PetTypeFormatter;
+import org.springframework.samples.petclinic.system.CacheGenerations;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -34,7 +46,7 @@ import org.springframework.test.web.servlet.MockMvc;
 @RunWith(SpringRunner.class)
 @WebMvcTest(value = PetController.class,
     includeFilters = @ComponentScan.Filter(
-                            value = PetTypeFormatter.class,
+                            value = { PetTypeFormatter.class, CacheGenerations.class },
                             type = FilterType.ASSIGNABLE_TYPE))
 public class PetControllerTests {
 
@@ -57,9 +69,17 @@ public class PetControllerTests {
         cat.setId(3);
         cat.setName("hamster");
         given(this.pets.findPetTypes()).willReturn(Lists.newArrayList(cat));
-        given(this.owners.findById(TEST_OWNER_ID)).willReturn(new Owner());
-        given(this.pets.findById(TEST_PET_ID)).willReturn(new Pet());
-
+        Owner owner = new Owner();
+        owner.setId(TEST_OWNER_ID);
+        given(this.owners.findSummaryById(TEST_OWNER_ID))
+            .willReturn(new OwnerSummary(TEST_OWNER_ID, "George", "Franklin", null, null, null));
+        given(this.owners.findById(TEST_OWNER_ID)).willReturn(owner);
+        given(this.owners.getOne(TEST_OWNER_ID)).willReturn(owner);
+        Pet pet = new Pet();
+        pet.setId(TEST_PET_ID);
+        pet.setOwner(owner);
+        given(this.pets.findById(TEST_PET_ID)).willReturn(pet);
+        given(this.pets.existsByIdAndOwnerId(TEST_PET_ID, TEST_OWNER_ID)).willReturn(true);
     }
 
     @Test
@@ -68,6 +88,13 @@ public class PetControllerTests {
             .andExpect(status().isOk())
             .andExpect(view().name("pets/createOrUpdatePetForm"))
             .andExpect(model().attributeExists("pet"));
+        verify(this.owners, never()).findById(anyInt());
+    }
+
+    @Test
+    public void testInitCreationFormUnknownOwner() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}/pets/new", 2))
+            .andExpect(status().isNotFound());
     }
 
     @Test
@@ -95,12 +122,55 @@ public class PetControllerTests {
             .andExpect(view().name("pets/createOrUpdatePetForm"));
     }
 
+    @Test
+    public void testProcessCreationFormDuplicateName() throws Exception {
+        Owner owner = new Owner();
+        Pet betty = new Pet();
+        betty.setId(2);
+        betty.setName("Betty");
+        owner.setPetsInternal(new ArrayList<>(Collections.singletonList(betty)));
+        given(this.owners.findById(TEST_OWNER_ID)).willReturn(owner);
+        mockMvc.perform(post("/owners/{ownerId}/pets/new", TEST_OWNER_ID)
+            .param("name", "BETTY")
+            .param("type", "hamster")
+            .param("birthDate", "2015-02-12")
+        )
+            .andExpect(model().attributeHasFieldErrorCode("pet", "name", "duplicate"))
+            .andExpect(status().isOk())
+            .andExpect(view().name("pets/createOrUpdatePetForm"));
+        verify(this.pets, never()).save(any(Pet.class));
+    }
+
+    @Test
+    public void testProcessCreationFormDuplicateNameInDatabase() throws Exception {
+        willThrow(new DataIntegrityViolationException("duplicate",
+            new ConstraintViolationException("duplicate", new SQLException(), "PETS_OWNER_NAME")))
+            .given(this.pets).save(any(Pet.class));
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/edit", TEST_OWNER_ID, TEST_PET_ID)
+            .param("name", "Betty")
+            .param("type", "hamster")
+            .param("birthDate", "2015-02-12")
+            .param("version", "0")
+        )
+            .andExpect(model().attributeHasFieldErrorCode("pet", "name", "duplicate"))
+            .andExpect(status().isOk())
+            .andExpect(view().name("pets/createOrUpdatePetForm"));
+    }
+
     @Test
     public void testInitUpdateForm() throws Exception {
         mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/edit", TEST_OWNER_ID, TEST_PET_ID))
             .andExpect(status().isOk())
             .andExpect(model().attributeExists("pet"))
             .andExpect(view().name("pets/createOrUpdatePetForm"));
+        verify(this.owners, never()).findById(anyInt());
+    }
+
+    @Test
+    public void testInitUpdateFormForPetOfAnotherOwner() throws Exception {
+        given(this.owners.findSummaryById(2)).willReturn(new OwnerSummary(2, "Betty", "Davis", null, null, null));
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/edit", 2, TEST_PET_ID))
+            .andExpect(status().isNotFound());
     }
 
     @Test
@@ -109,9 +179,36 @@ public class PetControllerTests {
             .param("name", "Betty")
             .param("type", "hamster")
             .param("birthDate", "2015-02-12")
+            .param("version", "0")
         )
             .andExpect(status().is3xxRedirection())
             .andExpect(view().name("redirect:/owners/{ownerId}"));
+        verify(this.owners, never()).findById(anyInt());
+    }
+
+    @Test
+    public void testProcessUpdateFormWithoutVersion() throws Exception {
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/edit", TEST_OWNER_ID, TEST_PET_ID)
+            .param("name", "Betty")
+            .param("type", "hamster")
+            .param("birthDate", "2015-02-12")
+        )
+            .andExpect(model().attributeHasErrors("pet"))
+            .andExpect(status().isOk())
+            .andExpect(view().name("pets/createOrUpdatePetForm"));
+        verify(this.pets, never()).save(any(Pet.class));
+    }
+
+    @Test
+    public void testProcessUpdateFormForPetOfAnotherOwner() throws Exception {
+        given(this.owners.findSummaryById(2)).willReturn(new OwnerSummary(2, "Betty", "Davis", null, null, null));
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/edit", 2, TEST_PET_ID)
+            .param("name", "Betty")
+            .param("type", "hamster")
+            .param("birthDate", "2015-02-12")
+        )
+            .andExpect(status().isNotFound());
+        verify(this.pets, never()).save(any(Pet.class));
     }
 
     @Test
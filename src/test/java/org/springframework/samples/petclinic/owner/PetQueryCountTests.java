@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Guards the number of SQL statements issued by the pet and visit forms, with the pet types cached as they are after
+ * the first request.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class PetQueryCountTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PetRepository pets;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    private int lastVisitId;
+
+    private int lastPetId;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+        this.statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+        this.pets.findPetTypes();
+        // counted with a cold second-level cache, whatever the tests before have loaded
+        this.entityManagerFactory.getCache().evictAll();
+        this.statistics.clear();
+        this.lastVisitId = this.jdbcTemplate.queryForObject("SELECT MAX(id) FROM visits", Integer.class);
+        this.lastPetId = this.jdbcTemplate.queryForObject("SELECT MAX(id) FROM pets", Integer.class);
+    }
+
+    @After
+    public void tearDown() {
+        this.statistics.setStatisticsEnabled(false);
+        // the forms commit, remove what they added for the other tests, which do not depend on versions
+        this.jdbcTemplate.update("DELETE FROM visits WHERE id > ?", this.lastVisitId);
+        this.jdbcTemplate.update("DELETE FROM pets WHERE id > ?", this.lastPetId);
+        this.entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    public void newPetFormLoadsOnlyTheOwnerSummary() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}/pets/new", 6))
+            .andExpect(status().isOk())
+            .andExpect(view().name("pets/createOrUpdatePetForm"));
+        // the owner's name only
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(this.statistics.getEntityLoadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void addPetLoadsTheOwnerForTheNameCheck() throws Exception {
+        int version = version("owners", 6);
+        mockMvc.perform(post("/owners/{ownerId}/pets/new", 6)
+            .param("name", "Betty")
+            .param("type", "hamster")
+            .param("birthDate", "2015-02-12"))
+            .andExpect(status().is3xxRedirection());
+        // the owner's name, the owner with its pets for the duplicate name check, the insert, the owner's version
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(4);
+        assertThat(this.statistics.getEntityInsertCount()).isEqualTo(1);
+        assertThat(version("owners", 6)).isEqualTo(version + 1);
+    }
+
+    @Test
+    public void editPetFormDoesNotLoadTheOwnersPets() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/edit", 6, 7))
+            .andExpect(status().isOk())
+            .andExpect(view().name("pets/createOrUpdatePetForm"));
+        // the owner's name, the pet with its type and owner; not the owner's other pets, nor any visits
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(this.statistics.getCollectionLoadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void editPetFormReadsThePetFromTheSecondLevelCache() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/edit", 6, 7))
+            .andExpect(status().isOk());
+        this.statistics.clear();
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/edit", 6, 7))
+            .andExpect(status().isOk());
+        // the owner's name only, the pet, its type and its owner are cached
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(this.statistics.getSecondLevelCacheHitCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void updatePetChecksOwnershipWithoutLoadingTheOwner() throws Exception {
+        int ownerVersion = version("owners", 6);
+        int version = version("pets", 7);
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/edit", 6, 7)
+            .param("name", "Samantha")
+            .param("type", "cat")
+            .param("birthDate", "2012-09-04")
+            .param("version", String.valueOf(version)))
+            .andExpect(status().is3xxRedirection());
+        assertThat(version("owners", 6)).isEqualTo(ownerVersion + 1);
+        // the owner's name, the ownership check, and merging the pet: the pet with its visits, its owner and its type;
+        // then the owner's version
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void newVisitFormLoadsOnlyRecentVisits() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/visits/new", 6, 7))
+            .andExpect(status().isOk());
+        // the pet with the names of its type and owner, the recent visits
+        assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(this.statistics.getEntityLoadCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void addVisitDoesNotLoadThePet() throws Exception {
+        int version = version("owners", 6);
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/visits/new", 6, 7)
+            .param("date", "2018-01-01")
+            .param("description", "checkup"))
+            .andExpect(status().is3xxRedirection());
+        // the ownership check, the insert, the owner of the pet and its version, and the next block of visit ids if
+        // none is left
+        assertThat(this.statistics.getPrepareStatementCount()).isBetween(4L, 5L);
+        assertThat(this.statistics.getEntityLoadCount()).isEqualTo(0);
+        assertThat(this.statistics.getEntityInsertCount()).isEqualTo(1);
+        assertThat(version("owners", 6)).isEqualTo(version + 1);
+    }
+
+    @Test
+    public void addVisitEvictsOnlyItsOwnerFromTheSecondLevelCache() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/edit", 1, 1))
+            .andExpect(status().isOk());
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/edit", 6, 7))
+            .andExpect(status().isOk());
+        assertThat(this.entityManagerFactory.getCache().contains(Owner.class, 6)).isTrue();
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/visits/new", 6, 7)
+            .param("date", "2018-01-01")
+            .param("description", "checkup"))
+            .andExpect(status().is3xxRedirection());
+        assertThat(this.entityManagerFactory.getCache().contains(Owner.class, 6)).isFalse();
+        assertThat(this.entityManagerFactory.getCache().contains(Owner.class, 1)).isTrue();
+    }
+
+    private int version(String table, int id) {
+        return this.jdbcTemplate.queryForObject("SELECT version FROM " + table + " WHERE id = ?", Integer.class, id);
+    }
+
+}
@@ -12,8 +12,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.samples.petclinic.system.CacheGenerations;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * Test class for {@link PetTypeFormatter}
@@ -26,11 +28,13 @@ public class PetTypeFormatterTests {
     @Mock
     private PetRepository pets;
 
+    private final CacheGenerations generations = new CacheGenerations();
+
     private PetTypeFormatter petTypeFormatter;
 
     @Before
     public void setup() {
-        this.petTypeFormatter = new PetTypeFormatter(pets);
+        this.petTypeFormatter = new PetTypeFormatter(pets, generations);
     }
 
     @Test
@@ -54,6 +58,32 @@ public class PetTypeFormatterTests {
         petTypeFormatter.parse("Fish", Locale.ENGLISH);
     }
 
+    @Test
+    public void shouldParseTypesOfANewlyLoadedList() throws ParseException {
+        List<PetType> petTypes = makePetTypes();
+        Mockito.when(this.pets.findPetTypes()).thenReturn(petTypes);
+        assertEquals("Dog", petTypeFormatter.parse("Dog", Locale.ENGLISH).getName());
+
+        // e.g. the petTypes cache was evicted after a type was added
+        List<PetType> reloaded = makePetTypes();
+        PetType fish = new PetType();
+        fish.setName("Fish");
+        reloaded.add(fish);
+        Mockito.when(this.pets.findPetTypes()).thenReturn(reloaded);
+        this.generations.advance("petTypes");
+        assertSame(fish, petTypeFormatter.parse("Fish", Locale.ENGLISH));
+    }
+
+    @Test
+    public void shouldReuseTheTypesOfACopyOfTheSameGeneration() throws ParseException {
+        Mockito.when(this.pets.findPetTypes()).thenReturn(makePetTypes());
+        PetType dog = petTypeFormatter.parse("Dog", Locale.ENGLISH);
+
+        // e.g. a copy deserialized from the off-heap tier of the petTypes cache
+        Mockito.when(this.pets.findPetTypes()).thenReturn(makePetTypes());
+        assertSame(dog, petTypeFormatter.parse("Dog", Locale.ENGLISH));
+    }
+
     /**
      * Helper method to produce some sample pet types just for test purpose
      *
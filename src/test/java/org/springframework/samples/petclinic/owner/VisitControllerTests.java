@@ -1,21 +1,34 @@
 package org.springframework.samples.petclinic.owner;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
 
+import java.time.LocalDate;
+import java.util.Collections;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.data.domain.Pageable;
 import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.owner.PetSummary;
 import org.springframework.samples.petclinic.owner.VisitController;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.samples.petclinic.visit.VisitPage;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -29,6 +42,7 @@ import org.springframework.test.web.servlet.MockMvc;
 @WebMvcTest(VisitController.class)
 public class VisitControllerTests {
 
+    private static final int TEST_OWNER_ID = 1;
     private static final int TEST_PET_ID = 1;
 
     @Autowired
@@ -42,29 +56,58 @@ public class VisitControllerTests {
 
     @Before
     public void init() {
-        given(this.pets.findById(TEST_PET_ID)).willReturn(new Pet());
+        given(this.pets.findSummaryById(TEST_PET_ID))
+            .willReturn(new PetSummary(TEST_PET_ID, "Leo", LocalDate.of(2010, 9, 7), "cat", TEST_OWNER_ID, "George",
+                "Franklin"));
+        given(this.pets.existsByIdAndOwnerId(TEST_PET_ID, TEST_OWNER_ID)).willReturn(true);
     }
 
     @Test
     public void testInitNewVisitForm() throws Exception {
         mockMvc.perform(get("/owners/*/pets/{petId}/visits/new", TEST_PET_ID))
             .andExpect(status().isOk())
+            .andExpect(model().attributeExists("pet", "recentVisits"))
             .andExpect(view().name("pets/createOrUpdateVisitForm"));
+        verify(this.visits).findByPetIdOrderByDateDescIdDesc(eq(TEST_PET_ID), any(Pageable.class));
+        verify(this.pets, never()).findById(anyInt());
+    }
+
+    @Test
+    public void testShowVisitHistory() throws Exception {
+        given(this.visits.findPageByPetId(TEST_PET_ID, null, VisitController.HISTORY_PAGE_SIZE))
+            .willReturn(new VisitPage(Collections.emptyList(), null));
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/visits", TEST_OWNER_ID, TEST_PET_ID))
+            .andExpect(status().isOk())
+            .andExpect(model().attributeExists("pet", "page"))
+            .andExpect(view().name("pets/visitHistory"));
+    }
+
+    @Test
+    public void testShowVisitHistoryOfPetOfAnotherOwner() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}/pets/{petId}/visits", 2, TEST_PET_ID))
+            .andExpect(status().isNotFound());
+        verify(this.visits, never()).findPageByPetId(anyInt(), any(), anyInt());
     }
 
     @Test
     public void testProcessNewVisitFormSuccess() throws Exception {
-        mockMvc.perform(post("/owners/*/pets/{petId}/visits/new", TEST_PET_ID)
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/visits/new", TEST_OWNER_ID, TEST_PET_ID)
             .param("name", "George")
             .param("description", "Visit Description")
+            .param("petId", "2")
         )
             .andExpect(status().is3xxRedirection())
             .andExpect(view().name("redirect:/owners/{ownerId}"));
+        ArgumentCaptor<Visit> visit = ArgumentCaptor.forClass(Visit.class);
+        verify(this.visits).save(visit.capture());
+        assertThat(visit.getValue().getPetId()).isEqualTo(TEST_PET_ID);
+        verify(this.pets, never()).findById(anyInt());
+        verify(this.pets, never()).findSummaryById(anyInt());
     }
 
     @Test
     public void testProcessNewVisitFormHasErrors() throws Exception {
-        mockMvc.perform(post("/owners/*/pets/{petId}/visits/new", TEST_PET_ID)
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/visits/new", TEST_OWNER_ID, TEST_PET_ID)
             .param("name", "George")
         )
             .andExpect(model().attributeHasErrors("visit"))
@@ -72,4 +115,13 @@ public class VisitControllerTests {
             .andExpect(view().name("pets/createOrUpdateVisitForm"));
     }
 
+    @Test
+    public void testProcessNewVisitFormForPetOfAnotherOwner() throws Exception {
+        mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/visits/new", 2, TEST_PET_ID)
+            .param("description", "Visit Description")
+        )
+            .andExpect(status().isNotFound());
+        verify(this.visits, never()).save(any(Visit.class));
+    }
+
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.samples.petclinic.visit.VisitRepository;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Compares the throughput of the bulk visit import with saving one visit per transaction, as the visit form does.
+ * Not part of the regular test run, start it with
+ * <code>./mvnw test -Dtest=VisitImportBenchmark [-Dbenchmark.visits=5000] [-Dbenchmark.rounds=5]</code>.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class VisitImportBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(VisitImportBenchmark.class);
+
+    private static final int VISITS = Integer.getInteger("benchmark.visits", 5000);
+
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 5);
+
+    @Autowired
+    private VisitRepository visits;
+
+    @Autowired
+    private VisitImporter importer;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void tearDown() {
+        this.jdbcTemplate.update("DELETE FROM visits WHERE id >= 100");
+    }
+
+    @Test
+    public void singleSaveVersusBulkImport() throws Exception {
+        byte[] ndjson = ndjson(VISITS);
+        // the first round warms up the JIT, connections and caches and is not reported
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < VISITS; i++) {
+                this.visits.save(visit(i));
+            }
+            long single = System.nanoTime() - start;
+            tearDown();
+
+            start = System.nanoTime();
+            VisitImportReport report = this.importer.importVisits(new ByteArrayInputStream(ndjson));
+            long bulk = System.nanoTime() - start;
+            tearDown();
+            assertThat(report.getSaved()).isEqualTo(VISITS);
+
+            if (round > 0) {
+                logger.info("Round {}: single save {} visits/s, bulk import {} visits/s", round,
+                    throughput(single), throughput(bulk));
+            }
+        }
+    }
+
+    private static Visit visit(int i) {
+        Visit visit = new Visit();
+        visit.setPetId(i % 13 + 1);
+        visit.setDate(LocalDate.of(2018, 12, 1));
+        visit.setDescription("visit " + i);
+        return visit;
+    }
+
+    private static byte[] ndjson(int count) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            content.append("{\"petId\": ").append(i % 13 + 1)
+                .append(", \"date\": \"2018-12-01\", \"description\": \"visit ").append(i).append("\"}\n");
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long throughput(long nanos) {
+        return VISITS * 1_000_000_000L / Math.max(nanos, 1);
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for {@link VisitImportController} and {@link VisitImporter}, against the database since the point of the
+ * import is how visits get inserted.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class VisitImportControllerTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    private int visitCount;
+
+    private int lastVisitId;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+        this.statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+        this.statistics.clear();
+        this.visitCount = countVisits();
+        this.lastVisitId = this.jdbcTemplate.queryForObject("SELECT MAX(id) FROM visits", Integer.class);
+    }
+
+    @After
+    public void tearDown() {
+        this.statistics.setStatisticsEnabled(false);
+        // the import commits, remove the imported visits for the other tests, which do not depend on versions
+        this.jdbcTemplate.update("DELETE FROM visits WHERE id > ?", this.lastVisitId);
+        this.entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    public void testImportJsonArray() throws Exception {
+        int version = ownerVersion(1);
+        int otherVersion = ownerVersion(2);
+        mockMvc.perform(post("/visits/import")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"petId\": 1, \"date\": \"2018-12-01\", \"description\": \"checkup\"},"
+                + "{\"petId\": 2, \"date\": \"2018-12-01\", \"description\": \"vaccination\"},"
+                + "{\"petId\": 1, \"date\": \"2018-12-02\", \"description\": \"follow-up\"}]"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.received").value(3))
+            .andExpect(jsonPath("$.saved").value(3))
+            .andExpect(jsonPath("$.errors").isEmpty());
+        assertThat(countVisits()).isEqualTo(this.visitCount + 3);
+        // one statement checking the pets, at most one for the next block of ids, one batch of inserts, and the owners
+        // of the pets and their versions
+        assertThat(this.statistics.getPrepareStatementCount()).isBetween(4L, 5L);
+        // once per owner, however many visits of its pets were imported
+        assertThat(ownerVersion(1)).isEqualTo(version + 1);
+        assertThat(ownerVersion(2)).isEqualTo(otherVersion + 1);
+    }
+
+    @Test
+    public void testImportNdjsonReportsInvalidRecords() throws Exception {
+        mockMvc.perform(post("/visits/import")
+            .contentType(VisitImportController.APPLICATION_NDJSON_VALUE)
+            .content("{\"petId\": 1, \"date\": \"2018-12-01\", \"description\": \"checkup\"}\n"
+                + "{\"petId\": 1, \"date\": \"2018-12-01\"}\n"
+                + "{\"petId\": 9999, \"date\": \"2018-12-01\", \"description\": \"checkup\"}\n"
+                + "{\"petId\": 1, \"date\": \"yesterday\", \"description\": \"checkup\"}\n"
+                + "{\"id\": 1, \"petId\": 1, \"date\": \"2018-12-01\", \"description\": \"checkup\"}\n"
+                + "{\"petId\": 2, \"date\": \"2018-12-02\", \"description\": \"checkup\"}\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.received").value(6))
+            .andExpect(jsonPath("$.saved").value(2))
+            .andExpect(jsonPath("$.errors", hasSize(4)))
+            .andExpect(jsonPath("$.errors[0].index").value(1))
+            .andExpect(jsonPath("$.errors[0].field").value("description"))
+            .andExpect(jsonPath("$.errors[1].index").value(3))
+            .andExpect(jsonPath("$.errors[1].field").value("date"))
+            .andExpect(jsonPath("$.errors[2].index").value(4))
+            .andExpect(jsonPath("$.errors[2].field").value("id"))
+            .andExpect(jsonPath("$.errors[3].index").value(2))
+            .andExpect(jsonPath("$.errors[3].field").value("petId"));
+        assertThat(countVisits()).isEqualTo(this.visitCount + 2);
+    }
+
+    @Test
+    public void testImportStopsAtMalformedJson() throws Exception {
+        mockMvc.perform(post("/visits/import")
+            .contentType(VisitImportController.APPLICATION_NDJSON_VALUE)
+            .content("{\"petId\": 1, \"date\": \"2018-12-01\", \"description\": \"checkup\"}\n"
+                + "{\"petId\": 1, \"date\": \"2018-12-01\", description: \"checkup\"}\n"
+                + "{\"petId\": 2, \"date\": \"2018-12-02\", \"description\": \"checkup\"}\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.saved").value(1))
+            .andExpect(jsonPath("$.errors", hasSize(1)))
+            .andExpect(jsonPath("$.errors[0].index").value(1))
+            .andExpect(jsonPath("$.errors[0].message", startsWith("Malformed JSON")));
+        assertThat(countVisits()).isEqualTo(this.visitCount + 1);
+    }
+
+    @Test
+    public void testImportSavesInChunks() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 120; i++) {
+            content.append("{\"petId\": ").append(i % 13 + 1).append(", \"description\": \"visit ").append(i)
+                .append("\"}\n");
+        }
+        mockMvc.perform(post("/visits/import")
+            .contentType(VisitImportController.APPLICATION_NDJSON_VALUE)
+            .content(content.toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.saved").value(120));
+        assertThat(countVisits()).isEqualTo(this.visitCount + 120);
+        // per chunk of 50 one pet check, at most one block of ids, one batch of inserts, the owners of the pets and
+        // their versions
+        assertThat(this.statistics.getPrepareStatementCount()).isBetween(12L, 15L);
+    }
+
+    private int countVisits() {
+        return this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM visits", Integer.class);
+    }
+
+    private int ownerVersion(int ownerId) {
+        return this.jdbcTemplate.queryForObject("SELECT version FROM owners WHERE id = ?", Integer.class, ownerId);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.sql.DataSource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.system.Shards;
+import org.springframework.samples.petclinic.system.ShardingTests;
+import org.springframework.samples.petclinic.visit.VisitRepository;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+/**
+ * Test class for {@link VisitImporter} over the sharded repositories of {@link ShardingTests}: the visits of a chunk
+ * are saved by shard, and a shard that fails does not take the visits saved on the others with it.
+ */
+public class VisitImporterShardingTests {
+
+    private static final int PET_ON_SHARD_2 = 2500;
+
+    private static AnnotationConfigApplicationContext context;
+
+    private static LocalValidatorFactoryBean validator;
+
+    @BeforeClass
+    public static void startShards() {
+        context = new AnnotationConfigApplicationContext(ShardingTests.ShardedRepositoriesConfiguration.class);
+        validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void stopShards() {
+        validator.close();
+        context.close();
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate(0).update("DELETE FROM visits WHERE id >= 100");
+        jdbcTemplate(2).update("DELETE FROM visits");
+        jdbcTemplate(2).update("DELETE FROM pets");
+        jdbcTemplate(2).update("DELETE FROM owners");
+    }
+
+    @Test
+    public void shouldReportTheVisitsOfAFailingShardOnly() throws Exception {
+        jdbcTemplate(2).update("INSERT INTO owners VALUES (?, 'Sam', 'Sharded', '4, Evans Street', 'Wollongong',"
+            + " '4444444444', 0)", PET_ON_SHARD_2);
+        jdbcTemplate(2).update("INSERT INTO pets VALUES (?, 'Rex', '2015-06-01', 1, ?, 0)", PET_ON_SHARD_2,
+            PET_ON_SHARD_2);
+        jdbcTemplate(2).execute("ALTER TABLE visits ADD CONSTRAINT visits_failing CHECK (pet_id < 0)");
+        VisitImportReport report;
+        try {
+            report = importer().importVisits(new ByteArrayInputStream(
+                ("{\"petId\": 7, \"date\": \"2018-12-01\", \"description\": \"checkup\"}\n"
+                    + "{\"petId\": " + PET_ON_SHARD_2 + ", \"date\": \"2018-12-01\", \"description\": \"checkup\"}\n"
+                    + "{\"petId\": 8, \"date\": \"2018-12-02\", \"description\": \"follow-up\"}\n")
+                    .getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            jdbcTemplate(2).execute("ALTER TABLE visits DROP CONSTRAINT visits_failing");
+        }
+        // the visits of shard 0 are saved and reported as such, only the visit of shard 2 is to be retried
+        assertThat(report.getReceived()).isEqualTo(3);
+        assertThat(report.getSaved()).isEqualTo(2);
+        assertThat(report.getErrors()).extracting(VisitImportReport.RecordError::getIndex).containsExactly(1);
+        assertThat(report.getErrors().get(0).getMessage()).startsWith("Could not save");
+        assertThat(jdbcTemplate(0).queryForObject("SELECT COUNT(*) FROM visits WHERE id >= 100", Integer.class))
+            .isEqualTo(2);
+        assertThat(jdbcTemplate(2).queryForObject("SELECT COUNT(*) FROM visits", Integer.class)).isEqualTo(0);
+    }
+
+    private static VisitImporter importer() {
+        return new VisitImporter(new ObjectMapper().findAndRegisterModules(), validator,
+            context.getBean(PetRepository.class), context.getBean(VisitRepository.class), context.getBean(Shards.class),
+            50);
+    }
+
+    private static JdbcTemplate jdbcTemplate(int shard) {
+        return new JdbcTemplate(context.getBean("shard" + shard, DataSource.class));
+    }
+
+}
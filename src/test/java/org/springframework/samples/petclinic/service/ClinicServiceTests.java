@@ -17,23 +17,42 @@
 package org.springframework.samples.petclinic.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.stat.Statistics;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.OwnerCursor;
+import org.springframework.samples.petclinic.owner.OwnerPage;
+import org.springframework.samples.petclinic.owner.OwnerSummary;
 import org.springframework.samples.petclinic.owner.OwnerRepository;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.owner.PetSummary;
 import org.springframework.samples.petclinic.owner.PetType;
 import org.springframework.samples.petclinic.vet.Vet;
 import org.springframework.samples.petclinic.vet.VetRepository;
 import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.samples.petclinic.visit.VisitCursor;
+import org.springframework.samples.petclinic.visit.VisitPage;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -76,6 +95,18 @@ public class ClinicServiceTests {
     @Autowired
     protected VetRepository vets;
 
+    @Autowired
+    protected TestEntityManager entityManager;
+
+    private Statistics enableStatistics() {
+        Statistics statistics = this.entityManager.getEntityManager().getEntityManagerFactory()
+            .unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        this.entityManager.clear();
+        statistics.clear();
+        return statistics;
+    }
+
     @Test
     public void shouldFindOwnersByLastName() {
         Collection<Owner> owners = this.owners.findByLastName("Davis");
@@ -85,6 +116,105 @@ public class ClinicServiceTests {
         assertThat(owners.isEmpty()).isTrue();
     }
 
+    @Test
+    public void shouldPageThroughOwnersByKeyset() {
+        List<Owner> all = new ArrayList<>(this.owners.findByLastName(""));
+        all.sort(Comparator.comparing(Owner::getLastName).thenComparing(Owner::getId));
+
+        List<OwnerSummary> forward = new ArrayList<>();
+        OwnerPage page = this.owners.findPageByLastName("", null, 3);
+        assertThat(page.hasPrevious()).isFalse();
+        forward.addAll(page.getOwners());
+        while (page.hasNext()) {
+            page = this.owners.findPageByLastName("", page.getNext(), 3);
+            assertThat(page.getOwners().size()).isLessThanOrEqualTo(3);
+            forward.addAll(page.getOwners());
+        }
+        assertThat(forward).extracting(OwnerSummary::getId).containsExactlyElementsOf(
+            all.stream().map(Owner::getId).collect(Collectors.toList()));
+
+        List<OwnerSummary> backward = new ArrayList<>(page.getOwners());
+        while (page.hasPrevious()) {
+            page = this.owners.findPageByLastName("", page.getPrevious(), 3);
+            backward.addAll(0, page.getOwners());
+        }
+        assertThat(backward).extracting(OwnerSummary::getId).containsExactlyElementsOf(
+            forward.stream().map(OwnerSummary::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldPageOwnersByLastName() {
+        OwnerPage page = this.owners.findPageByLastName("Davis", null, 1);
+        assertThat(page.getOwners()).extracting(OwnerSummary::getId).containsExactly(2);
+        assertThat(page.hasNext()).isTrue();
+
+        page = this.owners.findPageByLastName("Davis", OwnerCursor.decode(page.getNext().encode()), 1);
+        assertThat(page.getOwners()).extracting(OwnerSummary::getId).containsExactly(4);
+        assertThat(page.hasNext()).isFalse();
+        assertThat(page.hasPrevious()).isTrue();
+    }
+
+    @Test
+    public void shouldSearchOwnersAndTheirPetNamesInTwoPhases() {
+        Statistics statistics = enableStatistics();
+
+        // 9 owners on the page plus the look-ahead row, out of 10 owners with 13 pets in the sample data
+        OwnerPage page = this.owners.findPageByLastName("", null, 9);
+        assertThat(page.getOwners().size()).isEqualTo(9);
+        assertThat(page.hasNext()).isTrue();
+        int petNames = page.getOwners().stream().mapToInt(owner -> owner.getPetNames().size()).sum();
+
+        // phase one returns one row per owner, phase two one row per pet of the displayed owners
+        String[] queries = statistics.getQueries();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(queries.length).isEqualTo(2);
+        assertThat(statistics.getQueryStatistics(queries[0]).getExecutionRowCount()
+            + statistics.getQueryStatistics(queries[1]).getExecutionRowCount()).isEqualTo(10 + petNames);
+        // the listing is a projection: no owners, pets or visits are loaded as entities
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(0);
+        assertThat(statistics.getCollectionLoadCount()).isEqualTo(0);
+
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void shouldListPetNamesLikeOwnerEntity() {
+        OwnerPage page = this.owners.findPageByLastName("", null, 20);
+        for (OwnerSummary summary : page.getOwners()) {
+            Owner owner = this.owners.findById(summary.getId());
+            assertThat(summary.getPetNames()).containsExactlyElementsOf(
+                owner.getPets().stream().map(Pet::getName).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void shouldFindOwnerWithPetsAndLoadAllVisitsInOneStatement() {
+        Statistics statistics = enableStatistics();
+
+        Owner owner = this.owners.findById(6);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(owner.getPets().size()).isEqualTo(2);
+
+        // touching the visits of one pet loads the visits of every pet of the owner
+        assertThat(owner.getPets().get(0).getVisits()).isNotEmpty();
+        owner.getPets().forEach(Pet::getVisits);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void shouldLoadPetsByNameAndVisitsMostRecentFirst() {
+        Owner owner = this.owners.findById(6);
+        assertThat(owner.getPets()).extracting(Pet::getName).containsExactly("Max", "Samantha");
+        assertThat(owner.getPet("Samantha").getVisits()).extracting(Visit::getDate)
+            .containsExactly(LocalDate.of(2013, 1, 4), LocalDate.of(2013, 1, 1));
+
+        // read-only views rather than copies
+        assertThat(owner.getPets()).isSameAs(owner.getPets());
+        assertThatThrownBy(() -> owner.getPets().add(new Pet())).isInstanceOf(UnsupportedOperationException.class);
+    }
+
     @Test
     public void shouldFindSingleOwnerWithPet() {
         Owner owner = this.owners.findById(1);
@@ -169,6 +299,22 @@ public class ClinicServiceTests {
         assertThat(pet.getId()).isNotNull();
     }
 
+    @Test
+    @Transactional
+    public void shouldRejectPetNamedLikeAnotherPetOfTheOwner() {
+        Owner owner6 = this.owners.findById(6);
+        Pet pet = new Pet();
+        pet.setName("SAMANTHA");
+        pet.setType(EntityUtils.getById(this.pets.findPetTypes(), PetType.class, 1));
+        pet.setBirthDate(LocalDate.now());
+        owner6.addPet(pet);
+
+        assertThatThrownBy(() -> this.pets.save(pet)).isInstanceOf(DataIntegrityViolationException.class)
+            .hasCauseInstanceOf(ConstraintViolationException.class)
+            .satisfies(ex -> assertThat(((ConstraintViolationException) ex.getCause()).getConstraintName())
+                .isEqualToIgnoringCase("pets_owner_name"));
+    }
+
     @Test
     @Transactional
     public void shouldUpdatePetName() throws Exception {
@@ -211,12 +357,107 @@ public class ClinicServiceTests {
     }
 
     @Test
-    public void shouldFindVisitsByPetId() throws Exception {
-        Collection<Visit> visits = this.visits.findByPetId(7);
-        assertThat(visits.size()).isEqualTo(2);
-        Visit[] visitArr = visits.toArray(new Visit[visits.size()]);
-        assertThat(visitArr[0].getDate()).isNotNull();
-        assertThat(visitArr[0].getPetId()).isEqualTo(7);
+    @Transactional
+    public void shouldAddVisitByPetIdWithoutLoadingThePet() {
+        Statistics statistics = enableStatistics();
+
+        assertThat(this.pets.existsByIdAndOwnerId(7, 6)).isTrue();
+        assertThat(this.pets.existsByIdAndOwnerId(7, 1)).isFalse();
+        Visit visit = new Visit();
+        visit.setPetId(7);
+        visit.setDescription("test");
+        this.visits.save(visit);
+        this.entityManager.flush();
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(0);
+
+        this.entityManager.clear();
+        assertThat(this.pets.findById(7).getVisits()).extracting(Visit::getId).contains(visit.getId());
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void shouldFindPetSummaryAndRecentVisits() {
+        Statistics statistics = enableStatistics();
+
+        PetSummary pet = this.pets.findSummaryById(7);
+        assertThat(pet.getName()).isEqualTo("Samantha");
+        assertThat(pet.getType()).isEqualTo("cat");
+        assertThat(pet.getOwnerLastName()).isEqualTo("Coleman");
+        assertThat(this.pets.findSummaryById(99)).isNull();
+
+        List<Visit> visits = this.visits.findByPetIdOrderByDateDescIdDesc(7, PageRequest.of(0, 1));
+        assertThat(visits).extracting(Visit::getDate).containsExactly(LocalDate.of(2013, 1, 4));
+        // only the one visit, and no pet
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(1);
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void shouldFindVisitsByPetIdPageByPage() throws Exception {
+        VisitPage page = this.visits.findPageByPetId(7, null, 1);
+        assertThat(page.getVisits()).extracting(Visit::getId).containsExactly(4);
+        assertThat(page.hasNext()).isTrue();
+        VisitCursor cursor = VisitCursor.decode(page.getNext().encode());
+        page = this.visits.findPageByPetId(7, cursor, 1);
+        assertThat(page.getVisits()).extracting(Visit::getId).containsExactly(1);
+        assertThat(page.hasNext()).isFalse();
+        assertThat(this.visits.findPageByPetId(7, null, 2).hasNext()).isFalse();
+        assertThat(VisitCursor.decode("not a cursor")).isNull();
+    }
+
+    @Test
+    @Transactional
+    public void shouldPageIntoVisitsWithoutDate() {
+        Visit[] undated = new Visit[2];
+        for (int i = 0; i < undated.length; i++) {
+            undated[i] = new Visit();
+            undated[i].setPetId(7);
+            undated[i].setDate(null);
+            undated[i].setDescription("undated");
+            this.visits.save(undated[i]);
+        }
+        this.entityManager.flush();
+
+        List<Integer> ids = new ArrayList<>();
+        VisitCursor cursor = null;
+        do {
+            VisitPage page = this.visits.findPageByPetId(7, cursor, 1);
+            page.getVisits().forEach(visit -> ids.add(visit.getId()));
+            cursor = (page.hasNext() ? VisitCursor.decode(page.getNext().encode()) : null);
+        } while (cursor != null);
+        // undated visits last, most recent id first
+        assertThat(ids).containsExactly(4, 1, undated[1].getId(), undated[0].getId());
+    }
+
+    @Test
+    public void shouldFindFirstVisitsOfSeveralPetsInOneStatement() throws Exception {
+        Statistics statistics = enableStatistics();
+        Map<Integer, VisitPage> pages = this.visits.findFirstPagesByPetIds(Arrays.asList(8, 1, 7), 1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        statistics.setStatisticsEnabled(false);
+        assertThat(pages.keySet()).containsExactly(8, 1, 7);
+        assertThat(pages.get(8).getVisits()).extracting(Visit::getId).containsExactly(3);
+        assertThat(pages.get(8).hasNext()).isTrue();
+        assertThat(pages.get(1).isEmpty()).isTrue();
+        assertThat(pages.get(7).getVisits()).extracting(Visit::getId).containsExactly(4);
+        assertThat(this.visits.findPageByPetId(7, pages.get(7).getNext(), 1).getVisits()).extracting(Visit::getId)
+            .containsExactly(1);
+    }
+
+    @Test
+    public void shouldFindFirstVisitsOfManyPetsInBatchesOfTheSameStatement() throws Exception {
+        List<Integer> petIds = new ArrayList<>();
+        for (int petId = 1; petId <= 13; petId++) {
+            petIds.add(petId);
+        }
+        Statistics statistics = enableStatistics();
+        Map<Integer, VisitPage> pages = this.visits.findFirstPagesByPetIds(petIds, 1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        statistics.setStatisticsEnabled(false);
+        assertThat(pages.keySet()).containsExactlyElementsOf(petIds);
+        assertThat(pages.get(7).getVisits()).extracting(Visit::getId).containsExactly(4);
+        assertThat(pages.get(8).getVisits()).extracting(Visit::getId).containsExactly(3);
+        assertThat(pages.get(13).isEmpty()).isTrue();
     }
 
 }
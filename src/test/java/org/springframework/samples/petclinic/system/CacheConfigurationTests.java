@@ -0,0 +1,148 @@
+package org.springframework.samples.petclinic.system;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import org.ehcache.config.CacheRuntimeConfiguration;
+import org.ehcache.config.ResourceType;
+import org.ehcache.config.SizedResourcePool;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.cache.jcache.JCacheCacheManager;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Test class for the Ehcache configuration created by {@link CacheConfiguration}
+ */
+public class CacheConfigurationTests {
+
+    private CacheManager cacheManager;
+
+    @Before
+    public void setup() {
+        // a class loader of its own keeps this cache manager apart from the one of the application context
+        CachingProvider provider = Caching.getCachingProvider();
+        this.cacheManager = provider.getCacheManager(provider.getDefaultURI(),
+            new URLClassLoader(new URL[0], getClass().getClassLoader()));
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheManager.close();
+    }
+
+    @Test
+    public void shouldBoundHeapByDefault() {
+        Cache<Object, Object> cache = this.cacheManager.createCache("default",
+            CacheConfiguration.cacheConfiguration(new CacheSpecProperties().getSpec("default")));
+        CacheRuntimeConfiguration<?, ?> runtime = runtimeConfiguration(cache);
+        SizedResourcePool heap = runtime.getResourcePools().getPoolForResource(ResourceType.Core.HEAP);
+        assertThat(heap.getSize()).isEqualTo(100);
+        assertThat(runtime.getResourcePools().getPoolForResource(ResourceType.Core.OFFHEAP)).isNull();
+    }
+
+    @Test
+    public void shouldApplySpec() {
+        CacheSpecProperties.Spec spec = new CacheSpecProperties.Spec();
+        spec.setHeapEntries(5);
+        spec.setOffHeapSize(DataSize.ofMegabytes(1));
+        spec.setTimeToLive(Duration.ofMinutes(10));
+        Cache<Object, Object> cache = this.cacheManager.createCache("spec", CacheConfiguration.cacheConfiguration(spec));
+
+        CacheRuntimeConfiguration<?, ?> runtime = runtimeConfiguration(cache);
+        assertThat(runtime.getResourcePools().getPoolForResource(ResourceType.Core.HEAP).getSize()).isEqualTo(5);
+        assertThat(runtime.getResourcePools().getPoolForResource(ResourceType.Core.OFFHEAP).getSize()).isEqualTo(1024);
+        assertThat(runtime.getExpiryPolicy().getExpiryForCreation(null, null)).isEqualTo(Duration.ofMinutes(10));
+
+        // values overflowing to the off-heap tier must survive serialization
+        for (int i = 0; i < 20; i++) {
+            cache.put(new SimpleKey(i), new ArrayList<>(Arrays.asList("value", i)));
+        }
+        assertThat(cache.get(new SimpleKey(0))).isEqualTo(Arrays.asList("value", 0));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void shouldRejectValuesThatCannotBeStoredOffHeap() {
+        CacheSpecProperties.Spec spec = new CacheSpecProperties.Spec();
+        spec.setOffHeapSize(DataSize.ofMegabytes(1));
+        Cache<Object, Object> cache = this.cacheManager.createCache("offHeap",
+            CacheConfiguration.cacheConfiguration(spec));
+        cache.put(SimpleKey.EMPTY, new Object());
+    }
+
+    @Test
+    public void shouldAdvanceTheGenerationOnChangesOnly() {
+        CacheSpecProperties.Spec spec = new CacheSpecProperties.Spec();
+        spec.setHeapEntries(1);
+        spec.setOffHeapSize(DataSize.ofMegabytes(1));
+        Cache<Object, Object> cache = this.cacheManager.createCache("generations",
+            CacheConfiguration.cacheConfiguration(spec));
+        CacheGenerations generations = new CacheGenerations();
+        generations.register(cache);
+
+        cache.put(SimpleKey.EMPTY, new ArrayList<>(Arrays.asList("vet", 1)));
+        long generation = generations.get("generations");
+        assertThat(generation).isPositive();
+        // a get, even of a copy from the off-heap tier, is no change
+        cache.put(new SimpleKey(1), new ArrayList<>(Arrays.asList("vet", 2)));
+        generation = generations.get("generations");
+        assertThat(cache.get(SimpleKey.EMPTY)).isEqualTo(Arrays.asList("vet", 1));
+        assertThat(cache.get(new SimpleKey(1))).isEqualTo(Arrays.asList("vet", 2));
+        assertThat(generations.get("generations")).isEqualTo(generation);
+
+        cache.put(SimpleKey.EMPTY, new ArrayList<>(Arrays.asList("vet", 3)));
+        assertThat(generations.get("generations")).isGreaterThan(generation);
+        generation = generations.get("generations");
+        cache.removeAll();
+        assertThat(generations.get("generations")).isGreaterThan(generation);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectBothExpiries() {
+        CacheSpecProperties.Spec spec = new CacheSpecProperties.Spec();
+        spec.setTimeToLive(Duration.ofMinutes(10));
+        spec.setTimeToIdle(Duration.ofMinutes(1));
+        CacheConfiguration.cacheConfiguration(spec);
+    }
+
+    @Test
+    public void shouldNameStatisticsOfTheCacheManager() throws Exception {
+        this.cacheManager.createCache("stats", CacheConfiguration.cacheConfiguration(new CacheSpecProperties.Spec()));
+        this.cacheManager.enableStatistics("stats", true);
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+            .isRegistered(CacheConfiguration.statisticsName(this.cacheManager, "stats"))).isTrue();
+    }
+
+    @Test
+    public void shouldNameCacheManagerLikeSpringBoot() {
+        assertThat(CacheConfiguration.cacheManagerName(this.cacheManager,
+            Collections.singletonMap("cacheManager", new JCacheCacheManager(this.cacheManager))))
+            .isEqualTo("cacheManager");
+        assertThat(CacheConfiguration.cacheManagerName(this.cacheManager,
+            Collections.singletonMap("l2CacheManager", new JCacheCacheManager(this.cacheManager)))).isEqualTo("l2");
+        assertThat(CacheConfiguration.cacheManagerName(this.cacheManager, Collections.emptyMap()))
+            .isEqualTo(this.cacheManager.getURI().toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheRuntimeConfiguration<?, ?> runtimeConfiguration(Cache<Object, Object> cache) {
+        Eh107Configuration<Object, Object> configuration = cache.getConfiguration(Eh107Configuration.class);
+        return configuration.unwrap(CacheRuntimeConfiguration.class);
+    }
+
+}
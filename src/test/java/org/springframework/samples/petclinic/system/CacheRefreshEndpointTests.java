@@ -0,0 +1,122 @@
+package org.springframework.samples.petclinic.system;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.samples.petclinic.vet.Vet;
+import org.springframework.samples.petclinic.vet.VetRepository;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for {@link CacheRefreshEndpoint} and the invalidation of the <code>vets</code> cache
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CacheRefreshEndpointTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CacheRefreshEndpoint endpoint;
+
+    @Autowired
+    private VetRepository vets;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldWarmUpVets() {
+        this.cacheManager.getCache("vets").clear();
+        this.endpoint.warmUp();
+        assertThat(this.cacheManager.getCache("vets").get(SimpleKey.EMPTY)).isNotNull();
+    }
+
+    @Test
+    public void shouldWarmUpOnTheExecutorWhenReady() {
+        CacheRefresher refresher = mock(CacheRefresher.class);
+        given(refresher.getCacheName()).willReturn("vets");
+        List<Runnable> tasks = new ArrayList<>();
+        CacheRefreshEndpoint endpoint = new CacheRefreshEndpoint(Collections.singletonList(refresher),
+            new CacheSpecProperties(), tasks::add);
+
+        endpoint.warmUpInBackground();
+        verify(refresher, never()).refresh();
+        assertThat(tasks).hasSize(1);
+        tasks.get(0).run();
+        verify(refresher).refresh();
+    }
+
+    @Test
+    public void shouldEvictVetsWhenAVetIsSaved() {
+        Collection<Vet> cached = this.vets.findAll();
+        assertThat(this.vets.findAll()).isSameAs(cached);
+
+        this.vets.save(cached.iterator().next());
+        assertThat(this.cacheManager.getCache("vets").get(SimpleKey.EMPTY)).isNull();
+        assertThat(this.vets.findAll()).isNotSameAs(cached);
+    }
+
+    @Test
+    public void shouldRefreshVetsThroughEndpoint() throws Exception {
+        Collection<Vet> cached = this.vets.findAll();
+        this.mockMvc.perform(post("/manage/cacherefresh/vets"))
+            .andExpect(status().isOk());
+        Collection<Vet> refreshed = this.vets.findAll();
+        assertThat(refreshed).isNotSameAs(cached);
+        assertThat(refreshed).hasSameSizeAs(cached);
+    }
+
+    @Test
+    public void shouldListRefreshableCaches() throws Exception {
+        this.mockMvc.perform(get("/manage/cacherefresh"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0]").value("vets"));
+    }
+
+    @Test
+    public void shouldNotRefreshUnknownCache() throws Exception {
+        this.mockMvc.perform(post("/manage/cacherefresh/unknown"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void shouldEvictThroughCachesEndpoint() throws Exception {
+        this.vets.findAll();
+        this.mockMvc.perform(delete("/manage/caches/vets"))
+            .andExpect(status().is2xxSuccessful());
+        assertThat(this.cacheManager.getCache("vets").get(SimpleKey.EMPTY)).isNull();
+    }
+
+}
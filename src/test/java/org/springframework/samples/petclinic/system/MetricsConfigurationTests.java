@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.PropertiesMeterFilter;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for the timers of {@link MetricsConfiguration}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class MetricsConfigurationTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private PropertiesMeterFilter meterFilter;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).build();
+    }
+
+    @Test
+    public void shouldTimeRepositoryMethods() throws Exception {
+        long before = count(timer(RepositoryMetricsPostProcessor.METRIC_NAME,
+            "repository", "OwnerRepository", "method", "findById"));
+        mockMvc.perform(get("/owners/{ownerId}", 1)).andExpect(status().isOk());
+
+        Timer timer = timer(RepositoryMetricsPostProcessor.METRIC_NAME,
+            "repository", "OwnerRepository", "method", "findById");
+        assertThat(timer.count()).isEqualTo(before + 1);
+        assertThat(timer.getId().getTag("exception")).isEqualTo("None");
+        assertThat(publishesPercentileHistogram(timer)).isTrue();
+    }
+
+    @Test
+    public void shouldTimeHandlersApartFromTheirViews() throws Exception {
+        mockMvc.perform(get("/owners/{ownerId}", 1)).andExpect(status().isOk());
+
+        Timer handler = timer(HandlerMetricsInterceptor.HANDLER_METRIC_NAME, "handler", "OwnerController.showOwner");
+        assertThat(handler.count()).isPositive();
+        assertThat(publishesPercentileHistogram(handler)).isTrue();
+        Timer render = timer(HandlerMetricsInterceptor.RENDER_METRIC_NAME, "view", "owners/ownerDetails");
+        assertThat(render.count()).isPositive();
+        assertThat(publishesPercentileHistogram(render)).isTrue();
+    }
+
+    @Test
+    public void shouldNotTimeRedirectsAsViews() throws Exception {
+        mockMvc.perform(get("/owners").param("lastName", "Franklin")).andExpect(status().is3xxRedirection());
+
+        assertThat(timer(HandlerMetricsInterceptor.HANDLER_METRIC_NAME, "handler", "OwnerController.processFindForm"))
+            .isNotNull();
+        assertThat(this.registry.find(HandlerMetricsInterceptor.RENDER_METRIC_NAME).timers())
+            .noneMatch(timer -> timer.getId().getTag("view").startsWith("redirect:"));
+    }
+
+    @Test
+    public void shouldCountCacheHitsAndMissesPerCache() {
+        for (String cache : new String[] { "vets", "owners", "default-query-results-region" }) {
+            assertThat(this.registry.find("cache.gets").tags("cache", cache, "result", "hit").functionCounter())
+                .isNotNull();
+            assertThat(this.registry.find("cache.gets").tags("cache", cache, "result", "miss").functionCounter())
+                .isNotNull();
+        }
+    }
+
+    /**
+     * Whether the timer is configured to publish a percentile histogram, which the simple registry of the tests
+     * accepts but does not keep.
+     */
+    private boolean publishesPercentileHistogram(Timer timer) {
+        return this.meterFilter.configure(timer.getId(), DistributionStatisticConfig.DEFAULT).isPercentileHistogram();
+    }
+
+    private Timer timer(String name, String... tags) {
+        return this.registry.find(name).tags(tags).timer();
+    }
+
+    private static long count(Timer timer) {
+        return (timer != null ? timer.count() : 0);
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import java.util.Map;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * Pins the query budget of a test: records the {@link SqlStatistics} of each test method, on the test's thread, for
+ * assertions on the statements executed, e.g. by the requests of a <code>MockMvc</code> test.
+ *
+ * <pre class="code">
+ * &#064;Rule
+ * public final QueryBudget queries = new QueryBudget();
+ *
+ * &#064;Test
+ * public void ownerDetails() throws Exception {
+ *     mockMvc.perform(get("/owners/{ownerId}", 6));
+ *     queries.assertStatements(2).assertNoRepeatedStatements();
+ * }
+ * </pre>
+ *
+ * Failed assertions list the statements executed.
+ */
+public class QueryBudget extends ExternalResource {
+
+    private SqlStatistics statistics;
+
+    @Override
+    protected void before() {
+        this.statistics = SqlStatistics.start();
+    }
+
+    @Override
+    protected void after() {
+        this.statistics.stop();
+    }
+
+    public SqlStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Forget the statements executed so far, e.g. those of preparing the request under test.
+     */
+    public void reset() {
+        this.statistics.clear();
+    }
+
+    /**
+     * Assert that exactly the given number of statements has been executed.
+     */
+    public QueryBudget assertStatements(int expected) {
+        if (this.statistics.getStatementCount() != expected) {
+            throw failure("Expected " + expected + " statements");
+        }
+        return this;
+    }
+
+    /**
+     * Assert that no more than the given number of statements has been executed.
+     */
+    public QueryBudget assertAtMostStatements(int max) {
+        if (this.statistics.getStatementCount() > max) {
+            throw failure("Expected at most " + max + " statements");
+        }
+        return this;
+    }
+
+    /**
+     * Assert that no statement has been executed more than once, as the statement loading each row of an N+1 query
+     * would be.
+     */
+    public QueryBudget assertNoRepeatedStatements() {
+        if (!this.statistics.getRepeatedStatements(2).isEmpty()) {
+            throw failure("Expected no repeated statements");
+        }
+        return this;
+    }
+
+    private AssertionError failure(String expectation) {
+        StringBuilder message = new StringBuilder(expectation).append(" but executed ")
+            .append(this.statistics.getStatementCount()).append(':');
+        for (Map.Entry<String, Integer> statement : this.statistics.getStatements().entrySet()) {
+            message.append("\n  ").append(statement.getValue()).append("x ").append(statement.getKey());
+        }
+        return new AssertionError(message.toString());
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Test class for {@link ReplicaRoutingDataSource} and {@link ReplicatedDataSources}, with two HSQLDB databases standing
+ * in for the primary and a replica. Each knows its own name, and the replica its lag.
+ */
+public class ReplicaRoutingDataSourceTests {
+
+    private EmbeddedDatabase primary;
+
+    private EmbeddedDatabase replica;
+
+    private ReplicatedDataSources dataSources;
+
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readOnly;
+
+    private TransactionTemplate readWrite;
+
+    @Before
+    public void setup() {
+        this.primary = database("primary");
+        this.replica = database("replica");
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", this.replica);
+        start(replicas);
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        this.primary.shutdown();
+        this.replica.shutdown();
+    }
+
+    @Test
+    public void readOnlyTransactionReadsFromReplica() {
+        assertThat(readOnlyNode()).isEqualTo("replica");
+        assertThat(this.dataSources.health().getDetails()).containsKey("replica-0");
+    }
+
+    @Test
+    public void writesAndReadsOutsideTransactionsGoToPrimary() {
+        assertThat(readWriteNode()).isEqualTo("primary");
+        assertThat(node()).isEqualTo("primary");
+    }
+
+    @Test
+    public void laggingReplicaFallsBackToPrimary() {
+        new JdbcTemplate(this.replica).update("UPDATE lag SET seconds = 10");
+        this.dataSources.check();
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        assertThat(this.dataSources.health().getStatus()).isEqualTo(Status.UP);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> details = (Map<String, Object>) this.dataSources.health().getDetails().get("replica-0");
+        assertThat(details).containsEntry("status", "DOWN").containsEntry("lag", "PT10S");
+
+        new JdbcTemplate(this.replica).update("UPDATE lag SET seconds = 1");
+        this.dataSources.check();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    public void replicaOfUnknownLagFallsBackToPrimary() {
+        new JdbcTemplate(this.replica).update("UPDATE lag SET seconds = NULL");
+        this.dataSources.check();
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> details = (Map<String, Object>) this.dataSources.health().getDetails().get("replica-0");
+        assertThat(details).containsEntry("status", "DOWN").containsEntry("error", "Unknown lag");
+    }
+
+    @Test
+    public void unreachableReplicaFallsBackToPrimary() {
+        AtomicBoolean reachable = new AtomicBoolean(true);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", new DelegatingDataSource(this.replica) {
+
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (!reachable.get()) {
+                    throw new SQLException("Connection refused");
+                }
+                return super.getConnection();
+            }
+
+        });
+        replicas.put("replica-1", new DriverManagerDataSource("jdbc:hsqldb:hsql://localhost:1/none", "sa", ""));
+        start(replicas);
+        assertThat(this.dataSources.getReplicas().get(1).isHealthy()).isFalse();
+        for (int i = 0; i < 4; i++) {
+            assertThat(readOnlyNode()).isEqualTo("replica");
+        }
+
+        // a replica failing between checks is taken out of rotation on its first failed connection
+        reachable.set(false);
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        assertThat(this.dataSources.getReplicas().get(0).isHealthy()).isFalse();
+        assertThat(this.dataSources.nextReplica()).isNull();
+    }
+
+    @Test
+    public void readsFollowingWriteGoToPrimary() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/owners/1/edit");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        assertThat(readOnlyNode()).isEqualTo("replica");
+        this.readWrite.execute(status -> this.jdbcTemplate.update("UPDATE node SET name = name"));
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        Cookie cookie = response.getCookie(ReplicaRoutingDataSource.PRIMARY_COOKIE);
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.getMaxAge()).isEqualTo(6);
+        assertThat(cookie.isHttpOnly()).isTrue();
+
+        // the redirect to the owner's page
+        MockHttpServletRequest redirected = new MockHttpServletRequest("GET", "/owners/1");
+        redirected.setCookies(cookie);
+        RequestContextHolder.setRequestAttributes(
+            new ServletRequestAttributes(redirected, new MockHttpServletResponse()));
+        assertThat(readOnlyNode()).isEqualTo("primary");
+
+        // another client
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(),
+            new MockHttpServletResponse()));
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    public void rolledBackWriteDoesNotPinToPrimary() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(),
+            response));
+        this.readWrite.execute(status -> {
+            status.setRollbackOnly();
+            return this.jdbcTemplate.update("UPDATE node SET name = name");
+        });
+        assertThat(response.getCookie(ReplicaRoutingDataSource.PRIMARY_COOKIE)).isNull();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    public void readsFromReplicaAreNotCached() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+            new ClassPathResource("db/hsqldb/schema.sql"), new ClassPathResource("db/hsqldb/data.sql"));
+        populator.execute(this.primary);
+        populator.execute(this.replica);
+        LocalContainerEntityManagerFactoryBean factory = entityManagerFactory();
+        try {
+            EntityManagerFactory entityManagerFactory = factory.getObject();
+            EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+            TransactionTemplate readOnly = new TransactionTemplate(new JpaTransactionManager(entityManagerFactory));
+            readOnly.setReadOnly(true);
+            TransactionTemplate readWrite = new TransactionTemplate(new JpaTransactionManager(entityManagerFactory));
+
+            // written by another instance of the application, not yet replicated
+            new JdbcTemplate(this.primary).update("UPDATE owners SET first_name = 'Georgina' WHERE id = 1");
+            assertThat(firstName(readOnly, entityManager)).isEqualTo("George");
+            assertThat(entityManagerFactory.getCache().contains(Owner.class, 1)).isFalse();
+            assertThat(firstName(readWrite, entityManager)).isEqualTo("Georgina");
+
+            // the primary's state is cached, and read from the cache by the transactions on the replica too
+            assertThat(entityManagerFactory.getCache().contains(Owner.class, 1)).isTrue();
+            assertThat(firstName(readOnly, entityManager)).isEqualTo("Georgina");
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private static String firstName(TransactionTemplate transaction, EntityManager entityManager) {
+        return transaction.execute(status -> entityManager.find(Owner.class, 1).getFirstName());
+    }
+
+    /**
+     * The entity manager factory over the routing data source, with a second-level cache of its own rather than the
+     * caches of the application's tests.
+     */
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(
+            EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("replica-routing-tests"),
+            new DefaultConfiguration(getClass().getClassLoader()));
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(this.dataSource);
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setPackagesToScan(Owner.class.getPackage().getName(), Visit.class.getPackage().getName());
+        Properties properties = new Properties();
+        properties.put("hibernate.physical_naming_strategy", SpringPhysicalNamingStrategy.class.getName());
+        properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+        properties.put("hibernate.cache.use_second_level_cache", "true");
+        properties.put("hibernate.cache.region.factory_class", "jcache");
+        properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+        properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, MissingCacheStrategy.CREATE.getExternalRepresentation());
+        factory.setJpaProperties(properties);
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    private void start(Map<String, DataSource> replicas) {
+        this.dataSources = new ReplicatedDataSources(this.primary, replicas, Duration.ofSeconds(5),
+            "SELECT seconds FROM lag");
+        this.dataSources.check();
+        this.dataSource = new LazyConnectionDataSourceProxy(
+            new ReplicaRoutingDataSource(this.dataSources, Duration.ofSeconds(6)));
+        this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(this.dataSource);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    private String readOnlyNode() {
+        return this.readOnly.execute(status -> node());
+    }
+
+    private String readWriteNode() {
+        return this.readWrite.execute(status -> node());
+    }
+
+    private String node() {
+        return this.jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static EmbeddedDatabase database(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+            .setName("replication-" + name)
+            .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE node (name VARCHAR(10))");
+        jdbcTemplate.update("INSERT INTO node VALUES (?)", name);
+        jdbcTemplate.execute("CREATE TABLE lag (seconds INTEGER)");
+        jdbcTemplate.update("INSERT INTO lag VALUES (0)");
+        return database;
+    }
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.OwnerPage;
+import org.springframework.samples.petclinic.owner.OwnerRepository;
+import org.springframework.samples.petclinic.owner.OwnerSummary;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.samples.petclinic.visit.VisitRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Test class for the sharding of {@link ShardingConfiguration}: the repositories over three HSQLDB databases, shard 0
+ * with the sample data, shards 1 and 2 with the reference data only, each handing out 1000 ids. The tests share the
+ * shards and use owners of their own.
+ */
+public class ShardingTests {
+
+    private static final int IDS_PER_SHARD = 1000;
+
+    private static AnnotationConfigApplicationContext context;
+
+    @Rule
+    public final QueryBudget queries = new QueryBudget();
+
+    private Shards shards;
+
+    private OwnerRepository owners;
+
+    private PetRepository pets;
+
+    private VisitRepository visits;
+
+    private TransactionTemplate transaction;
+
+    @BeforeClass
+    public static void startShards() {
+        context = new AnnotationConfigApplicationContext(ShardedRepositoriesConfiguration.class);
+    }
+
+    @AfterClass
+    public static void stopShards() {
+        context.close();
+    }
+
+    @Before
+    public void setup() {
+        this.shards = context.getBean(Shards.class);
+        this.owners = context.getBean(OwnerRepository.class);
+        this.pets = context.getBean(PetRepository.class);
+        this.visits = context.getBean(VisitRepository.class);
+        this.transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @Test
+    public void shouldPlaceNewOwnersOnEachShardInTurn() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Owner owner = owner("Sharded" + i);
+            this.owners.save(owner);
+            ids.add(owner.getId());
+        }
+        assertThat(ids).extracting(this.shards::shardOf).containsExactlyInAnyOrder(0, 1, 2);
+        for (int i = 0; i < 3; i++) {
+            int shard = this.shards.shardOf(ids.get(i));
+            assertThat(ids.get(i)).isGreaterThanOrEqualTo(this.shards.getFirstId(shard));
+            assertThat(jdbcTemplate(shard).queryForObject("SELECT last_name FROM owners WHERE id = ?", String.class,
+                ids.get(i))).isEqualTo("Sharded" + i);
+            assertThat(this.owners.findById(ids.get(i)).getLastName()).isEqualTo("Sharded" + i);
+        }
+    }
+
+    @Test
+    public void shouldKeepPetsAndVisitsWithTheirOwner() {
+        Owner owner = ownerOnShard(2, "Shepherd");
+        Pet pet = new Pet();
+        pet.setName("Rex");
+        pet.setBirthDate(LocalDate.of(2015, 6, 1));
+        pet.setType(this.pets.findPetTypes().get(0));
+        owner.addPet(pet);
+        this.owners.save(owner);
+
+        owner = this.owners.findById(owner.getId());
+        Integer petId = owner.getPet("Rex").getId();
+        assertThat(this.shards.shardOf(petId)).isEqualTo(2);
+        Visit visit = new Visit();
+        visit.setPetId(petId);
+        visit.setDate(LocalDate.of(2018, 1, 1));
+        visit.setDescription("checkup");
+        this.visits.save(visit);
+
+        assertThat(jdbcTemplate(2).queryForObject("SELECT COUNT(*) FROM visits WHERE pet_id = ?", Integer.class, petId))
+            .isEqualTo(1);
+        assertThat(this.visits.findPageByPetId(petId, null, 10).getVisits()).extracting(Visit::getDescription)
+            .containsExactly("checkup");
+        assertThat(this.pets.findSummaryById(petId).getOwnerId()).isEqualTo(owner.getId());
+        assertThat(this.visits.findFirstPagesByPetIds(Collections.singleton(petId), 10).get(petId).getVisits())
+            .hasSize(1);
+    }
+
+    @Test
+    public void shouldSearchAllShardsInOrder() {
+        Owner shard1 = ownerOnShard(1, "Davis");
+        Owner shard2 = ownerOnShard(2, "Davis");
+        Owner another = ownerOnShard(1, "Davison");
+
+        Collection<Owner> found = this.owners.findByLastName("Davis");
+        assertThat(found).extracting(Owner::getId).containsExactly(2, 4, shard1.getId(), shard2.getId(),
+            another.getId());
+
+        List<Integer> paged = new ArrayList<>();
+        OwnerPage page = this.owners.findPageByLastName("Davis", null, 2);
+        paged.addAll(ids(page));
+        while (page.hasNext()) {
+            page = this.owners.findPageByLastName("Davis", page.getNext(), 2);
+            paged.addAll(ids(page));
+        }
+        assertThat(paged).containsExactly(2, 4, shard1.getId(), shard2.getId(), another.getId());
+        page = this.owners.findPageByLastName("Davis", page.getPrevious(), 2);
+        assertThat(ids(page)).containsExactly(shard1.getId(), shard2.getId());
+        // the pet names of the owners on shard 0
+        assertThat(this.owners.findPageByLastName("Davis", null, 2).getOwners().get(0).getPetNames())
+            .containsExactly("Basil");
+    }
+
+    @Test
+    public void shouldPageAcrossShardsInTheOrderOfTheDatabase() {
+        // HSQLDB orders last names ignoring case, accented letters after all others
+        Owner upper = ownerOnShard(1, "QUINN");
+        Owner quinn = ownerOnShard(1, "Quinn");
+        Owner quade = ownerOnShard(2, "Quade");
+        Owner accented = ownerOnShard(2, "Q\u00fAade");
+
+        List<Integer> paged = new ArrayList<>();
+        OwnerPage page = this.owners.findPageByLastName("Q", null, 1);
+        paged.addAll(ids(page));
+        while (page.hasNext()) {
+            page = this.owners.findPageByLastName("Q", page.getNext(), 1);
+            paged.addAll(ids(page));
+        }
+        assertThat(paged).containsExactly(quade.getId(), upper.getId(), quinn.getId(), accented.getId());
+        page = this.owners.findPageByLastName("Q", page.getPrevious(), 1);
+        assertThat(ids(page)).containsExactly(quinn.getId());
+        page = this.owners.findPageByLastName("Q", page.getPrevious(), 2);
+        assertThat(ids(page)).containsExactly(quade.getId(), upper.getId());
+
+        Comparator<String> mysql = ShardingConfiguration.collation(DatabaseDriver.MYSQL);
+        assertThat(mysql.compare("Q\u00fAade", "quade")).isZero();
+        assertThat(mysql.compare("QUINN", "Quade")).isPositive();
+    }
+
+    @Test
+    public void shouldCountTheStatementsOfAllShards() {
+        ownerOnShard(1, "Budget");
+        ownerOnShard(2, "Budget");
+        this.queries.reset();
+
+        assertThat(this.owners.findPageByLastName("Budget", null, 10).getOwners()).hasSize(2);
+        // the search on each shard, and the pet names on the shards with owners found, on the threads of shards 1, 2
+        this.queries.assertStatements(5);
+        assertThat(this.queries.getStatistics().getStatements()).containsValues(3, 2);
+    }
+
+    @Test
+    public void shouldSplitKeysByShard() {
+        Owner shard1 = ownerOnShard(1, "Split");
+        Owner shard2 = ownerOnShard(2, "Split");
+        this.owners.incrementVersions(Arrays.asList(1, shard1.getId(), shard2.getId()));
+        assertThat(this.owners.findVersionById(1)).isEqualTo(1);
+        assertThat(this.owners.findVersionById(shard1.getId())).isEqualTo(shard1.getVersion() + 1);
+        assertThat(this.owners.findVersionById(shard2.getId())).isEqualTo(shard2.getVersion() + 1);
+        assertThat(this.pets.findExistingIds(Arrays.asList(1, 2, IDS_PER_SHARD + 500, 2 * IDS_PER_SHARD + 500)))
+            .containsExactlyInAnyOrder(1, 2);
+    }
+
+    @Test
+    public void shouldNotWriteAcrossShards() {
+        Owner shard1 = ownerOnShard(1, "Elsewhere");
+        // a read-only transaction reads other shards in transactions of their own
+        this.transaction.setReadOnly(true);
+        Integer version = this.transaction.execute(status -> this.owners.findVersionById(shard1.getId()));
+        assertThat(version).isEqualTo(shard1.getVersion());
+        this.transaction.setReadOnly(false);
+        assertThatThrownBy(() -> this.transaction.execute(status -> this.owners.findVersionById(shard1.getId())))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("needs shard 1");
+    }
+
+    @Test
+    public void shouldNotHandOutIdsBeyondTheRangeOfAShard() {
+        // shard 1 has run out of ids
+        jdbcTemplate(1).execute("ALTER TABLE owners ALTER COLUMN id RESTART WITH " + 2 * IDS_PER_SHARD);
+        try {
+            assertThatThrownBy(() -> ownerOnShard(1, "Exhausted"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("beyond its range");
+            assertThat(jdbcTemplate(1).queryForObject("SELECT COUNT(*) FROM owners WHERE last_name = 'Exhausted'",
+                Integer.class)).isEqualTo(0);
+        } finally {
+            jdbcTemplate(1).execute("ALTER TABLE owners ALTER COLUMN id RESTART WITH " + IDS_PER_SHARD * 3 / 2);
+        }
+        DataSource shard0 = context.getBean("shard0", DataSource.class);
+        ShardingConfiguration.checkIdRange(shard0, 1, IDS_PER_SHARD - 1);
+        assertThatThrownBy(() -> ShardingConfiguration.checkIdRange(shard0, 1, 5))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("beyond its range");
+    }
+
+    private Owner ownerOnShard(int shard, String lastName) {
+        while (true) {
+            Owner owner = owner(lastName);
+            this.owners.save(owner);
+            if (this.shards.shardOf(owner.getId()) == shard) {
+                return this.owners.findById(owner.getId());
+            }
+            jdbcTemplate(this.shards.shardOf(owner.getId())).update("DELETE FROM owners WHERE id = ?", owner.getId());
+        }
+    }
+
+    private JdbcTemplate jdbcTemplate(int shard) {
+        return new JdbcTemplate(context.getBean("shard" + shard, DataSource.class));
+    }
+
+    private static Owner owner(String lastName) {
+        Owner owner = new Owner();
+        owner.setFirstName("Sam");
+        owner.setLastName(lastName);
+        owner.setAddress("4, Evans Street");
+        owner.setCity("Wollongong");
+        owner.setTelephone("4444444444");
+        return owner;
+    }
+
+    private static List<Integer> ids(OwnerPage page) {
+        List<Integer> ids = new ArrayList<>();
+        for (OwnerSummary owner : page.getOwners()) {
+            ids.add(owner.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * The sharded repositories, also for the tests of sharded services in other packages.
+     */
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = { OwnerRepository.class, VisitRepository.class })
+    public static class ShardedRepositoriesConfiguration {
+
+        @Bean
+        public static ShardRoutingPostProcessor shardRoutingPostProcessor(ObjectProvider<Shards> shards,
+                ObjectProvider<PlatformTransactionManager> transactionManager) {
+            return new ShardRoutingPostProcessor(shards, transactionManager);
+        }
+
+        @Bean
+        public Shards shards() {
+            Shards shards = new Shards(3, IDS_PER_SHARD, 2);
+            shards.setCollation(ShardingConfiguration.collation(DatabaseDriver.HSQLDB));
+            return shards;
+        }
+
+        @Bean
+        public EmbeddedDatabase shard0() {
+            return shard(0, "db/hsqldb/schema.sql", "db/hsqldb/data.sql");
+        }
+
+        @Bean
+        public EmbeddedDatabase shard1() {
+            return shard(1, "db/hsqldb/schema.sql");
+        }
+
+        @Bean
+        public EmbeddedDatabase shard2() {
+            return shard(2, "db/hsqldb/schema.sql");
+        }
+
+        @Bean
+        public ShardRoutingDataSource dataSource() {
+            SqlAccountingProperties properties = new SqlAccountingProperties();
+            return new ShardRoutingDataSource(Arrays.asList(new SqlAccountingDataSource(shard0(), properties),
+                new SqlAccountingDataSource(shard1(), properties), new SqlAccountingDataSource(shard2(), properties)));
+        }
+
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource());
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setPackagesToScan(OwnerRepository.class.getPackage().getName(),
+                VisitRepository.class.getPackage().getName());
+            Properties properties = new Properties();
+            properties.put("hibernate.physical_naming_strategy", SpringPhysicalNamingStrategy.class.getName());
+            properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+            // not to share the JCache caches of the application's tests
+            properties.put("hibernate.cache.use_second_level_cache", "false");
+            factory.setJpaProperties(properties);
+            return factory;
+        }
+
+        @Bean
+        public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+
+        private static EmbeddedDatabase shard(int shard, String... scripts) {
+            EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL)
+                .setName("shard-" + shard)
+                .addScripts(scripts)
+                .build();
+            if (shard > 0) {
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+                String[] types = { "cat", "dog", "lizard", "snake", "bird", "hamster" };
+                for (int i = 0; i < types.length; i++) {
+                    jdbcTemplate.update("INSERT INTO types VALUES (?, ?)", i + 1, types[i]);
+                }
+                try {
+                    ShardingConfiguration.initializeIdRange(database, shard * IDS_PER_SHARD);
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            return database;
+        }
+
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Collections;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.rule.OutputCapture;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Test class for the SQL accounting of {@link SqlAccountingConfiguration}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class SqlAccountingTests {
+
+    @Rule
+    public final OutputCapture output = new OutputCapture();
+
+    @Rule
+    public final QueryBudget queries = new QueryBudget();
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private SqlAccountingFilter filter;
+
+    @Autowired
+    private SqlAccountingProperties properties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private MockMvc mockMvc;
+
+    private Duration slowStatementThreshold;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.context).addFilters(this.filter).build();
+        this.slowStatementThreshold = this.properties.getSlowStatementThreshold();
+        this.properties.setSlowStatementThreshold(Duration.ZERO);
+        this.properties.setResponseHeader(true);
+    }
+
+    @After
+    public void tearDown() {
+        this.properties.setSlowStatementThreshold(this.slowStatementThreshold);
+        this.properties.setResponseHeader(false);
+    }
+
+    @Test
+    public void shouldCountStatementsAndRows() {
+        for (int id = 1; id <= 3; id++) {
+            this.jdbcTemplate.queryForList("SELECT name FROM pets WHERE owner_id = ?", String.class, id);
+        }
+        this.jdbcTemplate.queryForList("SELECT id FROM owners", Integer.class);
+
+        SqlStatistics statistics = this.queries.getStatistics();
+        assertThat(statistics.getStatementCount()).isEqualTo(4);
+        // owner 3 has two pets
+        assertThat(statistics.getRowCount()).isEqualTo(4 + 10);
+        assertThat(statistics.getRepeatedStatements(3))
+            .containsOnlyKeys("SELECT name FROM pets WHERE owner_id = ?")
+            .containsValue(3);
+        assertThat(statistics.getTime().toNanos()).isPositive();
+        // each query of the JdbcTemplate obtains and closes a connection of its own
+        assertThat(statistics.getConnectionTime()).isGreaterThanOrEqualTo(statistics.getTime());
+    }
+
+    @Test
+    public void shouldNestRecordings() {
+        this.jdbcTemplate.queryForList("SELECT id FROM owners", Integer.class);
+        SqlStatistics inner = SqlStatistics.start();
+        this.jdbcTemplate.queryForList("SELECT id FROM pets", Integer.class);
+        inner.stop();
+        this.jdbcTemplate.queryForList("SELECT id FROM vets", Integer.class);
+
+        assertThat(inner.getStatements()).containsOnlyKeys("SELECT id FROM pets");
+        this.queries.assertStatements(3);
+    }
+
+    @Test
+    public void shouldWrapThePoolsBeneathRoutingDataSources() throws Exception {
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl("jdbc:hsqldb:mem:accounting");
+        DataSource pool = new DataSourcePools(properties, this.context.getEnvironment(), null, this.properties)
+            .create("accounting");
+        assertThat(pool).isInstanceOf(SqlAccountingDataSource.class);
+        BeanPostProcessor postProcessor = this.context.getBean("petclinicSqlAccountingDataSourcePostProcessor",
+            BeanPostProcessor.class);
+        DataSource lazy = new LazyConnectionDataSourceProxy(pool);
+        assertThat(postProcessor.postProcessAfterInitialization(lazy, "dataSource")).isSameAs(lazy);
+        DataSource routing = new ShardRoutingDataSource(Collections.singletonList(pool));
+        assertThat(postProcessor.postProcessAfterInitialization(routing, "dataSource")).isSameAs(routing);
+
+        // accounted once, by the pool
+        new JdbcTemplate(lazy).queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_USERS", Integer.class);
+        this.queries.assertStatements(1);
+        ((Closeable) pool).close();
+        assertThat(((HikariDataSource) ((SqlAccountingDataSource) pool).getTargetDataSource()).isClosed()).isTrue();
+    }
+
+    @Test
+    public void shouldLogSlowStatementsWithTheirParameters() {
+        this.jdbcTemplate.queryForObject("SELECT last_name FROM owners WHERE id = ?", String.class, 2);
+
+        assertThat(this.output.toString())
+            .containsPattern("Slow SQL statement \\(\\d+ ms\\): SELECT last_name FROM owners WHERE id = \\? \\[2\\]");
+    }
+
+    @Test
+    public void shouldReportTheStatementsOfARequest() throws Exception {
+        DistributionSummary statements = this.registry.find("petclinic.sql.statements")
+            .tag("uri", "/owners/{ownerId}").summary();
+        long before = (statements != null ? statements.count() : 0);
+
+        String serverTiming = mockMvc.perform(get("/owners/{ownerId}", 6))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(SqlAccountingFilter.SERVER_TIMING_HEADER);
+
+        assertThat(serverTiming)
+            .matches("sql;dur=\\d+\\.\\d{3};desc=\"2 statements, \\d+ rows\", connection;dur=\\d+\\.\\d{3}");
+
+        statements = this.registry.find("petclinic.sql.statements").tag("uri", "/owners/{ownerId}").summary();
+        assertThat(statements.count()).isEqualTo(before + 1);
+        assertThat(this.registry.find("petclinic.sql.rows").tag("uri", "/owners/{ownerId}").summary()).isNotNull();
+        assertThat(this.registry.find("petclinic.sql.time").tag("uri", "/owners/{ownerId}").timer()).isNotNull();
+        assertThat(this.registry.find("petclinic.sql.connection.time").tag("uri", "/owners/{ownerId}").timer())
+            .isNotNull();
+    }
+
+    @Test
+    public void shouldReportTheStatementsOfAnAsynchronousRequest() throws Exception {
+        DistributionSummary statements = this.registry.find("petclinic.sql.statements").tag("uri", "/api/owners")
+            .summary();
+        long before = (statements != null ? statements.count() : 0);
+        double totalBefore = (statements != null ? statements.totalAmount() : 0);
+
+        MvcResult result = mockMvc.perform(get("/api/owners").param("lastName", "Davis"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        // the first page is read on the pool of the API, and the stream completes there
+        result = mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andReturn();
+        String serverTiming = mockMvc.perform(asyncDispatch(result))
+            .andReturn().getResponse().getHeader(SqlAccountingFilter.SERVER_TIMING_HEADER);
+
+        statements = this.registry.find("petclinic.sql.statements").tag("uri", "/api/owners").summary();
+        assertThat(statements.count()).isEqualTo(before + 1);
+        assertThat(statements.totalAmount()).isGreaterThan(totalBefore);
+        assertThat(this.registry.find("petclinic.sql.rows").tag("uri", "/api/owners").summary().totalAmount())
+            .isPositive();
+        assertThat(serverTiming).matches("sql;dur=\\d+\\.\\d{3};desc=\"[1-9]\\d* statements, [1-9]\\d* rows\".*");
+        // the recording of the test continues on the pool as well
+        assertThat(this.queries.getStatistics().getStatementCount()).isPositive();
+    }
+
+    @Test
+    public void shouldReportRepeatedStatements() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/owners/1/pets");
+        this.filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/owners/{ownerId}/pets");
+            for (int id = 1; id <= 3; id++) {
+                this.jdbcTemplate.queryForList("SELECT name FROM pets WHERE id = ?", String.class, id);
+            }
+        });
+
+        assertThat(this.output.toString()).contains("GET /owners/1/pets executed statements repeatedly, likely N+1"
+            + " queries:\n  3x SELECT name FROM pets WHERE id = ?");
+        assertThat(this.registry.find("petclinic.sql.repeated").tag("uri", "/owners/{ownerId}/pets").counter().count())
+            .isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+/**
+ * Test class for {@link VirtualThreadsConfiguration}. What can be checked depends on whether the JVM running the tests
+ * supports virtual threads.
+ */
+public class VirtualThreadsConfigurationTests {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withUserConfiguration(VirtualThreadsConfiguration.class);
+
+    @Test
+    public void shouldUsePlatformThreadsByDefault() {
+        this.contextRunner.run(context -> assertThat(context).doesNotHaveBean(VirtualThreadExecutor.class));
+        this.contextRunner.withPropertyValues("petclinic.threads.virtual=false")
+            .run(context -> assertThat(context).doesNotHaveBean(VirtualThreadExecutor.class));
+    }
+
+    @Test
+    public void shouldFailToStartWithoutVirtualThreads() {
+        Assume.assumeFalse(VirtualThreadExecutor.isSupported());
+        this.contextRunner.withPropertyValues("petclinic.threads.virtual=true")
+            .run(context -> assertThat(context).getFailure().hasRootCauseInstanceOf(IllegalStateException.class)
+                .hasStackTraceContaining("Virtual threads require Java 21"));
+    }
+
+    @Test
+    public void shouldRunAsyncTasksOnVirtualThreads() {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+        this.contextRunner.withPropertyValues("petclinic.threads.virtual=true").run(context -> {
+            AsyncTaskExecutor executor = context.getBean("applicationTaskExecutor", AsyncTaskExecutor.class);
+            Future<String> threadName = executor.submit(() -> Thread.currentThread().getName());
+            assertThat(threadName.get()).startsWith("task-vt-");
+            Future<Object> isVirtual = executor.submit(() -> Thread.class.getMethod("isVirtual")
+                .invoke(Thread.currentThread()));
+            assertThat(isVirtual.get()).isEqualTo(true);
+        });
+    }
+
+    @Test
+    public void shouldCountTasks() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        executor.bindTo(registry);
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        CompletableFuture<Void> done = CompletableFuture.runAsync(release::join, executor);
+        assertThat(registry.get("petclinic.threads.virtual.active").tag("executor", "test").gauge().value())
+            .isEqualTo(1.0);
+        release.complete(null);
+        done.get();
+        // the count drops once the task has returned, just after it completes the future
+        for (long deadline = System.currentTimeMillis() + 5000; executor.getActiveCount() > 0
+                && System.currentTimeMillis() < deadline;) {
+            Thread.sleep(1);
+        }
+        executor.destroy();
+        assertThat(executor.getActiveCount()).isEqualTo(0);
+        assertThat(registry.get("petclinic.threads.virtual.tasks").functionCounter().count()).isEqualTo(1.0);
+    }
+
+}
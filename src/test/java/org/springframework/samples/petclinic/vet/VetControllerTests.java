@@ -1,12 +1,19 @@
 package org.springframework.samples.petclinic.vet;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.xpath;
+
+import java.util.List;
 
 import org.assertj.core.util.Lists;
 import org.junit.Before;
@@ -15,7 +22,11 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.system.CacheGenerations;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
@@ -24,15 +35,23 @@ import org.springframework.test.web.servlet.ResultActions;
  * Test class for the {@link VetController}
  */
 @RunWith(SpringRunner.class)
-@WebMvcTest(VetController.class)
+@WebMvcTest(value = VetController.class,
+    includeFilters = @ComponentScan.Filter(
+                            value = { VetsRepresentations.class, CacheGenerations.class },
+                            type = FilterType.ASSIGNABLE_TYPE))
 public class VetControllerTests {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private CacheGenerations generations;
+
     @MockBean
     private VetRepository vets;
 
+    private List<Vet> vetList;
+
     @Before
     public void setup() {
         Vet james = new Vet();
@@ -47,7 +66,8 @@ public class VetControllerTests {
         radiology.setId(1);
         radiology.setName("radiology");
         helen.addSpecialty(radiology);
-        given(this.vets.findAll()).willReturn(Lists.newArrayList(james, helen));
+        this.vetList = Lists.newArrayList(james, helen);
+        given(this.vets.findAll()).willReturn(this.vetList);
     }
 
     @Test
@@ -66,4 +86,68 @@ public class VetControllerTests {
             .andExpect(jsonPath("$.vetList[0].id").value(1));
     }
 
+    @Test
+    public void testShowResourcesVetListAsXml() throws Exception {
+        mockMvc.perform(get("/vets")
+            .accept(MediaType.APPLICATION_XML))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_XML))
+            .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+            .andExpect(xpath("/vets/vetList[2]/specialties/name").string("radiology"));
+    }
+
+    @Test
+    public void testShowResourcesVetListDefaultsToJson() throws Exception {
+        mockMvc.perform(get("/vets").accept(MediaType.ALL))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/json;charset=UTF-8"));
+        mockMvc.perform(get("/vets").header(HttpHeaders.ACCEPT, "application/xml;q=0.5, application/json"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/json;charset=UTF-8"));
+    }
+
+    @Test
+    public void testShowResourcesVetListNotAcceptable() throws Exception {
+        mockMvc.perform(get("/vets").accept(MediaType.IMAGE_PNG))
+            .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    public void testShowResourcesVetListAnswersIfNoneMatch() throws Exception {
+        String jsonETag = mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String xmlETag = mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_XML))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(jsonETag).startsWith("\"").isNotEqualTo(xmlETag);
+
+        mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, jsonETag))
+            .andExpect(status().isNotModified());
+        mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_XML).header(HttpHeaders.IF_NONE_MATCH, jsonETag))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testShowResourcesVetListIsSerializedOncePerCacheGeneration() throws Exception {
+        Vet firstVet = this.vetList.get(0);
+        String eTag = mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // the list of the same generation is not serialized again, not even a copy of it, so changes go unnoticed...
+        firstVet.setLastName("Carter-Smith");
+        given(this.vets.findAll()).willReturn(Lists.newArrayList(this.vetList));
+        mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON))
+            .andExpect(header().string(HttpHeaders.ETAG, eTag))
+            .andExpect(jsonPath("$.vetList[0].lastName").value("Carter"));
+
+        // ...until the cache starts a new generation
+        this.generations.advance("vets");
+        String newETag = mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.vetList[0].lastName").value("Carter-Smith"))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(newETag).isNotEqualTo(eTag);
+        verify(this.vets, times(3)).findAll();
+    }
+
 }